@@ -0,0 +1,63 @@
+package com.movile.bean;
+
+import java.util.UUID;
+
+import me.prettyprint.cassandra.utils.TimeUUIDUtils;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * A post of a message board, identified (and ordered) by its time uuid
+ */
+public class Message {
+
+    private final UUID id;
+    private final String text;
+
+    public Message(UUID id, String text) {
+        this.id = id;
+        this.text = text;
+    }
+
+    /**
+     * @return the time uuid of the post, the paging cursor of the message board
+     */
+    public UUID getId() {
+        return id;
+    }
+
+    /**
+     * @return the post time in milliseconds
+     */
+    public long getTime() {
+        return TimeUUIDUtils.getTimeFromUUID(id);
+    }
+
+    /**
+     * @return the text
+     */
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * id.hashCode() + (text != null ? text.hashCode() : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Message)) {
+            return false;
+        }
+        Message other = (Message) obj;
+        return id.equals(other.id) && (text == null ? other.text == null : text.equals(other.text));
+    }
+
+    @Override
+    public String toString() {
+        return "Message [id=" + id + ", time=" + getTime() + ", text=" + text + "]";
+    }
+}
@@ -2,21 +2,28 @@ package com.movile.bean;
 
 import java.util.Date;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
-import org.apache.commons.lang.builder.ToStringBuilder;
+import com.movile.cassandra.mapping.Column;
+import com.movile.cassandra.mapping.ColumnFamily;
+import com.movile.cassandra.mapping.RowKey;
 
 /**
  * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
  * Sample test
  */
+@ColumnFamily("Employees")
 public class Person {
 
+    @RowKey
     private String id;
+    @Column
     private String name;
+    @Column
     private String login;
+    @Column(secret = true)
     private String passwd;
+    @Column(name = "creation")
     private Date creationDate;
+    @Column
     private String email;
 
     public Person() {
@@ -123,17 +130,23 @@ public class Person {
      */
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this);
+        int result = 17;
+        result = 31 * result + (id != null ? id.hashCode() : 0);
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + (login != null ? login.hashCode() : 0);
+        result = 31 * result + (passwd != null ? passwd.hashCode() : 0);
+        result = 31 * result + (creationDate != null ? creationDate.hashCode() : 0);
+        result = 31 * result + (email != null ? email.hashCode() : 0);
+        return result;
     }
-    
-    
-    
+
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
+     * the password is left out, persons are logged
      */
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this);
+        return "Person [id=" + id + ", name=" + name + ", login=" + login + ", creationDate=" + creationDate + ", email=" + email + "]";
     }
 
     /* (non-Javadoc)
@@ -141,6 +154,18 @@ public class Person {
      */
     @Override
     public boolean equals(Object obj) {
-        return EqualsBuilder.reflectionEquals(this, obj);
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        Person other = (Person) obj;
+        return equal(id, other.id) && equal(name, other.name) && equal(login, other.login) && equal(passwd, other.passwd)
+                && equal(creationDate, other.creationDate) && equal(email, other.email);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
     }
 }
@@ -1,10 +1,13 @@
 package com.movile.bin;
 
+import org.apache.log4j.LogManager;
 import org.apache.log4j.xml.DOMConfigurator;
 
 import com.movile.bean.Person;
+import com.movile.cassandra.CassandraSession;
 import com.movile.cassandra.EmployeeDAOImpl;
 import com.movile.utils.AppProperties;
+import com.movile.utils.PropertiesWatcher;
 
 /**
  * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
@@ -24,7 +27,13 @@ public final class Main {
         DOMConfigurator.configure("conf/log/log4j.xml");
         AppProperties.getDefaultInstance().loadProperties("conf/const.properties");
 
-        EmployeeDAOImpl empDAO = new EmployeeDAOImpl();
+        // changes to the property file are applied to the session without a restart
+        CassandraSession session = CassandraSession.acquire();
+        PropertiesWatcher watcher = new PropertiesWatcher(AppProperties.getDefaultInstance(), "conf/const.properties");
+        watcher.addListener(session);
+        watcher.start();
+
+        EmployeeDAOImpl empDAO = new EmployeeDAOImpl(session);
 
         // inserting data to cluster column family
         System.out.println("Inserting data...");
@@ -47,7 +56,12 @@ public final class Main {
         System.out.println(personRetrieved);
 
         // finish the resources
+        watcher.stop();
         empDAO.shutdown();
+        session.release();
+
+        // the log appenders are asynchronous and buffered
+        LogManager.shutdown();
     }
 
 }
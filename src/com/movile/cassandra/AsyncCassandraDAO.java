@@ -0,0 +1,168 @@
+package com.movile.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import me.prettyprint.hector.api.beans.HColumn;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.movile.cassandra.CassandraDAOImpl.Type;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Non blocking version of {@link CassandraDAOImpl}, every call returns at once with the future result
+ *
+ * The calls run on the {@link AsyncExecutor} of the session, shared by all of its async DAOs.
+ * Failures (HectorException) are reported by the futures.
+ */
+public class AsyncCassandraDAO {
+
+    private final CassandraDAOImpl dao;
+    private final AsyncExecutor executor;
+
+    /**
+     * Uses the default session
+     * @param columnFamily column family name
+     */
+    public AsyncCassandraDAO(String columnFamily) {
+        dao = new CassandraDAOImpl(columnFamily);
+        executor = dao.session.getAsyncExecutor();
+    }
+
+    /**
+     * Creates a DAO sharing an existing session
+     * @param session shared cluster/keyspace session
+     * @param columnFamily column family name
+     */
+    public AsyncCassandraDAO(CassandraSession session, String columnFamily) {
+        dao = new CassandraDAOImpl(session, columnFamily);
+        executor = session.getAsyncExecutor();
+    }
+
+    /**
+     * @see CassandraDAOImpl#increment(String, String, long)
+     */
+    public ListenableFuture<Void> incrementAsync(final String key, final String columnName, final long value) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dao.increment(key, columnName, value);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see CassandraDAOImpl#increment(String, String)
+     */
+    public ListenableFuture<Void> incrementAsync(String key, String columnName) {
+        return incrementAsync(key, columnName, 1L);
+    }
+
+    /**
+     * @see CassandraDAOImpl#delete(String)
+     */
+    public ListenableFuture<Void> deleteAsync(final String id) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dao.delete(id);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see CassandraDAOImpl#deleteColumn(String, String)
+     */
+    public ListenableFuture<Void> deleteColumnAsync(final String id, final String column) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dao.deleteColumn(id, column);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see CassandraDAOImpl#update(String, String, Object, Type)
+     */
+    public ListenableFuture<Void> updateAsync(final String id, final String column, final Object value, final Type type) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dao.update(id, column, value, type);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see CassandraDAOImpl#updateColumn(String, String, Object, Type)
+     */
+    public ListenableFuture<Long> updateColumnAsync(final String id, final String column, final Object value, final Type type) {
+        return executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return dao.updateColumn(id, column, value, type);
+            }
+        });
+    }
+
+    /**
+     * @see CassandraDAOImpl#getColumns(String)
+     */
+    public ListenableFuture<Map<String, String>> getColumnsAsync(final String id) {
+        return executor.submit(new Callable<Map<String, String>>() {
+            @Override
+            public Map<String, String> call() {
+                return dao.getColumns(id);
+            }
+        });
+    }
+
+    /**
+     * @see CassandraDAOImpl#getColumns(String, String...)
+     */
+    public ListenableFuture<Map<String, String>> getColumnsAsync(final String id, final String... names) {
+        return executor.submit(new Callable<Map<String, String>>() {
+            @Override
+            public Map<String, String> call() {
+                return dao.getColumns(id, names);
+            }
+        });
+    }
+
+    /**
+     * @see CassandraDAOImpl#getColumnValue(String, String, Type)
+     */
+    public ListenableFuture<Object> getColumnValueAsync(final String id, final String column, final Type type) {
+        return executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return dao.getColumnValue(id, column, type);
+            }
+        });
+    }
+
+    /**
+     * @see CassandraDAOImpl#getColumn(String, String)
+     */
+    public ListenableFuture<HColumn<String, ByteBuffer>> getColumnAsync(final String id, final String column) {
+        return executor.submit(new Callable<HColumn<String, ByteBuffer>>() {
+            @Override
+            public HColumn<String, ByteBuffer> call() {
+                return dao.getColumn(id, column);
+            }
+        });
+    }
+
+    /**
+     * Releases the session reference, see {@link CassandraBase#shutdown()}
+     */
+    public void shutdown() {
+        dao.shutdown();
+    }
+}
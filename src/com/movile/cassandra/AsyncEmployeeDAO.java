@@ -0,0 +1,110 @@
+package com.movile.cassandra;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.movile.bean.Person;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Non blocking version of {@link EmployeeDAOImpl}, every call returns at once with the future result
+ *
+ * The calls run on the {@link AsyncExecutor} of the session, shared by all of its async DAOs.
+ * Failures (HectorException) are reported by the futures.
+ * A bulk call takes a single slot of the executor, {@link #getPersonsAsync(Collection)} spreads its chunks
+ * over the free slots left, running them on its own thread when there is none.
+ */
+public class AsyncEmployeeDAO {
+
+    private final EmployeeDAOImpl dao;
+    private final AsyncExecutor executor;
+
+    /**
+     * Uses the default session
+     */
+    public AsyncEmployeeDAO() {
+        dao = new EmployeeDAOImpl();
+        executor = dao.session.getAsyncExecutor();
+    }
+
+    /**
+     * Creates a DAO sharing an existing session
+     * @param session shared cluster/keyspace session
+     */
+    public AsyncEmployeeDAO(CassandraSession session) {
+        dao = new EmployeeDAOImpl(session);
+        executor = session.getAsyncExecutor();
+    }
+
+    /**
+     * @see EmployeeDAOImpl#save(Person)
+     */
+    public ListenableFuture<Void> saveAsync(final Person person) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dao.save(person);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see EmployeeDAOImpl#getPerson(String)
+     */
+    public ListenableFuture<Person> getPersonAsync(final String id) {
+        return executor.submit(new Callable<Person>() {
+            @Override
+            public Person call() {
+                return dao.getPerson(id);
+            }
+        });
+    }
+
+    /**
+     * @see EmployeeDAOImpl#saveAll(Collection)
+     */
+    public ListenableFuture<Void> saveAllAsync(final Collection<Person> persons) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dao.saveAll(persons);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see EmployeeDAOImpl#getPersons(Collection)
+     */
+    public ListenableFuture<Map<String, Person>> getPersonsAsync(final Collection<String> ids) {
+        return executor.submit(new Callable<Map<String, Person>>() {
+            @Override
+            public Map<String, Person> call() {
+                return dao.getPersons(ids);
+            }
+        });
+    }
+
+    /**
+     * @see EmployeeDAOImpl#getAll()
+     */
+    public ListenableFuture<List<Person>> getAllAsync() {
+        return executor.submit(new Callable<List<Person>>() {
+            @Override
+            public List<Person> call() {
+                return dao.getAll();
+            }
+        });
+    }
+
+    /**
+     * Releases the session reference, see {@link CassandraBase#shutdown()}
+     */
+    public void shutdown() {
+        dao.shutdown();
+    }
+}
@@ -0,0 +1,192 @@
+package com.movile.cassandra;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.prettyprint.hector.api.exceptions.HPoolExhaustedException;
+import me.prettyprint.hector.api.exceptions.HectorException;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Runs the blocking hector calls of the async DAOs off the caller thread, with a bounded number of requests in flight
+ *
+ * A submit blocks while the maximum number of requests are queued or running (backpressure), up to the maximum
+ * wait, then the returned future fails with a HPoolExhaustedException. The calls run on virtual threads when the
+ * runtime has them (Java 21+), on a pool of one thread per allowed request otherwise.
+ */
+public class AsyncExecutor {
+
+    private static Logger log = Logger.getLogger("cassandra");
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final long maxWaitMillis;
+
+    /**
+     * @param name prefix of the thread names
+     * @param maxInFlight maximum number of requests queued or running
+     * @param maxWait maximum time a submit waits for a free slot
+     * @param unit unit of the wait
+     */
+    public AsyncExecutor(String name, int maxInFlight, long maxWait, TimeUnit unit) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of requests in flight: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.maxWaitMillis = unit.toMillis(maxWait);
+        this.permits = new Semaphore(maxInFlight);
+
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads != null) {
+            executor = virtualThreads;
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new AsyncThreadFactory(name));
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+    }
+
+    /**
+     * Runs a call in background, waiting for a free slot when too many calls are in flight
+     * @param call blocking call
+     * @return the future result of the call
+     */
+    public <T> ListenableFuture<T> submit(Callable<T> call) {
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                return Futures.immediateFailedFuture(new HPoolExhaustedException("Timeout waiting for one of the " + maxInFlight
+                        + " asynchronous request slots"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Futures.immediateFailedFuture(e);
+        }
+        return execute(call);
+    }
+
+    /**
+     * Runs a call in background only if a slot is free right now, callers run the call themselves otherwise
+     * (so that a call running here never waits for a slot held by itself)
+     * @param call blocking call
+     * @return the future result of the call, null when every slot is taken
+     */
+    public <T> ListenableFuture<T> trySubmit(Callable<T> call) {
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        return execute(call);
+    }
+
+    /**
+     * Waits for a result of this executor, the failure of the call is thrown as is
+     * @param future future returned by a submit
+     * @return the result of the call
+     * @throws HectorException
+     */
+    public static <T> T await(Future<T> future) throws HectorException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new HectorException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HectorException("Interrupted waiting for an asynchronous request", e);
+        }
+    }
+
+    private <T> ListenableFuture<T> execute(Callable<T> call) {
+        ListenableFutureTask<T> future = new ListenableFutureTask<T>(call);
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                permits.release();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            // never run, so the listener will not release the slot
+            permits.release();
+            return Futures.immediateFailedFuture(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return number of calls queued or running
+     */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * @return maximum number of calls queued or running
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Stops accepting calls, the ones in flight are completed
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            log.info("Asynchronous cassandra calls running on virtual threads");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            log.warn("Virtual threads not available, using a thread pool: " + e.toString());
+            return null;
+        }
+    }
+
+    private static final class AsyncThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger threads = new AtomicInteger();
+
+        AsyncThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.movile.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.beans.HCounterColumn;
+import me.prettyprint.hector.api.exceptions.HectorException;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Collects insertions and deletions of any rows and column families and sends them in batches,
+ * one batch_mutate round trip per batch instead of one per row or column
+ *
+ * A batch is sent when it reaches the maximum number of mutations, the maximum (estimated) size in bytes
+ * or, when a maximum delay is set, when its first mutation gets older than the delay. Thread safe, a flush
+ * blocks the writers until the batch is sent. A failed batch is dropped and its exception is thrown to the
+ * caller that triggered the flush (logged when the flush is triggered by the delay).
+ *
+ * The delayed flushes of all writers run on a shared timer, each one scheduled for the time the first
+ * pending mutation of its writer reaches the delay.
+ */
+public class BatchWriter {
+
+    private static Logger log = Logger.getLogger("cassandra");
+
+    private static final StringSerializer stringSerializer = StringSerializer.get();
+
+    /**
+     * Bytes of the timestamp sent with every column
+     */
+    private static final int CLOCK_SIZE = 8;
+
+    /**
+     * Timer of the delayed flushes, shared by all writers
+     */
+    private static final ScheduledThreadPoolExecutor timer = createTimer();
+
+    private final Mutator<String> mutator;
+    private final int maxMutations;
+    private final long maxBytes;
+    private final long maxDelayNanos;
+
+    private int pendingMutations;
+    private long pendingBytes;
+    private long firstPendingTime;
+    private ScheduledFuture<?> delayedFlush;
+    private boolean closed;
+
+    // statistics of the sent batches
+    private long batches;
+    private long mutations;
+    private long lastLatency;
+    private long maxLatency;
+    private long totalLatency;
+
+    /**
+     * @param keyspace keyspace to write to
+     * @param maxMutations number of mutations (columns or deletions) that triggers a flush
+     * @param maxBytes estimated size in bytes (keys, names, values and timestamps) that triggers a flush
+     * @param maxDelay maximum time a mutation waits to be sent, 0 to flush by count and size only
+     * @param unit unit of the delay
+     */
+    public BatchWriter(Keyspace keyspace, int maxMutations, long maxBytes, long maxDelay, TimeUnit unit) {
+        if (maxMutations < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of mutations: " + maxMutations);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Invalid maximum batch size: " + maxBytes);
+        }
+        this.mutator = HFactory.createMutator(keyspace, stringSerializer);
+        this.maxMutations = maxMutations;
+        this.maxBytes = maxBytes;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * Adds a column insertion
+     * @param key row key
+     * @param columnFamily column family name
+     * @param column column to insert
+     * @return this writer
+     * @throws HectorException when the insertion triggers a flush that fails
+     */
+    public synchronized <N, V> BatchWriter addInsertion(String key, String columnFamily, HColumn<N, V> column) throws HectorException {
+        ensureOpen();
+        mutator.addInsertion(key, columnFamily, column);
+        added(size(key) + size(column.getNameBytes()) + size(column.getValueBytes()) + CLOCK_SIZE);
+        return this;
+    }
+
+    /**
+     * Adds a counter increment
+     * @param key row key
+     * @param columnFamily counter column family name
+     * @param column counter column with the increment
+     * @return this writer
+     * @throws HectorException when the increment triggers a flush that fails
+     */
+    public synchronized <N> BatchWriter addCounter(String key, String columnFamily, HCounterColumn<N> column) throws HectorException {
+        ensureOpen();
+        mutator.addCounter(key, columnFamily, column);
+        added(size(key) + size(column.getNameBytes()) + CLOCK_SIZE);
+        return this;
+    }
+
+    /**
+     * Adds a column deletion
+     * @param key row key
+     * @param columnFamily column family name
+     * @param columnName name of the deleted column
+     * @param nameSerializer column name serializer
+     * @return this writer
+     * @throws HectorException when the deletion triggers a flush that fails
+     */
+    public synchronized <N> BatchWriter addDeletion(String key, String columnFamily, N columnName, Serializer<N> nameSerializer)
+            throws HectorException {
+        ensureOpen();
+        mutator.addDeletion(key, columnFamily, columnName, nameSerializer);
+        added(size(key) + size(nameSerializer.toByteBuffer(columnName)) + CLOCK_SIZE);
+        return this;
+    }
+
+    /**
+     * Adds the deletion of a whole row
+     * @param key row key
+     * @param columnFamily column family name
+     * @return this writer
+     * @throws HectorException when the deletion triggers a flush that fails
+     */
+    public synchronized BatchWriter addDeletion(String key, String columnFamily) throws HectorException {
+        ensureOpen();
+        mutator.addDeletion(key, columnFamily);
+        added(size(key) + CLOCK_SIZE);
+        return this;
+    }
+
+    /**
+     * Sends the pending mutations, if any
+     * @throws HectorException
+     */
+    public synchronized void flush() throws HectorException {
+        if (pendingMutations == 0) {
+            return;
+        }
+        int count = pendingMutations;
+        long bytes = pendingBytes;
+        pendingMutations = 0;
+        pendingBytes = 0;
+
+        long start = System.nanoTime();
+        try {
+            // hector drops the pending mutations before sending them, a failed batch is not sent again
+            mutator.execute();
+        } finally {
+            long latency = System.nanoTime() - start;
+            batches++;
+            mutations += count;
+            lastLatency = latency;
+            maxLatency = Math.max(maxLatency, latency);
+            totalLatency += latency;
+            if (log.isDebugEnabled()) {
+                log.debug("Batch of " + count + " mutations (" + bytes + " bytes) sent in " + TimeUnit.NANOSECONDS.toMicros(latency) + " us");
+            }
+        }
+    }
+
+    /**
+     * Sends the pending mutations and cancels the delayed flush, the writer can not be used afterwards
+     * @throws HectorException
+     */
+    public synchronized void close() throws HectorException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancelDelayedFlush();
+        flush();
+    }
+
+    /**
+     * Drops the pending mutations and cancels the delayed flush, the writer can not be used afterwards. To be used
+     * instead of {@link #close()} when the writes already failed and the rest of the batch must not be sent
+     */
+    public synchronized void discard() {
+        closed = true;
+        cancelDelayedFlush();
+        mutator.discardPendingMutations();
+        pendingMutations = 0;
+        pendingBytes = 0;
+    }
+
+    /**
+     * @return number of mutations waiting for the next flush
+     */
+    public synchronized int getPendingMutations() {
+        return pendingMutations;
+    }
+
+    /**
+     * @return number of batches sent (including the failed ones)
+     */
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * @return number of mutations sent
+     */
+    public synchronized long getMutationCount() {
+        return mutations;
+    }
+
+    /**
+     * @param unit wanted time unit
+     * @return latency of the last batch
+     */
+    public synchronized long getLastLatency(TimeUnit unit) {
+        return unit.convert(lastLatency, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit wanted time unit
+     * @return highest batch latency
+     */
+    public synchronized long getMaxLatency(TimeUnit unit) {
+        return unit.convert(maxLatency, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit wanted time unit
+     * @return average batch latency
+     */
+    public synchronized long getMeanLatency(TimeUnit unit) {
+        return batches == 0 ? 0 : unit.convert(totalLatency / batches, TimeUnit.NANOSECONDS);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Batch writer already closed");
+        }
+    }
+
+    private void added(long bytes) {
+        if (pendingMutations == 0) {
+            firstPendingTime = System.nanoTime();
+            if (maxDelayNanos > 0 && delayedFlush == null) {
+                scheduleDelayedFlush(maxDelayNanos);
+            }
+        }
+        pendingMutations++;
+        pendingBytes += bytes;
+        if (pendingMutations >= maxMutations || pendingBytes >= maxBytes || expired()) {
+            flush();
+        }
+    }
+
+    private boolean expired() {
+        return maxDelayNanos > 0 && System.nanoTime() - firstPendingTime >= maxDelayNanos;
+    }
+
+    private void scheduleDelayedFlush(long delayNanos) {
+        delayedFlush = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushExpired();
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void cancelDelayedFlush() {
+        if (delayedFlush != null) {
+            delayedFlush.cancel(false);
+            delayedFlush = null;
+        }
+    }
+
+    private synchronized void flushExpired() {
+        delayedFlush = null;
+        if (closed || pendingMutations == 0) {
+            return;
+        }
+        long remaining = firstPendingTime + maxDelayNanos - System.nanoTime();
+        if (remaining > 0) {
+            // the batch this flush was scheduled for was already sent, wait for the current one
+            scheduleDelayedFlush(remaining);
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Error sending a delayed batch: " + e.toString(), e);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "batch-writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // closed writers do not leave their flushes in the queue
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static int size(String key) {
+        return stringSerializer.toByteBuffer(key).remaining();
+    }
+
+    private static int size(ByteBuffer buffer) {
+        return buffer != null ? buffer.remaining() : 0;
+    }
+}
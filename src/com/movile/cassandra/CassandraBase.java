@@ -1,22 +1,26 @@
 package com.movile.cassandra;
 
 
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import me.prettyprint.cassandra.connection.HConnectionManager;
-import me.prettyprint.cassandra.model.ConfigurableConsistencyLevel;
 import me.prettyprint.cassandra.serializers.BytesArraySerializer;
 import me.prettyprint.cassandra.serializers.LongSerializer;
 import me.prettyprint.cassandra.serializers.StringSerializer;
-import me.prettyprint.cassandra.service.CassandraHostConfigurator;
-import me.prettyprint.cassandra.service.ExhaustedPolicy;
-import me.prettyprint.cassandra.service.FailoverPolicy;
+import me.prettyprint.cassandra.service.template.ColumnFamilyResult;
+import me.prettyprint.cassandra.service.template.ColumnFamilyTemplate;
 import me.prettyprint.hector.api.Cluster;
-import me.prettyprint.hector.api.HConsistencyLevel;
 import me.prettyprint.hector.api.Keyspace;
-import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.Serializer;
 
 import org.apache.log4j.Logger;
 
-import com.movile.utils.AppProperties;
+import com.movile.cassandra.metrics.OperationStats;
+import com.movile.utils.SmartProperties;
 
 /**
  * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
@@ -25,7 +29,7 @@ public class CassandraBase {
 
     protected static Logger log = Logger.getLogger("cassandra");
 
-    protected static final String KEYSPACE = "Company";
+    protected static final String KEYSPACE = CassandraSession.KEYSPACE;
     protected static final String COLUMNFAMILY_EMP = "Employees";
     
     protected static StringSerializer stringSerializer = StringSerializer.get();
@@ -35,48 +39,56 @@ public class CassandraBase {
     /**
      * Cassandra/Hector objects to Cassandra Comunication
      */
-    protected Cluster cluster;
+    protected final Cluster cluster;
+
+    protected final Keyspace keyspace;
+
+    /**
+     * Shared session holding the cluster and keyspace
+     */
+    protected final CassandraSession session;
 
-    protected Keyspace keyspace;
+    private final AtomicBoolean released = new AtomicBoolean(false);
 
+    /**
+     * Uses the default session, built only once from the application properties
+     */
     public CassandraBase() {
-        String hosts = AppProperties.getDefaultInstance().getString("cassandra.ips", "127.0.0.1:9106");
-        String clusterName = AppProperties.getDefaultInstance().getString("cassandra.clusterName", "sbs01_cluster");
-        int maxActive = AppProperties.getDefaultInstance().getInt("cassandra.maxActive", 50);
-        int maxIdle = AppProperties.getDefaultInstance().getInt("cassandra.maxIdle", 5);
-        int maxWaitTime = 1000 * AppProperties.getDefaultInstance().getInt("cassandra.maxWaitTime", 30);
-        int reconnectInterval = AppProperties.getDefaultInstance().getInt("cassandra.reconnectInterval", 5);
-        boolean autoDiscoveryHosts = AppProperties.getDefaultInstance().getBoolean("cassandra.autoDiscoveryHosts", false);
-
-        // cassandra host and pool configurations
-        CassandraHostConfigurator hostConfigurator = new CassandraHostConfigurator(hosts);
-
-        hostConfigurator.setMaxWaitTimeWhenExhausted(maxWaitTime);
-        hostConfigurator.setExhaustedPolicy(ExhaustedPolicy.WHEN_EXHAUSTED_GROW);
-        hostConfigurator.setMaxActive(maxActive);
-        hostConfigurator.setCassandraThriftSocketTimeout(maxWaitTime);
-        hostConfigurator.setMaxIdle(maxIdle);
-
-        hostConfigurator.setRetryDownedHosts(true);
-        hostConfigurator.setRetryDownedHostsDelayInSeconds(reconnectInterval);
-
-        hostConfigurator.setAutoDiscoverHosts(autoDiscoveryHosts);
-        hostConfigurator.setAutoDiscoveryDelayInSeconds(60);
-
-        cluster = HFactory.getOrCreateCluster(clusterName, hostConfigurator);
-
-        // set the consistency level
-        ConfigurableConsistencyLevel consistenceLevel = new ConfigurableConsistencyLevel();
-        consistenceLevel.setDefaultReadConsistencyLevel(HConsistencyLevel.ONE);
-        consistenceLevel.setDefaultWriteConsistencyLevel(HConsistencyLevel.ONE);
-        
-        keyspace = HFactory.createKeyspace(KEYSPACE, cluster, consistenceLevel, FailoverPolicy.ON_FAIL_TRY_ALL_AVAILABLE);
+        this((String) null);
+    }
 
+    /**
+     * Uses the default session, with the consistency levels of a column family
+     * @param columnFamily column family of the DAO, null for the default levels
+     */
+    public CassandraBase(String columnFamily) {
+        session = CassandraSession.acquire();
+        cluster = session.getCluster();
+        keyspace = columnFamily == null ? session.getKeyspace() : session.getKeyspace(columnFamily);
     }
 
+    /**
+     * Uses the given session, a new reference is retained until {@link #shutdown()}
+     * @param session shared session
+     */
+    public CassandraBase(CassandraSession session) {
+        this(session, null);
+    }
+
+    /**
+     * Uses the given session with the consistency levels of a column family, a new reference is retained until
+     * {@link #shutdown()}
+     * @param session shared session
+     * @param columnFamily column family of the DAO, null for the default levels
+     */
+    public CassandraBase(CassandraSession session, String columnFamily) {
+        this.session = session.retain();
+        cluster = session.getCluster();
+        keyspace = columnFamily == null ? session.getKeyspace() : session.getKeyspace(columnFamily);
+    }
 
     /**
-     * Get information about cassandra cluster
+     * Get information about cassandra cluster, with the latency statistics of the DAO operations
      * @return current status
      */
     public String getClusterInformation() {
@@ -90,6 +102,11 @@ public class CassandraBase {
             sb.append("statusPerPool=").append(conn.getStatusPerPool()).append(", ");
             sb.append("hosts=").append(conn.getHosts()).append(", ");
             sb.append("downnedHosts=").append(conn.getDownedHosts()).append("];");
+
+            String operations = session.getMetrics().getSummary();
+            if (operations.length() > 0) {
+                sb.append("\nOperation Stats:\n").append(operations);
+            }
         } catch (Exception e) {
             log.error("Error trying to log the Cassandra cluster stats: " + e.toString(), e);
         }
@@ -97,9 +114,93 @@ public class CassandraBase {
     }
 
     /**
-     * Finalizes the hector connection pool
+     * Get the latency statistics of an operation, to be looked up once per DAO and recorded on every call
+     * @param columnFamily column family name
+     * @param operation operation name
+     * @return the stats of the session
+     */
+    protected OperationStats operationStats(String columnFamily, String operation) {
+        return session.getMetrics().operation(columnFamily, operation);
+    }
+
+    /**
+     * Get the speculative retry of a read operation, to be created once per DAO and called on every read
+     * @param columnFamily column family name
+     * @return the speculative read, see {@link CassandraSession#createSpeculativeRead(String)}
+     */
+    protected SpeculativeRead speculativeRead(String columnFamily) {
+        return session.createSpeculativeRead(columnFamily);
+    }
+
+    /**
+     * Creates a parallel scanner of a column family, sized by the properties cassandra.scan.parallelism
+     * (number of token ranges read at once) and cassandra.scan.pageSize (rows per query)
+     * @param columnFamily column family to walk
+     * @param nameSerializer column name serializer
+     * @param valueSerializer column value serializer
+     * @param columnCount maximum number of columns fetched per row
+     * @return the scanner
+     */
+    protected <N, V> TokenRangeScanner<N, V> createScanner(String columnFamily, Serializer<N> nameSerializer, Serializer<V> valueSerializer,
+            int columnCount) {
+        SmartProperties properties = session.getProperties();
+        int parallelism = properties.getInt("cassandra.scan.parallelism", 4, 1, 256);
+        int pageSize = properties.getInt("cassandra.scan.pageSize", 500, 1, 100000);
+        return new TokenRangeScanner<N, V>(cluster, keyspace, columnFamily, nameSerializer, valueSerializer, parallelism, pageSize,
+                columnCount);
+    }
+
+    /**
+     * Creates a batch writer on this DAO keyspace, flushed by the properties cassandra.batch.maxMutations,
+     * cassandra.batch.maxBytes and cassandra.batch.maxDelay (milliseconds, 0 disables the timed flush)
+     * @return the writer, to be closed by the caller
+     */
+    public BatchWriter createBatchWriter() {
+        SmartProperties properties = session.getProperties();
+        int maxMutations = properties.getInt("cassandra.batch.maxMutations", 500, 1, 100000);
+        long maxBytes = properties.getLong("cassandra.batch.maxBytes", 1024L * 1024L, 1L, Long.MAX_VALUE);
+        long maxDelay = properties.getLong("cassandra.batch.maxDelay", 1000L, 0L, Long.MAX_VALUE);
+        return new BatchWriter(keyspace, maxMutations, maxBytes, maxDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a batch writer for a single call, flushed by count and size only (no delay timer): the caller sends
+     * the rest with {@link BatchWriter#close()}, or drops it with {@link BatchWriter#discard()} when it failed
+     * @return the writer, to be closed or discarded by the caller
+     */
+    protected BatchWriter createCallBatchWriter() {
+        SmartProperties properties = session.getProperties();
+        int maxMutations = properties.getInt("cassandra.batch.maxMutations", 500, 1, 100000);
+        long maxBytes = properties.getLong("cassandra.batch.maxBytes", 1024L * 1024L, 1L, Long.MAX_VALUE);
+        return new BatchWriter(keyspace, maxMutations, maxBytes, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads a whole row as a map of column name to value bytes, the form kept by the row caches
+     * @param template template of the column family
+     * @param id row key
+     * @return the columns of the row, null when the row does not exist
+     */
+    protected static Map<String, byte[]> readRow(ColumnFamilyTemplate<String, String> template, String id) {
+        ColumnFamilyResult<String, String> res = template.queryColumns(id);
+        if (!res.hasResults()) {
+            return null;
+        }
+        Map<String, byte[]> row = new TreeMap<String, byte[]>();
+        for (String columnName : res.getColumnNames()) {
+            ByteBuffer value = res.getColumn(columnName).getValue();
+            row.put(columnName, byteArraySerializer.fromByteBuffer(value.duplicate()));
+        }
+        return row;
+    }
+
+    /**
+     * Releases this DAO reference to the session, the hector connection pool is finalized
+     * when the last DAO sharing it is shut down
      */
     public void shutdown() {
-        cluster.getConnectionManager().shutdown();
+        if (released.compareAndSet(false, true)) {
+            session.release();
+        }
     }
 }
@@ -2,20 +2,39 @@ package com.movile.cassandra;
 
 import java.nio.ByteBuffer;
 import java.security.InvalidParameterException;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
+import me.prettyprint.cassandra.model.ExecutingKeyspace;
+import me.prettyprint.cassandra.model.KeyspaceOperationCallback;
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.service.KeyspaceService;
 import me.prettyprint.cassandra.service.template.ColumnFamilyResult;
 import me.prettyprint.cassandra.service.template.ColumnFamilyTemplate;
 import me.prettyprint.cassandra.service.template.ColumnFamilyUpdater;
 import me.prettyprint.cassandra.service.template.ThriftColumnFamilyTemplate;
+import me.prettyprint.hector.api.HConsistencyLevel;
+import me.prettyprint.hector.api.Serializer;
 import me.prettyprint.hector.api.beans.HColumn;
 import me.prettyprint.hector.api.beans.HCounterColumn;
+import me.prettyprint.hector.api.beans.Row;
 import me.prettyprint.hector.api.exceptions.HectorException;
 import me.prettyprint.hector.api.factory.HFactory;
 import me.prettyprint.hector.api.mutation.Mutator;
 
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+
+import com.movile.cassandra.metrics.OperationStats;
+import com.movile.utils.SmartProperties;
+
 /**
  * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
  * Generic dao operations
@@ -29,20 +48,129 @@ import me.prettyprint.hector.api.mutation.Mutator;
  */
 public class CassandraDAOImpl extends CassandraBase {
 
-    private String columnFamily;
+    private final String columnFamily;
+
+    /**
+     * Template built once per DAO, templates are thread safe (updaters are created per call)
+     */
+    private final ColumnFamilyTemplate<String, String> template;
+
+    /**
+     * Row cache of the session, null when the column family is not cached
+     */
+    private final RowCache cache;
+
+    /**
+     * Declared column types, described on the first read
+     */
+    private volatile ColumnMetadata metadata;
+
+    private final RowCache.Loader rowLoader = new RowCache.Loader() {
+        @Override
+        public Map<String, byte[]> load(final String key) {
+            return getColumnsRead.call(new Callable<Map<String, byte[]>>() {
+                @Override
+                public Map<String, byte[]> call() {
+                    return readRow(template, key);
+                }
+            });
+        }
+    };
+
     /**
-     * Internal Enum
+     * Latencies of the operations
+     */
+    private final OperationStats incrementStats;
+    private final OperationStats deleteStats;
+    private final OperationStats updateStats;
+    private final OperationStats updateColumnStats;
+    private final OperationStats getColumnsStats;
+    private final OperationStats getColumnStats;
+    private final OperationStats visitColumnsStats;
+    private final OperationStats getColumnBufferStats;
+
+    /**
+     * Speculative retry of the row reads
+     */
+    private final SpeculativeRead getColumnsRead;
+
+    /**
+     * Columns fetched per row by the scans and the zero copy reads, the same limit of the template queries
+     */
+    private static final int ROW_COLUMN_COUNT = 100;
+
+    /**
+     * Column value types, each one written and read with the codec registered for its java type
+     * @see ColumnCodecs
      */
     public static enum Type {
-        STRING,
-        LONG,
-        BYTE_ARRAY
+        STRING(String.class),
+        INT(Integer.class),
+        LONG(Long.class),
+        DOUBLE(Double.class),
+        BOOLEAN(Boolean.class),
+        UUID(java.util.UUID.class),
+        DATE(Date.class),
+        BYTE_ARRAY(byte[].class),
+        BYTE_BUFFER(ByteBuffer.class);
+
+        private final Class<?> javaType;
+
+        private Type(Class<?> javaType) {
+            this.javaType = javaType;
+        }
+
+        /**
+         * @return the class of the values of this type
+         */
+        public Class<?> getJavaType() {
+            return javaType;
+        }
+
+        /**
+         * @return the codec of the values of this type
+         */
+        public Serializer<?> getSerializer() {
+            return ColumnCodecs.forClass(javaType);
+        }
     };
 
     // default constructor
     public CassandraDAOImpl(String columnFamily) {
-        super();
+        super(columnFamily);
         this.columnFamily = columnFamily;
+        this.template = new ThriftColumnFamilyTemplate<String, String>(keyspace, columnFamily, stringSerializer, stringSerializer);
+        this.cache = session.getRowCache(columnFamily);
+        this.incrementStats = operationStats("Counters", "increment");
+        this.deleteStats = operationStats(columnFamily, "delete");
+        this.updateStats = operationStats(columnFamily, "update");
+        this.updateColumnStats = operationStats(columnFamily, "updateColumn");
+        this.getColumnsStats = operationStats(columnFamily, "getColumns");
+        this.getColumnStats = operationStats(columnFamily, "getColumn");
+        this.visitColumnsStats = operationStats(columnFamily, "visitColumns");
+        this.getColumnBufferStats = operationStats(columnFamily, "getColumnBuffer");
+        this.getColumnsRead = speculativeRead(columnFamily);
+    }
+
+    /**
+     * Creates a DAO sharing an existing session
+     * @param session shared cluster/keyspace session
+     * @param columnFamily column family name
+     */
+    public CassandraDAOImpl(CassandraSession session, String columnFamily) {
+        super(session, columnFamily);
+        this.columnFamily = columnFamily;
+        this.template = new ThriftColumnFamilyTemplate<String, String>(keyspace, columnFamily, stringSerializer, stringSerializer);
+        this.cache = session.getRowCache(columnFamily);
+        this.incrementStats = operationStats("Counters", "increment");
+        this.deleteStats = operationStats(columnFamily, "delete");
+        this.updateStats = operationStats(columnFamily, "update");
+        this.updateColumnStats = operationStats(columnFamily, "updateColumn");
+        this.getColumnsStats = operationStats(columnFamily, "getColumns");
+        this.getColumnStats = operationStats(columnFamily, "getColumn");
+        this.visitColumnsStats = operationStats(columnFamily, "visitColumns");
+        this.getColumnBufferStats = operationStats(columnFamily, "getColumnBuffer");
+        this.getColumnsRead = speculativeRead(columnFamily);
     }
 
     public void increment(String key, String columnName) {
@@ -50,10 +178,18 @@ public class CassandraDAOImpl extends CassandraBase {
     }
     
     public void increment(String key, String columnName, long value) {
-        Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
-        HCounterColumn<String> column = HFactory.createCounterColumn(columnName, value); 
-        mutator.addCounter(key,"Counters",column);
-        mutator.execute();
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            // the counters keep the consistency levels of their own column family
+            Mutator<String> mutator = HFactory.createMutator(session.getKeyspace("Counters"), stringSerializer);
+            HCounterColumn<String> column = HFactory.createCounterColumn(columnName, value); 
+            mutator.addCounter(key,"Counters",column);
+            mutator.execute();
+            ok = true;
+        } finally {
+            incrementStats.record(start, ok);
+        }
     }
     
     /**
@@ -72,8 +208,16 @@ public class CassandraDAOImpl extends CassandraBase {
      * @throws HectorException
      */
     public void deleteColumn(String id, String column) throws HectorException {
-        Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
-        mutator.delete(id, columnFamily, column, stringSerializer);
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+            mutator.delete(id, columnFamily, column, stringSerializer);
+            invalidate(id);
+            ok = true;
+        } finally {
+            deleteStats.record(start, ok);
+        }
     }
 
     /**
@@ -85,25 +229,38 @@ public class CassandraDAOImpl extends CassandraBase {
      * @throws HectorException
      */
     public void update(final String id, String column, Object value, Type type) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ColumnFamilyUpdater<String, String> updater = template.createUpdater(id);
+            updater.setColumn(createColumn(column, value, type));
 
-        ColumnFamilyTemplate<String, String> template = new ThriftColumnFamilyTemplate<String, String>(keyspace, columnFamily, stringSerializer,
-                stringSerializer);
-
-        ColumnFamilyUpdater<String, String> updater = template.createUpdater(id);
-        
-        if (type.equals(Type.STRING)) {
-            updater.setString(column, (String) value);
-        } else if (type.equals(Type.LONG)) {
-            updater.setLong(column, (Long) value);
-        } else if (type.equals(Type.BYTE_ARRAY)) {
-            updater.setByteArray(column, (byte[]) value);
-        } else {
-            throw new InvalidParameterException("Invalid type");
+            template.update(updater);
+            invalidate(id);
+            ok = true;
+        } finally {
+            updateStats.record(start, ok);
         }
-
-        template.update(updater);
     }
     
+    /**
+     * Updates a specific column inside key, at the given consistency level
+     * @param id key
+     * @param column key of column
+     * @param value value to be changed
+     * @param type enum describing the type of data
+     * @param level consistency level of this call, null for the level of the column family
+     * @throws HectorException
+     */
+    public void update(final String id, String column, Object value, Type type, HConsistencyLevel level) throws HectorException {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            update(id, column, value, type);
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
+    }
+
     /**
      * Updates a specific column inside key, and return the new timestamp of the column
      * @param id key
@@ -113,62 +270,174 @@ public class CassandraDAOImpl extends CassandraBase {
      * @throws HectorException
      */
     public Long updateColumn(final String id, String columnKey, Object value, Type type) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+            HColumn<String, ?> column = createColumn(columnKey, value, type);
+            mutator.insert(id, columnFamily, column);
+            invalidate(id);
+            ok = true;
 
-        Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
-        String COLUMN_FAMILY = columnFamily;
-        Long timestamp = 0L;
-
-        if (type.equals(Type.STRING)) {
-            HColumn<String, String> column = HFactory.createStringColumn(columnKey, (String) value);
-            mutator.insert(id, COLUMN_FAMILY, column);
-            timestamp = column.getClock();
-            
-        } else if (type.equals(Type.LONG)) {
-            HColumn<String, Long> column = HFactory.createColumn(columnKey, (Long) value, stringSerializer, longSerializer);
-            mutator.insert(id, COLUMN_FAMILY, column);
-            timestamp = column.getClock();
-            
-        } else if (type.equals(Type.BYTE_ARRAY)) {
-            HColumn<String, byte[]> column = HFactory.createColumn(columnKey, (byte[]) value, stringSerializer, byteArraySerializer);
-            mutator.insert(id, COLUMN_FAMILY, column);
-            timestamp = column.getClock();
-            
-        } else {
-            throw new InvalidParameterException("Invalid type");
+            return column.getClock()/1000L; // return in ms
+        } finally {
+            updateColumnStats.record(start, ok);
         }
+    }
 
-        return timestamp/1000L; // return in ms
+    /**
+     * Builds a column with the codec of the type, the value is encoded straight into the column buffer
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> HColumn<String, V> createColumn(String name, Object value, Type type) {
+        if (!type.getJavaType().isInstance(value)) {
+            throw new InvalidParameterException("Invalid " + type + " value: " + value);
+        }
+        return HFactory.createColumn(name, (V) value, stringSerializer, (Serializer<V>) type.getSerializer());
     }
 
     
     /**
-     * Get all of String columns from a column family key
+     * Get all of columns from a column family key as Strings, each value decoded with the declared type of
+     * its column (the columns without declared type are read as UTF-8). The whole row is held in memory,
+     * wide rows are walked with {@link #iterateColumns(String)}. A slow read is sent again to another host (see
+     * {@link CassandraSession#createSpeculativeRead(String)})
      * @param id key of column family
      * @return a Map with related parameters
      * @throws HectorException
      */
     public Map<String,String> getColumns(final String id) throws HectorException {
+        return toStringMap(queryColumns(id, true));
+    }
 
-        ColumnFamilyTemplate<String, String> template = new ThriftColumnFamilyTemplate<String, String>(keyspace, columnFamily, stringSerializer,
-                stringSerializer);
+    /**
+     * Get all of columns from a column family key as Strings, read from the cluster at the given consistency level
+     * (the row cache is not used)
+     * @param id key of column family
+     * @param level consistency level of this call, null for the level of the column family
+     * @return a Map with related parameters
+     * @throws HectorException
+     */
+    public Map<String,String> getColumns(final String id, HConsistencyLevel level) throws HectorException {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            return toStringMap(queryColumns(id, false));
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
+    }
 
-        ColumnFamilyResult<String, String> res = template.queryColumns(id);
-        
-        Map<String,String> columns = new TreeMap<String, String>();
-        
+    /**
+     * Get some columns from a column family key as Strings, only the named columns are fetched
+     * @param id key of column family
+     * @param names names of the wanted columns
+     * @return a Map with the found columns
+     * @throws HectorException
+     */
+    public Map<String,String> getColumns(final String id, String... names) throws HectorException {
+        return toStringMap(queryColumns(id, true, names));
+    }
+
+    /**
+     * Get all of columns from a column family key, typed by the column family metadata
+     * (Long for LongType, String for UTF8Type, ByteBuffer for BytesType and undeclared columns...)
+     * @param id key of column family
+     * @return a Map with the typed values
+     * @throws HectorException
+     */
+    public Map<String,Object> getTypedColumns(final String id) throws HectorException {
+        return toTypedMap(queryColumns(id, true));
+    }
+
+    /**
+     * Get some columns from a column family key, typed by the column family metadata
+     * @param id key of column family
+     * @param names names of the wanted columns
+     * @return a Map with the found columns
+     * @throws HectorException
+     */
+    public Map<String,Object> getTypedColumns(final String id, String... names) throws HectorException {
+        return toTypedMap(queryColumns(id, true, names));
+    }
+
+    private void invalidate(String id) {
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    /**
+     * Raw values of the row, from the cache when the whole row is wanted and the cache allowed
+     */
+    private Map<String, ByteBuffer> queryColumns(String id, boolean cached, String... names) {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Map<String, ByteBuffer> columns = readColumns(id, cached, names);
+            ok = true;
+            return columns;
+        } finally {
+            getColumnsStats.record(start, ok);
+        }
+    }
+
+    private Map<String, ByteBuffer> readColumns(final String id, boolean cached, final String... names) {
+        if (cached && cache != null && names.length == 0) {
+            Map<String, ByteBuffer> columns = new TreeMap<String, ByteBuffer>();
+            Map<String, byte[]> row = cache.get(id, rowLoader);
+            if (row != null) {
+                for (Map.Entry<String, byte[]> column : row.entrySet()) {
+                    columns.put(column.getKey(), ByteBuffer.wrap(column.getValue()));
+                }
+            }
+            return columns;
+        }
+
+        return getColumnsRead.call(new Callable<Map<String, ByteBuffer>>() {
+            @Override
+            public Map<String, ByteBuffer> call() {
+                return fetchColumns(id, names);
+            }
+        });
+    }
+
+    private Map<String, ByteBuffer> fetchColumns(String id, String... names) {
+        Map<String, ByteBuffer> columns = new TreeMap<String, ByteBuffer>();
+        ColumnFamilyResult<String, String> res = names.length == 0 ? template.queryColumns(id) : template.queryColumns(id,
+                Arrays.asList(names));
         if (res.hasResults()) {
-            
-               Collection<String> columnList = res.getColumnNames();
-               
-               for (String columnName : columnList) {
-                   HColumn<String, ByteBuffer> column = res.getColumn(columnName);
-                   String value = stringSerializer.fromByteBuffer(column.getValue());
-                   columns.put(column.getName(), value);
-               }
+            for (String columnName : res.getColumnNames()) {
+                columns.put(columnName, res.getColumn(columnName).getValue());
+            }
         }
+        return columns;
+    }
 
+    private Map<String,String> toStringMap(Map<String, ByteBuffer> values) {
+        ColumnMetadata metadata = getMetadata();
+        Map<String,String> columns = new TreeMap<String, String>();
+        for (Map.Entry<String, ByteBuffer> column : values.entrySet()) {
+            Object value = metadata.decode(column.getKey(), column.getValue());
+            columns.put(column.getKey(), value instanceof ByteBuffer ? stringSerializer.fromByteBuffer((ByteBuffer) value) : String.valueOf(value));
+        }
         return columns;
     }
+
+    private Map<String,Object> toTypedMap(Map<String, ByteBuffer> values) {
+        ColumnMetadata metadata = getMetadata();
+        Map<String,Object> columns = new TreeMap<String, Object>();
+        for (Map.Entry<String, ByteBuffer> column : values.entrySet()) {
+            columns.put(column.getKey(), metadata.decode(column.getKey(), column.getValue()));
+        }
+        return columns;
+    }
+
+    private ColumnMetadata getMetadata() {
+        if (metadata == null) {
+            metadata = session.getColumnMetadata(columnFamily);
+        }
+        return metadata;
+    }
     
     
 
@@ -182,20 +451,8 @@ public class CassandraDAOImpl extends CassandraBase {
      */
     public Object getColumnValue(final String id, String column, Type type) throws HectorException {
 
-        ColumnFamilyTemplate<String, String> template = new ThriftColumnFamilyTemplate<String, String>(keyspace, columnFamily, stringSerializer,
-                stringSerializer);
-
-        ColumnFamilyResult<String, String> res = template.queryColumns(id);
-
-        if (type.equals(Type.STRING)) {
-            return res.getString(column);
-        } else if (type.equals(Type.LONG)) {
-            return res.getLong(column);
-        } else if (type.equals(Type.BYTE_ARRAY)) {
-            return res.getByteArray(column);
-        } else {
-            return null;
-        }
+        HColumn<String, ByteBuffer> value = getColumn(id, column);
+        return value != null ? type.getSerializer().fromByteBuffer(value.getValue().duplicate()) : null;
     }
 
     /**
@@ -206,17 +463,126 @@ public class CassandraDAOImpl extends CassandraBase {
      * @throws HectorException
      */
     public HColumn<String, ByteBuffer> getColumn(final String id, String columnkey) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            HColumn<String, ByteBuffer> column = null;
+            
+            // fetch only the wanted column, not the whole row
+            ColumnFamilyResult<String, String> res = template.queryColumns(id, Collections.singletonList(columnkey));
+            if (res.hasResults()) {
+                column = res.getColumn(columnkey);
+            }
+            ok = true;
+            
+            return column;
+        } finally {
+            getColumnStats.record(start, ok);
+        }
+    }
 
-        ColumnFamilyTemplate<String, String> template = new ThriftColumnFamilyTemplate<String, String>(keyspace, columnFamily, stringSerializer,
-                stringSerializer);
+    /**
+     * Reads the columns of a key without copying their names or values: the visitor gets read-only views over the
+     * thrift result, with no intermediate map or strings. The row cache is not used (it keeps no timestamps)
+     * @param id key
+     * @param visitor receives every found column
+     * @param names names of the wanted columns, none for the whole row (up to 100 columns)
+     * @return the number of visited columns
+     * @throws HectorException
+     */
+    public int visitColumns(final String id, ColumnVisitor visitor, String... names) throws HectorException {
+        List<Column> columns = getSlice(visitColumnsStats, id, names);
+        for (Column column : columns) {
+            visitor.visit(column.bufferForName().asReadOnlyBuffer(), column.bufferForValue().asReadOnlyBuffer(), column.getTimestamp());
+        }
+        return columns.size();
+    }
 
-        HColumn<String, ByteBuffer> column = null;
-        
-        ColumnFamilyResult<String, String> res = template.queryColumns(id);
-        if (res.hasResults()) {
-            column = res.getColumn(columnkey);
+    /**
+     * Get the value of a column without copying it
+     * @param id key
+     * @param column column name
+     * @return a read-only view of the value, null when the column does not exist
+     * @throws HectorException
+     */
+    public ByteBuffer getColumnBuffer(final String id, String column) throws HectorException {
+        List<Column> columns = getSlice(getColumnBufferStats, id, column);
+        return columns.isEmpty() ? null : columns.get(0).bufferForValue().asReadOnlyBuffer();
+    }
+
+    /**
+     * Raw thrift slice of a key, the whole row (up to ROW_COLUMN_COUNT columns) when no name is given
+     */
+    private List<Column> getSlice(OperationStats stats, String id, String... names) {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<Column> columns = querySlice(id, names);
+            ok = true;
+            return columns;
+        } finally {
+            stats.record(start, ok);
+        }
+    }
+
+    private List<Column> querySlice(String id, String... names) {
+        final ByteBuffer key = stringSerializer.toByteBuffer(id);
+        final ColumnParent columnParent = new ColumnParent(columnFamily);
+        final SlicePredicate predicate = new SlicePredicate();
+        if (names.length == 0) {
+            predicate.setSlice_range(new SliceRange(ByteBuffer.wrap(new byte[0]), ByteBuffer.wrap(new byte[0]), false, ROW_COLUMN_COUNT));
+        } else {
+            predicate.setColumn_names(stringSerializer.toBytesList(Arrays.asList(names)));
         }
-        
-        return column;
+
+        return ((ExecutingKeyspace) keyspace).doExecute(new KeyspaceOperationCallback<List<Column>>() {
+            @Override
+            public List<Column> doInKeyspace(KeyspaceService ks) throws HectorException {
+                return ks.getSlice(key, columnParent, predicate);
+            }
+        }).get();
+    }
+
+    /**
+     * Walks all of the columns of a row page by page, sized by the properties cassandra.columns.pageSize (columns
+     * per query) and cassandra.columns.prefetch (read the next page in background). The row cache is not used
+     * @param id key
+     * @return a lazy iterator of the columns, in comparator order
+     * @see ColumnIterator
+     */
+    public ColumnIterator<String, ByteBuffer> iterateColumns(final String id) {
+        SmartProperties properties = session.getProperties();
+        int pageSize = properties.getInt("cassandra.columns.pageSize", 1000, 1, 100000);
+        boolean prefetch = properties.getBoolean("cassandra.columns.prefetch", false);
+        return iterateColumns(id, null, null, false, pageSize, prefetch);
+    }
+
+    /**
+     * Walks a range of columns of a row page by page, the memory used is bounded by the page size
+     * @param id key
+     * @param start first column name (inclusive), null for the first column of the row
+     * @param finish last column name (inclusive), null for the last column of the row
+     * @param reversed true to walk the columns from the last one (start then comes after finish)
+     * @param pageSize number of columns fetched per query
+     * @param prefetch true to read the next page in background (on the async executor of the session) while the
+     *            current one is consumed
+     * @return a lazy iterator of the columns
+     * @see ColumnIterator
+     */
+    public ColumnIterator<String, ByteBuffer> iterateColumns(final String id, String start, String finish, boolean reversed, int pageSize,
+            boolean prefetch) {
+        return new ColumnIterator<String, ByteBuffer>(keyspace, columnFamily, id, stringSerializer, ByteBufferSerializer.get(), start,
+                finish, reversed, pageSize, prefetch ? session.getAsyncExecutor() : null);
+    }
+
+    /**
+     * Reads every row of the column family in parallel, to export or aggregate it without loading it in memory
+     * @param callback receives every row (up to 100 columns each), called concurrently from the scan threads
+     * @return the number of rows read
+     * @throws HectorException
+     * @see TokenRangeScanner
+     */
+    public long scanParallel(RowCallback<Row<String, String, ByteBuffer>> callback) throws HectorException {
+        return createScanner(columnFamily, stringSerializer, ByteBufferSerializer.get(), ROW_COLUMN_COUNT).scan(callback);
     }
 }
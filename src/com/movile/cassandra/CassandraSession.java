@@ -0,0 +1,705 @@
+package com.movile.cassandra;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.cassandra.connection.HClientPool;
+import me.prettyprint.cassandra.connection.HConnectionManager;
+import me.prettyprint.cassandra.connection.LoadBalancingPolicy;
+import me.prettyprint.cassandra.service.CassandraHost;
+import me.prettyprint.cassandra.service.CassandraHostConfigurator;
+import me.prettyprint.cassandra.service.ExhaustedPolicy;
+import me.prettyprint.cassandra.service.FailoverPolicy;
+import me.prettyprint.cassandra.service.ThriftCluster;
+import me.prettyprint.hector.api.Cluster;
+import me.prettyprint.hector.api.HConsistencyLevel;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.exceptions.HectorException;
+import me.prettyprint.hector.api.factory.HFactory;
+
+import org.apache.log4j.Logger;
+
+import com.movile.cassandra.metrics.DAOMetrics;
+import com.movile.utils.AppProperties;
+import com.movile.utils.PropertiesDiff;
+import com.movile.utils.PropertiesWatcher;
+import com.movile.utils.SmartProperties;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Shared Cluster/Keyspace handle used by the DAOs
+ *
+ * The cluster and keyspace are built only once and every DAO holds a reference to the same session.
+ * The session is reference counted: each DAO retains it on construction and releases it on shutdown,
+ * the hector connection pool is closed only when the last reference is released.
+ *
+ * The pool settings and the host list can be changed while the session is in use, see {@link #reconfigure(SmartProperties)}.
+ */
+public class CassandraSession implements PropertiesWatcher.Listener {
+
+    private static Logger log = Logger.getLogger("cassandra");
+
+    public static final String KEYSPACE = "Company";
+
+    /**
+     * Guards the reference counters and the default session
+     */
+    private static final Object lock = new Object();
+
+    private static CassandraSession defaultSession;
+
+    /**
+     * Properties read by {@link #reconfigure(SmartProperties)}
+     */
+    private static final String[] POOL_PROPERTIES = { "cassandra.ips", "cassandra.maxActive", "cassandra.maxIdle", "cassandra.maxWaitTime" };
+
+    private final Cluster cluster;
+    private final Keyspace keyspace;
+
+    /**
+     * Keyspaces by pair of consistency levels ("READ/WRITE") and by column family
+     */
+    private final Map<String, Keyspace> consistencyKeyspaces = new HashMap<String, Keyspace>();
+    private final Map<String, Keyspace> columnFamilyKeyspaces = new HashMap<String, Keyspace>();
+
+    /**
+     * Host and pool configuration the cluster was built with, null when unknown
+     */
+    private final CassandraHostConfigurator hostConfigurator;
+
+    /**
+     * Properties the session was built from, read by the per column family settings (consistency, cache,
+     * speculative reads) and the async executor
+     */
+    private final SmartProperties properties;
+
+    /**
+     * Serializes the reconfigurations
+     */
+    private final Object reconfigureLock = new Object();
+
+    /**
+     * Drains and closes the retired pools one at a time, off the thread reconfiguring the session
+     */
+    private final ExecutorService retirer;
+
+    private int references;
+    private boolean closed;
+
+    /**
+     * Background executor of the async DAOs, created on first use
+     */
+    private AsyncExecutor asyncExecutor;
+
+    /**
+     * Executor of the attempts of the speculative reads, created on first use
+     */
+    private AsyncExecutor speculativeExecutor;
+
+    /**
+     * Row caches by column family, null for the column families without cache
+     */
+    private final Map<String, RowCache> rowCaches = new HashMap<String, RowCache>();
+
+    /**
+     * Declared column types by column family, described on first use
+     */
+    private final Map<String, ColumnMetadata> columnMetadata = new HashMap<String, ColumnMetadata>();
+
+    /**
+     * Latencies of the DAO operations
+     */
+    private final DAOMetrics metrics;
+
+    /**
+     * Creates a session over an already built cluster and keyspace, the caller owns the first reference
+     * @param cluster hector cluster
+     * @param keyspace keyspace bound to the cluster
+     */
+    public CassandraSession(Cluster cluster, Keyspace keyspace) {
+        this(cluster, keyspace, null);
+    }
+
+    /**
+     * Creates a session over an already built cluster and keyspace, the caller owns the first reference
+     * @param cluster hector cluster
+     * @param keyspace keyspace bound to the cluster
+     * @param hostConfigurator host and pool configuration of the cluster, needed by {@link #reconfigure(SmartProperties)}
+     */
+    public CassandraSession(Cluster cluster, Keyspace keyspace, CassandraHostConfigurator hostConfigurator) {
+        this(cluster, keyspace, hostConfigurator, AppProperties.getDefaultInstance());
+    }
+
+    /**
+     * Creates a session over an already built cluster and keyspace, the caller owns the first reference
+     * @param cluster hector cluster
+     * @param keyspace keyspace bound to the cluster
+     * @param hostConfigurator host and pool configuration of the cluster, needed by {@link #reconfigure(SmartProperties)}
+     * @param properties configuration source of the session settings
+     */
+    public CassandraSession(Cluster cluster, Keyspace keyspace, CassandraHostConfigurator hostConfigurator, SmartProperties properties) {
+        this.cluster = cluster;
+        this.keyspace = keyspace;
+        this.hostConfigurator = hostConfigurator;
+        this.properties = properties;
+        this.references = 1;
+        final String retirerName = "cassandra-retire-" + cluster.getName();
+        this.retirer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, retirerName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        metrics = new DAOMetrics(cluster.getName(), properties.getBoolean("cassandra.metrics.jmx", true));
+        metrics.startLogger(properties.getLong("cassandra.metrics.logInterval", 0L, 0L, Long.MAX_VALUE), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Get the default session, built from the application properties on the first call
+     * and retained on behalf of the caller, who must {@link #release()} it when done
+     * @return the shared session
+     */
+    public static CassandraSession acquire() {
+        synchronized (lock) {
+            if (defaultSession == null) {
+                defaultSession = create(AppProperties.getDefaultInstance());
+                return defaultSession;
+            }
+            return defaultSession.retain();
+        }
+    }
+
+    /**
+     * Builds a new session from the cassandra.* properties
+     * @param properties configuration source
+     * @return a new session, retained once
+     */
+    public static CassandraSession create(SmartProperties properties) {
+        String hosts = properties.getString("cassandra.ips", "127.0.0.1:9106");
+        String clusterName = properties.getString("cassandra.clusterName", "sbs01_cluster");
+        int maxActive = properties.getInt("cassandra.maxActive", 50);
+        int maxIdle = properties.getInt("cassandra.maxIdle", 5);
+        int maxWaitTime = 1000 * properties.getInt("cassandra.maxWaitTime", 30);
+        int reconnectInterval = properties.getInt("cassandra.reconnectInterval", 5);
+        boolean autoDiscoveryHosts = properties.getBoolean("cassandra.autoDiscoveryHosts", false);
+
+        // cassandra host and pool configurations
+        CassandraHostConfigurator hostConfigurator = new CassandraHostConfigurator(hosts);
+
+        hostConfigurator.setMaxWaitTimeWhenExhausted(maxWaitTime);
+        hostConfigurator.setExhaustedPolicy(ExhaustedPolicy.WHEN_EXHAUSTED_GROW);
+        hostConfigurator.setMaxActive(maxActive);
+        hostConfigurator.setCassandraThriftSocketTimeout(maxWaitTime);
+        hostConfigurator.setMaxIdle(maxIdle);
+
+        hostConfigurator.setRetryDownedHosts(true);
+        hostConfigurator.setRetryDownedHostsDelayInSeconds(reconnectInterval);
+
+        hostConfigurator.setAutoDiscoverHosts(autoDiscoveryHosts);
+        hostConfigurator.setAutoDiscoveryDelayInSeconds(60);
+
+        return create(clusterName, hostConfigurator, properties);
+    }
+
+    /**
+     * Builds a new session over the given host configuration, with the settings of the application properties
+     * @param clusterName cluster name
+     * @param hostConfigurator hosts and pool configuration
+     * @return a new session, retained once
+     */
+    public static CassandraSession create(String clusterName, CassandraHostConfigurator hostConfigurator) {
+        return create(clusterName, hostConfigurator, AppProperties.getDefaultInstance());
+    }
+
+    /**
+     * Builds a new session over the given host configuration
+     * @param clusterName cluster name
+     * @param hostConfigurator hosts and pool configuration
+     * @param properties configuration source of the balancing, consistency and session settings
+     * @return a new session, retained once
+     */
+    public static CassandraSession create(String clusterName, CassandraHostConfigurator hostConfigurator, SmartProperties properties) {
+
+        // requests sent to the fastest hosts, the pools are still created by the configured policy
+        LoadBalancingPolicy balancing = hostConfigurator.getLoadBalancingPolicy();
+        if (properties.getBoolean("cassandra.balancing.latencyAware", true) && !(balancing instanceof LatencyAwareBalancingPolicy)) {
+            double weight = properties.getDouble("cassandra.balancing.latencyWeight", 0.3);
+            if (weight <= 0 || weight > 1) {
+                log.warn("Property cassandra.balancing.latencyWeight out of range ]0,1] (" + weight + "). Assuming 0.3");
+                weight = 0.3;
+            }
+            long probeInterval = properties.getLong("cassandra.balancing.probeInterval", 1000L, 1L, Long.MAX_VALUE);
+            hostConfigurator.setLoadBalancingPolicy(new LatencyAwareBalancingPolicy(balancing, weight, probeInterval,
+                    TimeUnit.MILLISECONDS));
+        }
+
+        // a cluster of its own, not the one registered by name in HFactory: the configuration and the policies
+        // of this session are applied and releasing another session of the same cluster does not close this one
+        Cluster cluster = new ThriftCluster(clusterName, hostConfigurator);
+
+        // set the consistency level
+        ConsistencyPolicy consistencyPolicy = new ConsistencyPolicy(defaultConsistency(properties, "read"), defaultConsistency(properties,
+                "write"));
+
+        Keyspace keyspace = HFactory.createKeyspace(KEYSPACE, cluster, consistencyPolicy, FailoverPolicy.ON_FAIL_TRY_ALL_AVAILABLE);
+
+        log.info("Cassandra session created for cluster " + clusterName);
+        return new CassandraSession(cluster, keyspace, hostConfigurator, properties);
+    }
+
+    /**
+     * Applies the cassandra.* pool properties (ips, maxActive, maxIdle and maxWaitTime) to the live connection pools,
+     * without dropping the requests in flight:
+     * <ul>
+     * <li>the new hosts get a pool and the hosts no longer listed leave the balancing at once, their pools are drained
+     * then closed in background. A host is kept when the new list has no live host</li>
+     * <li>the limits of the hosts are updated in place: a lower maxActive caps the pools at once, maxIdle and the
+     * socket timeout (maxWaitTime) apply to the next connections</li>
+     * <li>a higher maxActive and the exhausted wait (maxWaitTime) are fixed when a hector pool is created: the pools
+     * are replaced in background one host at a time, each is drained while the requests go to the other hosts. With
+     * a single live host there is nowhere to send the requests, these two settings then apply when the pool is next
+     * recreated (host down and back)</li>
+     * </ul>
+     * A drain waits for the requests in flight up to maxWaitTime, the call returns without waiting for it.
+     * @param properties configuration source
+     * @return what changed, one line per change
+     * @throws IllegalStateException when the session was not built with its host configuration
+     */
+    public List<String> reconfigure(SmartProperties properties) {
+        if (hostConfigurator == null) {
+            throw new IllegalStateException("Cassandra session built without its host configuration, it can not be reconfigured");
+        }
+        String hosts = properties.getString("cassandra.ips", "127.0.0.1:9106");
+        int maxActive = properties.getInt("cassandra.maxActive", 50);
+        int maxIdle = properties.getInt("cassandra.maxIdle", 5);
+        int maxWaitTime = 1000 * properties.getInt("cassandra.maxWaitTime", 30);
+
+        synchronized (reconfigureLock) {
+            List<String> changes = new ArrayList<String>();
+            HConnectionManager manager = cluster.getConnectionManager();
+
+            Set<CassandraHost> known = new LinkedHashSet<CassandraHost>(manager.getHosts());
+            if (hostConfigurator.getRetryDownedHosts()) {
+                known.addAll(manager.getDownedHosts());
+            }
+
+            // the limits, the configurator is applied to the hosts added from now on (new, retried or discovered)
+            boolean recreate = false;
+            if (!known.isEmpty()) {
+                CassandraHost sample = known.iterator().next();
+                if (sample.getMaxActive() != maxActive) {
+                    changes.add("maxActive: " + sample.getMaxActive() + " -> " + maxActive);
+                    recreate = maxActive > sample.getMaxActive();
+                }
+                if (sample.getMaxIdle() != maxIdle) {
+                    changes.add("maxIdle: " + sample.getMaxIdle() + " -> " + maxIdle);
+                }
+                if (sample.getMaxWaitTimeWhenExhausted() != maxWaitTime) {
+                    changes.add("maxWaitTime: " + sample.getMaxWaitTimeWhenExhausted() + " -> " + maxWaitTime + " ms");
+                    recreate = true;
+                }
+            }
+            hostConfigurator.setMaxActive(maxActive);
+            hostConfigurator.setMaxIdle(maxIdle);
+            hostConfigurator.setMaxWaitTimeWhenExhausted(maxWaitTime);
+            hostConfigurator.setCassandraThriftSocketTimeout(maxWaitTime);
+            hostConfigurator.setHosts(hosts);
+            for (CassandraHost host : known) {
+                hostConfigurator.applyConfig(host);
+            }
+
+            // the hosts, added before the others are removed so there is always a pool to send the requests to
+            Set<CassandraHost> listed = new LinkedHashSet<CassandraHost>();
+            for (String url : hosts.split(",")) {
+                if (url.trim().length() > 0) {
+                    listed.add(new CassandraHost(url.trim()));
+                }
+            }
+            for (CassandraHost host : listed) {
+                if (!known.contains(host)) {
+                    changes.add(manager.addCassandraHost(host) ? "host added: " + host.getUrl() : "host not added: " + host.getUrl());
+                }
+            }
+            for (CassandraHost host : known) {
+                if (listed.contains(host)) {
+                    continue;
+                }
+                if (manager.getHosts().contains(host) && manager.getHosts().size() == 1) {
+                    changes.add("host kept: " + host.getUrl() + " (no other live host)");
+                    continue;
+                }
+                HClientPool pool = suspend(manager, host);
+                if (pool != null) {
+                    retirer.execute(new Retirement(manager, host, pool, maxWaitTime, false));
+                    changes.add("host removed: " + host.getUrl());
+                } else if (manager.removeCassandraHost(host)) {
+                    changes.add("host removed: " + host.getUrl());
+                }
+            }
+
+            // the settings fixed at pool creation
+            if (recreate) {
+                for (CassandraHost host : new ArrayList<CassandraHost>(manager.getHosts())) {
+                    if (!known.contains(host)) {
+                        continue; // just created with the new settings
+                    }
+                    if (manager.getHosts().size() < 2) {
+                        changes.add("pool of " + host.getUrl() + " kept, the higher maxActive and maxWaitTime apply when it is recreated");
+                    } else {
+                        retirer.execute(new Retirement(manager, host, null, maxWaitTime, true));
+                        changes.add("pool of " + host.getUrl() + " recreated in background");
+                    }
+                }
+            }
+
+            if (!changes.isEmpty()) {
+                log.info("Cassandra session of cluster " + cluster.getName() + " reconfigured: " + changes);
+            }
+            return changes;
+        }
+    }
+
+    /**
+     * Takes a host out of the balancing, a request that picked it just before still completes on its pool
+     * @return the pool of the host, null when the host has no live pool
+     */
+    private static HClientPool suspend(HConnectionManager manager, CassandraHost host) {
+        HClientPool pool = null;
+        for (HClientPool candidate : manager.getActivePools()) {
+            if (candidate.getCassandraHost().equals(host)) {
+                pool = candidate;
+            }
+        }
+        return pool != null && manager.suspendCassandraHost(host) ? pool : null;
+    }
+
+    /**
+     * Drain and close of a suspended pool, then its replacement when recreating. Hector only removes the hosts in
+     * the balancing (removeCassandraHost), the suspended pool is dropped through the live view of the suspended
+     * hosts instead, so the host never takes requests again while it is closed
+     */
+    private static final class Retirement implements Runnable {
+
+        private final HConnectionManager manager;
+        private final CassandraHost host;
+        private final HClientPool suspended;
+        private final long maxWaitTime;
+        private final boolean recreate;
+
+        /**
+         * @param suspended pool already taken out of the balancing, null to suspend the host when the task runs
+         * @param recreate true to create a new pool for the host once the old one is closed
+         */
+        Retirement(HConnectionManager manager, CassandraHost host, HClientPool suspended, long maxWaitTime, boolean recreate) {
+            this.manager = manager;
+            this.host = host;
+            this.suspended = suspended;
+            this.maxWaitTime = maxWaitTime;
+            this.recreate = recreate;
+        }
+
+        @Override
+        public void run() {
+            HClientPool pool = suspended;
+            if (pool == null) {
+                // the other hosts may have gone meanwhile, the last live pool is kept
+                if (manager.getHosts().size() < 2 || (pool = suspend(manager, host)) == null) {
+                    log.info("Pool of " + host.getUrl() + " not recreated, no other live host");
+                    return;
+                }
+            }
+            long deadline = System.currentTimeMillis() + maxWaitTime;
+            while (pool.getNumActive() > 0 && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (manager.getSuspendedCassandraHosts().remove(host)) {
+                pool.shutdown();
+            }
+            if (recreate && !Thread.currentThread().isInterrupted()) {
+                manager.addCassandraHost(host);
+            }
+        }
+    }
+
+    /**
+     * Reconfigures the session when the pool properties it was built from change
+     * @param diff properties added, changed or removed
+     */
+    @Override
+    public void propertiesChanged(PropertiesDiff diff) {
+        if (!isClosed() && diff.contains(POOL_PROPERTIES)) {
+            reconfigure(properties);
+        }
+    }
+
+    /**
+     * Adds a reference to this session
+     * @return this session
+     * @throws IllegalStateException if the session was already closed
+     */
+    public CassandraSession retain() {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Cassandra session already closed");
+            }
+            references++;
+            return this;
+        }
+    }
+
+    /**
+     * Removes a reference from this session, the connection pool is shut down when the last one is released
+     */
+    public void release() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (--references > 0) {
+                return;
+            }
+            closed = true;
+            if (defaultSession == this) {
+                defaultSession = null;
+            }
+        }
+
+        AsyncExecutor executor;
+        AsyncExecutor speculative;
+        synchronized (this) {
+            executor = asyncExecutor;
+            speculative = speculativeExecutor;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (speculative != null) {
+            speculative.shutdown();
+        }
+        retirer.shutdownNow();
+        metrics.close();
+
+        log.info("Closing cassandra session for cluster " + cluster.getName());
+        if (HFactory.getCluster(cluster.getName()) == cluster) {
+            HFactory.shutdownCluster(cluster);
+        } else {
+            cluster.getConnectionManager().shutdown();
+        }
+    }
+
+    /**
+     * @return the number of live references
+     */
+    public int getReferences() {
+        synchronized (lock) {
+            return references;
+        }
+    }
+
+    /**
+     * @return true after the last reference was released
+     */
+    public boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    /**
+     * Get the latency statistics of the DAO operations, registered as MBeans (cassandra.metrics.jmx) and logged
+     * every cassandra.metrics.logInterval seconds (0 to not log)
+     * @return the metrics of this session
+     */
+    public DAOMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the executor shared by the async DAOs of this session, the requests in flight are bounded by the
+     * cassandra.maxActive property and a request waits up to cassandra.maxWaitTime seconds for a free slot
+     * @return the executor
+     */
+    public synchronized AsyncExecutor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            int maxActive = properties.getInt("cassandra.maxActive", 50);
+            int maxWaitTime = properties.getInt("cassandra.maxWaitTime", 30);
+            asyncExecutor = new AsyncExecutor("cassandra-async-" + cluster.getName(), maxActive, maxWaitTime, TimeUnit.SECONDS);
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Get the executor of the speculative reads of this session, apart from the async DAOs so that the reads never
+     * take their slots. Its attempts in flight are bounded by cassandra.speculative.maxInFlight (default
+     * cassandra.maxActive), a read finding no free slot runs on the calling thread
+     * @return the executor
+     */
+    public synchronized AsyncExecutor getSpeculativeExecutor() {
+        if (speculativeExecutor == null) {
+            int maxInFlight = properties.getInt("cassandra.speculative.maxInFlight",
+                    Math.max(1, properties.getInt("cassandra.maxActive", 50)), 1, Integer.MAX_VALUE);
+            speculativeExecutor = new AsyncExecutor("cassandra-speculative-" + cluster.getName(), maxInFlight, 0, TimeUnit.SECONDS);
+        }
+        return speculativeExecutor;
+    }
+
+    /**
+     * Creates the speculative retry of a read operation of a column family: a read taking longer than the
+     * cassandra.speculative.[columnFamily].percentile of its recent latencies (default cassandra.speculative.percentile,
+     * 0 to never retry) is sent again to another host, not before cassandra.speculative.minDelay milliseconds
+     * @param columnFamily column family name
+     * @return the speculative read, one per DAO operation
+     */
+    public SpeculativeRead createSpeculativeRead(String columnFamily) {
+        double percentile = properties.getDouble("cassandra.speculative." + columnFamily + ".percentile",
+                properties.getDouble("cassandra.speculative.percentile", 0.0));
+        if (percentile < 0 || percentile >= 100) {
+            log.warn("Invalid percentile of the speculative reads of " + columnFamily + " (" + percentile + "). Assuming 0");
+            percentile = 0;
+        }
+        long minDelay = properties.getLong("cassandra.speculative.minDelay", 5L, 0L, Long.MAX_VALUE);
+        return new SpeculativeRead(this, percentile, minDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the row cache of a column family, shared by the DAOs of this session so that the writes of any of them
+     * invalidate it. A column family is cached when cassandra.cache.[columnFamily].ttl (seconds) is set, limited by
+     * cassandra.cache.[columnFamily].maxEntries and .maxBytes (defaults cassandra.cache.maxEntries and .maxBytes)
+     * @param columnFamily column family name
+     * @return the cache, null when the column family is not cached
+     */
+    public synchronized RowCache getRowCache(String columnFamily) {
+        if (!rowCaches.containsKey(columnFamily)) {
+            String prefix = "cassandra.cache." + columnFamily;
+            long ttl = properties.getLong(prefix + ".ttl", 0L, 0L, Long.MAX_VALUE);
+
+            RowCache cache = null;
+            if (ttl > 0) {
+                int maxEntries = properties.getInt(prefix + ".maxEntries", properties.getInt("cassandra.cache.maxEntries", 10000), 1,
+                        Integer.MAX_VALUE);
+                long maxBytes = properties.getLong(prefix + ".maxBytes", properties.getLong("cassandra.cache.maxBytes", 16L * 1024L * 1024L),
+                        1L, Long.MAX_VALUE);
+                cache = new RowCache(maxEntries, maxBytes, ttl, TimeUnit.SECONDS);
+                log.info("Caching the rows of " + columnFamily + " for " + ttl + " s, up to " + maxEntries + " rows and " + maxBytes
+                        + " bytes");
+            }
+            rowCaches.put(columnFamily, cache);
+        }
+        return rowCaches.get(columnFamily);
+    }
+
+    /**
+     * Get the declared value types of the columns of a column family, read from the cluster once per session
+     * @param columnFamily column family name
+     * @return the column metadata
+     * @throws HectorException when the column family does not exist
+     */
+    public synchronized ColumnMetadata getColumnMetadata(String columnFamily) throws HectorException {
+        ColumnMetadata metadata = columnMetadata.get(columnFamily);
+        if (metadata == null) {
+            metadata = ColumnMetadata.describe(cluster, keyspace.getKeyspaceName(), columnFamily);
+            columnMetadata.put(columnFamily, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Get the keyspace of a column family, whose reads and writes use the levels of the properties
+     * cassandra.consistency.[columnFamily].read and .write. The default levels are cassandra.consistency.read and
+     * .write, then cassandra.consistencyLevelPolicy (ONE when not set). Read once per column family and session.
+     * @param columnFamily column family name
+     * @return the keyspace to use for the column family
+     */
+    public synchronized Keyspace getKeyspace(String columnFamily) {
+        Keyspace columnFamilyKeyspace = columnFamilyKeyspaces.get(columnFamily);
+        if (columnFamilyKeyspace == null) {
+            String prefix = "cassandra.consistency." + columnFamily;
+            HConsistencyLevel defaultRead = defaultConsistency(properties, "read");
+            HConsistencyLevel defaultWrite = defaultConsistency(properties, "write");
+            HConsistencyLevel read = consistency(properties, prefix + ".read", defaultRead);
+            HConsistencyLevel write = consistency(properties, prefix + ".write", defaultWrite);
+            if (read != defaultRead || write != defaultWrite) {
+                log.info("Consistency of " + columnFamily + ": read " + read + ", write " + write);
+            }
+            columnFamilyKeyspace = getKeyspace(read, write);
+            columnFamilyKeyspaces.put(columnFamily, columnFamilyKeyspace);
+        }
+        return columnFamilyKeyspace;
+    }
+
+    /**
+     * Get a keyspace of this session with the given consistency levels, built once per pair of levels
+     * @param read level of the reads
+     * @param write level of the writes
+     * @return the keyspace
+     */
+    public synchronized Keyspace getKeyspace(HConsistencyLevel read, HConsistencyLevel write) {
+        String levels = read + "/" + write;
+        Keyspace levelsKeyspace = consistencyKeyspaces.get(levels);
+        if (levelsKeyspace == null) {
+            levelsKeyspace = HFactory.createKeyspace(keyspace.getKeyspaceName(), cluster, new ConsistencyPolicy(read, write),
+                    FailoverPolicy.ON_FAIL_TRY_ALL_AVAILABLE);
+            consistencyKeyspaces.put(levels, levelsKeyspace);
+        }
+        return levelsKeyspace;
+    }
+
+    /**
+     * @param operation read or write
+     * @return the level of cassandra.consistency.[operation], or else of cassandra.consistencyLevelPolicy
+     */
+    private static HConsistencyLevel defaultConsistency(SmartProperties properties, String operation) {
+        return consistency(properties, "cassandra.consistency." + operation, consistency(properties, "cassandra.consistencyLevelPolicy",
+                HConsistencyLevel.ONE));
+    }
+
+    private static HConsistencyLevel consistency(SmartProperties properties, String property, HConsistencyLevel defaultValue) {
+        String value = properties.getString(property, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return HConsistencyLevel.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Property " + property + " set to invalid consistency level (" + value + "). Assuming " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return the properties the session was built from
+     */
+    public SmartProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return the cluster
+     */
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * @return the keyspace
+     */
+    public Keyspace getKeyspace() {
+        return keyspace;
+    }
+}
@@ -0,0 +1,107 @@
+package com.movile.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import me.prettyprint.cassandra.serializers.AsciiSerializer;
+import me.prettyprint.cassandra.serializers.BooleanSerializer;
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.serializers.BytesArraySerializer;
+import me.prettyprint.cassandra.serializers.DateSerializer;
+import me.prettyprint.cassandra.serializers.DoubleSerializer;
+import me.prettyprint.cassandra.serializers.IntegerSerializer;
+import me.prettyprint.cassandra.serializers.LongSerializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.cassandra.serializers.UUIDSerializer;
+import me.prettyprint.hector.api.Serializer;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Registry of the column value codecs (hector serializers), by java type and by cassandra validation class
+ *
+ * The built-in codecs cover String, Integer, Long, Double, Boolean, UUID, Date, byte[] and ByteBuffer, more can be
+ * registered at startup. A subclass of a registered type (a java.sql.Timestamp, a heap ByteBuffer) uses the codec
+ * of the registered type.
+ */
+public final class ColumnCodecs {
+
+    private static final String MARSHAL_PACKAGE = "org.apache.cassandra.db.marshal.";
+
+    private static final ConcurrentMap<Class<?>, Serializer<?>> byClass = new ConcurrentHashMap<Class<?>, Serializer<?>>();
+    private static final ConcurrentMap<String, Serializer<?>> byValidationClass = new ConcurrentHashMap<String, Serializer<?>>();
+
+    static {
+        register(String.class, StringSerializer.get(), "UTF8Type");
+        register(Integer.class, IntegerSerializer.get(), "Int32Type");
+        register(Long.class, LongSerializer.get(), "LongType", "CounterColumnType");
+        register(Double.class, DoubleSerializer.get(), "DoubleType");
+        register(Boolean.class, BooleanSerializer.get(), "BooleanType");
+        register(UUID.class, UUIDSerializer.get(), "UUIDType", "TimeUUIDType", "LexicalUUIDType");
+        register(Date.class, DateSerializer.get(), "DateType");
+        register(byte[].class, BytesArraySerializer.get());
+        register(ByteBuffer.class, ByteBufferSerializer.get(), "BytesType");
+        byValidationClass.put("AsciiType", AsciiSerializer.get());
+    }
+
+    private ColumnCodecs() {
+    }
+
+    /**
+     * Registers a codec, replacing the previous one of the same type
+     * @param type java type of the values
+     * @param serializer codec of the values
+     * @param validationClasses cassandra validation classes decoded by this codec (short or full class names)
+     */
+    public static <T> void register(Class<T> type, Serializer<T> serializer, String... validationClasses) {
+        byClass.put(type, serializer);
+        for (String validationClass : validationClasses) {
+            byValidationClass.put(shortName(validationClass), serializer);
+        }
+    }
+
+    /**
+     * @param type java type of the values
+     * @return the codec of the type or of its closest registered superclass
+     * @throws IllegalArgumentException when no codec handles the type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Serializer<T> forClass(Class<T> type) {
+        Serializer<?> serializer = byClass.get(type);
+        if (serializer == null) {
+            for (Class<?> superclass = type.getSuperclass(); superclass != null && serializer == null; superclass = superclass.getSuperclass()) {
+                serializer = byClass.get(superclass);
+            }
+            if (serializer == null) {
+                throw new IllegalArgumentException("No codec for " + type.getName());
+            }
+            byClass.putIfAbsent(type, serializer);
+        }
+        return (Serializer<T>) serializer;
+    }
+
+    /**
+     * @param value a column value, not null
+     * @return the codec of the value type
+     * @throws IllegalArgumentException when no codec handles the type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Serializer<T> forValue(T value) {
+        return forClass((Class<T>) value.getClass());
+    }
+
+    /**
+     * @param validationClass cassandra validation class of a column, short (LongType) or full name
+     * @return the codec of the validation class, the ByteBuffer one when it is unknown or null
+     */
+    public static Serializer<?> forValidationClass(String validationClass) {
+        Serializer<?> serializer = validationClass != null ? byValidationClass.get(shortName(validationClass)) : null;
+        return serializer != null ? serializer : ByteBufferSerializer.get();
+    }
+
+    private static String shortName(String validationClass) {
+        return validationClass.startsWith(MARSHAL_PACKAGE) ? validationClass.substring(MARSHAL_PACKAGE.length()) : validationClass;
+    }
+}
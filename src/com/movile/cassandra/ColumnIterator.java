@@ -0,0 +1,163 @@
+package com.movile.cassandra;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.query.SliceQuery;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Lazy walk over the columns of a (wide) row
+ *
+ * Columns are fetched one page at a time with slice queries, the last column of a page is the start of the next
+ * one (the repeated boundary column is skipped), so at most one page is held in memory, two when prefetching.
+ * Nothing is read before the first call to {@link #hasNext()}, which throws the failures of the queries.
+ * With a prefetch executor the next page is read in background while the current one is consumed, when a slot of
+ * the executor is free (the page is read by the caller otherwise). Not thread safe, {@link #close()} cancels the
+ * prefetch of an iteration left before its end.
+ */
+public class ColumnIterator<N, V> implements Iterator<HColumn<N, V>> {
+
+    private final Keyspace keyspace;
+    private final String columnFamily;
+    private final String key;
+    private final Serializer<N> nameSerializer;
+    private final Serializer<V> valueSerializer;
+    private final N finish;
+    private final boolean reversed;
+    private final int pageSize;
+    private final AsyncExecutor prefetcher;
+
+    private Iterator<HColumn<N, V>> page;
+    private N lastName;
+    private boolean lastPage;
+    private Future<List<HColumn<N, V>>> nextPage;
+
+    /**
+     * @param keyspace keyspace to query
+     * @param columnFamily column family of the row
+     * @param key row key
+     * @param nameSerializer column name serializer
+     * @param valueSerializer column value serializer
+     * @param start first column name (inclusive), null for the first column of the row
+     * @param finish last column name (inclusive), null for the last column of the row
+     * @param reversed true to walk the columns from the last one (start then comes after finish)
+     * @param pageSize number of columns fetched per query
+     * @param prefetcher executor of the background reads of the next pages, null to read every page on demand
+     */
+    public ColumnIterator(Keyspace keyspace, String columnFamily, String key, Serializer<N> nameSerializer, Serializer<V> valueSerializer,
+            N start, N finish, boolean reversed, int pageSize, AsyncExecutor prefetcher) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        this.keyspace = keyspace;
+        this.columnFamily = columnFamily;
+        this.key = key;
+        this.nameSerializer = nameSerializer;
+        this.valueSerializer = valueSerializer;
+        this.finish = finish;
+        this.reversed = reversed;
+        this.pageSize = pageSize;
+        this.prefetcher = prefetcher;
+        this.lastName = start;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page == null) {
+            // the first page has no boundary column to skip
+            setPage(fetchPage(lastName, pageSize), false);
+        }
+        while (!page.hasNext()) {
+            if (lastPage) {
+                return false;
+            }
+            List<HColumn<N, V>> columns;
+            if (nextPage != null) {
+                columns = AsyncExecutor.await(nextPage);
+                nextPage = null;
+            } else {
+                columns = fetchPage(lastName, pageSize + 1);
+            }
+            setPage(columns, true);
+        }
+        return true;
+    }
+
+    @Override
+    public HColumn<N, V> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Ends the iteration, cancelling the background read of the next page if any
+     */
+    public void close() {
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+        page = Collections.<HColumn<N, V>> emptyList().iterator();
+        lastPage = true;
+    }
+
+    /**
+     * Takes a fetched page and starts the prefetch of the following one
+     * @param boundary true when the page starts from the last column of the previous one
+     */
+    private void setPage(List<HColumn<N, V>> columns, boolean boundary) {
+        // after the first page, one more column is asked to make up for the repeated boundary
+        lastPage = columns.size() < (boundary ? pageSize + 1 : pageSize);
+
+        // skip the boundary column, already returned as the last one of the previous page
+        int first = 0;
+        if (boundary && !columns.isEmpty() && sameName(lastName, columns.get(0).getName())) {
+            first = 1;
+        }
+        page = columns.subList(first, columns.size()).iterator();
+
+        if (!columns.isEmpty()) {
+            lastName = columns.get(columns.size() - 1).getName();
+        }
+
+        if (!lastPage && prefetcher != null) {
+            final N from = lastName;
+            nextPage = prefetcher.trySubmit(new Callable<List<HColumn<N, V>>>() {
+                @Override
+                public List<HColumn<N, V>> call() {
+                    return fetchPage(from, pageSize + 1);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads a page, a new query each time as the pages can be read from the prefetch threads
+     */
+    private List<HColumn<N, V>> fetchPage(N from, int count) {
+        SliceQuery<String, N, V> query = HFactory.createSliceQuery(keyspace, StringSerializer.get(), nameSerializer, valueSerializer);
+        query.setColumnFamily(columnFamily).setKey(key).setRange(from, finish, reversed, count);
+        return query.execute().get().getColumns();
+    }
+
+    private boolean sameName(N a, N b) {
+        return a != null && nameSerializer.toByteBuffer(a).equals(nameSerializer.toByteBuffer(b));
+    }
+}
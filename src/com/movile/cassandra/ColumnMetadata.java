@@ -0,0 +1,80 @@
+package com.movile.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.Cluster;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.ddl.ColumnDefinition;
+import me.prettyprint.hector.api.ddl.ColumnFamilyDefinition;
+import me.prettyprint.hector.api.ddl.KeyspaceDefinition;
+import me.prettyprint.hector.api.exceptions.HectorException;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Value codecs of the columns of a column family (with string column names), from its declared column_metadata
+ * and default_validation_class
+ */
+public class ColumnMetadata {
+
+    private final String columnFamily;
+    private final Map<String, Serializer<?>> serializers = new HashMap<String, Serializer<?>>();
+    private final Serializer<?> defaultSerializer;
+
+    /**
+     * @param definition column family definition, as described by the cluster
+     */
+    public ColumnMetadata(ColumnFamilyDefinition definition) {
+        columnFamily = definition.getName();
+        defaultSerializer = ColumnCodecs.forValidationClass(definition.getDefaultValidationClass());
+        for (ColumnDefinition column : definition.getColumnMetadata()) {
+            String name = StringSerializer.get().fromByteBuffer(column.getName().duplicate());
+            serializers.put(name, ColumnCodecs.forValidationClass(column.getValidationClass()));
+        }
+    }
+
+    /**
+     * Reads the definition of a column family from the cluster
+     * @param cluster cluster to ask
+     * @param keyspace keyspace name
+     * @param columnFamily column family name
+     * @return the column metadata
+     * @throws HectorException when the column family does not exist
+     */
+    public static ColumnMetadata describe(Cluster cluster, String keyspace, String columnFamily) throws HectorException {
+        KeyspaceDefinition definition = cluster.describeKeyspace(keyspace);
+        if (definition != null) {
+            for (ColumnFamilyDefinition cfDefinition : definition.getCfDefs()) {
+                if (cfDefinition.getName().equals(columnFamily)) {
+                    return new ColumnMetadata(cfDefinition);
+                }
+            }
+        }
+        throw new HectorException("Column family " + keyspace + "." + columnFamily + " not found");
+    }
+
+    /**
+     * @param column column name
+     * @return the codec of the column values, the default one when the column is not declared
+     */
+    public Serializer<?> getSerializer(String column) {
+        Serializer<?> serializer = serializers.get(column);
+        return serializer != null ? serializer : defaultSerializer;
+    }
+
+    /**
+     * @param column column name
+     * @param value value bytes, the buffer position is not changed
+     * @return the typed value (a ByteBuffer for the BytesType columns)
+     */
+    public Object decode(String column, ByteBuffer value) {
+        return getSerializer(column).fromByteBuffer(value.duplicate());
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnMetadata [columnFamily=" + columnFamily + ", columns=" + serializers.keySet() + "]";
+    }
+}
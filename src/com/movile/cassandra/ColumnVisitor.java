@@ -0,0 +1,20 @@
+package com.movile.cassandra;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Receives the columns of a row read without copies, one call per column in column name order
+ *
+ * The name and the value are read-only views over the bytes of the thrift result, nothing is copied or decoded
+ * before the call (a visitor wanting the name as a string decodes it, e.g. with StringSerializer).
+ */
+public interface ColumnVisitor {
+
+    /**
+     * @param name read-only view of the column name, the visitor may move its position and limit
+     * @param value read-only view of the value, the visitor may move its position and limit
+     * @param clock timestamp of the column (microseconds)
+     */
+    void visit(ByteBuffer name, ByteBuffer value, long clock);
+}
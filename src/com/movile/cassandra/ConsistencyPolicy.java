@@ -0,0 +1,94 @@
+package com.movile.cassandra;
+
+import me.prettyprint.cassandra.service.OperationType;
+import me.prettyprint.hector.api.ConsistencyLevelPolicy;
+import me.prettyprint.hector.api.HConsistencyLevel;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Read and write consistency levels of a keyspace, with a per-call override bound to the calling thread
+ *
+ * Hector 1.0 asks the policy of a keyspace for the level of an operation type only, not of a column family:
+ * the session builds one keyspace per pair of levels and hands each DAO the keyspace of its column family.
+ * The DAO methods taking a consistency level set the override around their hector calls, which run on the
+ * calling thread.
+ */
+public class ConsistencyPolicy implements ConsistencyLevelPolicy {
+
+    private static final ThreadLocal<HConsistencyLevel> override = new ThreadLocal<HConsistencyLevel>();
+
+    private final HConsistencyLevel read;
+    private final HConsistencyLevel write;
+
+    /**
+     * @param read level of the reads
+     * @param write level of the writes
+     */
+    public ConsistencyPolicy(HConsistencyLevel read, HConsistencyLevel write) {
+        this.read = read;
+        this.write = write;
+    }
+
+    @Override
+    public HConsistencyLevel get(OperationType op) {
+        HConsistencyLevel level = override.get();
+        if (level != null) {
+            return level;
+        }
+        return op == OperationType.WRITE || op == OperationType.META_WRITE ? write : read;
+    }
+
+    @Override
+    public HConsistencyLevel get(OperationType op, String cfName) {
+        return get(op);
+    }
+
+    /**
+     * @return level of the reads
+     */
+    public HConsistencyLevel getRead() {
+        return read;
+    }
+
+    /**
+     * @return level of the writes
+     */
+    public HConsistencyLevel getWrite() {
+        return write;
+    }
+
+    /**
+     * Sets the level of the next operations of the calling thread, whatever their type and keyspace
+     * @param level consistency level, null to use the levels of the keyspaces
+     * @return the previous override, to be given to {@link #restore(HConsistencyLevel)}
+     */
+    public static HConsistencyLevel override(HConsistencyLevel level) {
+        HConsistencyLevel previous = override.get();
+        override.set(level);
+        return previous;
+    }
+
+    /**
+     * @return the override of the calling thread, null when none
+     */
+    public static HConsistencyLevel current() {
+        return override.get();
+    }
+
+    /**
+     * Restores the override in place before {@link #override(HConsistencyLevel)}
+     * @param previous the value returned by override
+     */
+    public static void restore(HConsistencyLevel previous) {
+        if (previous == null) {
+            override.remove();
+        } else {
+            override.set(previous);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "read " + read + ", write " + write;
+    }
+}
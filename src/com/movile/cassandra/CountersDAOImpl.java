@@ -1,23 +1,161 @@
 package com.movile.cassandra;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.prettyprint.hector.api.HConsistencyLevel;
+import me.prettyprint.hector.api.beans.CounterRow;
+import me.prettyprint.hector.api.beans.CounterRows;
+import me.prettyprint.hector.api.beans.CounterSlice;
 import me.prettyprint.hector.api.beans.HCounterColumn;
+import me.prettyprint.hector.api.exceptions.HPoolRecoverableException;
+import me.prettyprint.hector.api.exceptions.HUnavailableException;
+import me.prettyprint.hector.api.exceptions.HectorException;
 import me.prettyprint.hector.api.factory.HFactory;
 import me.prettyprint.hector.api.mutation.Mutator;
 import me.prettyprint.hector.api.query.CounterQuery;
+import me.prettyprint.hector.api.query.MultigetSliceCounterQuery;
 import me.prettyprint.hector.api.query.QueryResult;
+import me.prettyprint.hector.api.query.SliceCounterQuery;
+
+import com.movile.cassandra.metrics.OperationStats;
+import com.movile.utils.SmartProperties;
 
 /**
  * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
  * Counter operations v0.8 feature
+ *
+ * In write-behind mode the increments are summed in memory per (key, column) and sent in batched counter
+ * mutations every flush interval, or as soon as the number of pending counters reaches the flush threshold.
+ * Increments are not idempotent: a failed batch keeps its deltas for the next flush only when cassandra reported
+ * it was not applied (no replica available, no connection to send it), any other failure (a timeout) may have
+ * applied it, the batch is then logged and dropped rather than counted twice. {@link #shutdown()} sends what is
+ * still pending, the adds afterwards are rejected.
  */
 public class CountersDAOImpl extends CassandraBase {
 
+    /**
+     * Marks a cell taken by a flush, the writers then start a new cell
+     */
+    private static final long FLUSHED = Long.MIN_VALUE;
+
+    /**
+     * Counters read per round trip by getAll
+     */
+    private static final int ROW_PAGE_SIZE = 1000;
+
     private String columnFamily;
 
+    /**
+     * Write-behind state, null timer when every increment is sent at once
+     */
+    private final ConcurrentMap<Cell, AtomicLong> pending = new ConcurrentHashMap<Cell, AtomicLong>();
+    private final ScheduledExecutorService timer;
+    private volatile boolean closed;
+    private final int flushThreshold;
+    private final int batchSize;
+    private final int chunkSize;
+    /**
+     * Latencies of the operations
+     */
+    private final OperationStats addStats;
+    private final OperationStats getStats;
+    private final OperationStats getAllStats;
+    private final OperationStats multiGetStats;
+    private final OperationStats flushStats;
+
+    /**
+     * Speculative retry of the counter reads
+     */
+    private final SpeculativeRead getRead;
+    private final SpeculativeRead multiGetRead;
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushRequested.set(false);
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("Error flushing the counters of " + columnFamily + ": " + e.toString(), e);
+            }
+        }
+    };
+
     // default constructor
     public CountersDAOImpl(String columnFamily) {
-        super();
+        super(columnFamily);
         this.columnFamily = columnFamily;
+
+        SmartProperties properties = session.getProperties();
+        this.flushThreshold = properties.getInt("cassandra.counters.flushThreshold", 1000, 1, Integer.MAX_VALUE);
+        this.batchSize = properties.getInt("cassandra.batch.maxMutations", 500, 1, 100000);
+        this.chunkSize = properties.getInt("cassandra.multiget.chunkSize", 100, 1, 10000);
+        this.addStats = operationStats(columnFamily, "add");
+        this.getStats = operationStats(columnFamily, "get");
+        this.getAllStats = operationStats(columnFamily, "getAll");
+        this.multiGetStats = operationStats(columnFamily, "multiGet");
+        this.flushStats = operationStats(columnFamily, "flush");
+        this.getRead = speculativeRead(columnFamily);
+        this.multiGetRead = speculativeRead(columnFamily);
+        this.timer = startTimer(properties.getLong("cassandra.counters.flushInterval", 0L, 0L, Long.MAX_VALUE), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a DAO sharing an existing session
+     * @param session shared cluster/keyspace session
+     * @param columnFamily counter column family name
+     */
+    public CountersDAOImpl(CassandraSession session, String columnFamily) {
+        this(session, columnFamily, session.getProperties());
+    }
+
+    /**
+     * Write-behind settings cassandra.counters.flushInterval (milliseconds) and .flushThreshold of the session
+     */
+    private CountersDAOImpl(CassandraSession session, String columnFamily, SmartProperties properties) {
+        this(session, columnFamily, properties.getLong("cassandra.counters.flushInterval", 0L, 0L, Long.MAX_VALUE), TimeUnit.MILLISECONDS,
+                properties.getInt("cassandra.counters.flushThreshold", 1000, 1, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Creates a DAO sharing an existing session
+     * @param session shared cluster/keyspace session
+     * @param columnFamily counter column family name
+     * @param flushInterval time between the write-behind flushes, 0 to send every increment at once
+     * @param unit unit of the interval
+     * @param flushThreshold number of pending counters that triggers a flush before the interval
+     */
+    public CountersDAOImpl(CassandraSession session, String columnFamily, long flushInterval, TimeUnit unit, int flushThreshold) {
+        super(session, columnFamily);
+        this.columnFamily = columnFamily;
+        this.flushThreshold = flushThreshold;
+        this.batchSize = session.getProperties().getInt("cassandra.batch.maxMutations", 500, 1, 100000);
+        this.chunkSize = session.getProperties().getInt("cassandra.multiget.chunkSize", 100, 1, 10000);
+        this.addStats = operationStats(columnFamily, "add");
+        this.getStats = operationStats(columnFamily, "get");
+        this.getAllStats = operationStats(columnFamily, "getAll");
+        this.multiGetStats = operationStats(columnFamily, "multiGet");
+        this.flushStats = operationStats(columnFamily, "flush");
+        this.getRead = speculativeRead(columnFamily);
+        this.multiGetRead = speculativeRead(columnFamily);
+        this.timer = startTimer(flushInterval, unit);
     }
 
     /**
@@ -39,35 +177,405 @@ public class CountersDAOImpl extends CassandraBase {
     }
 
     /**
-     * 
+     * Get a counter value, including the increments not flushed yet (but not the ones being flushed right now).
+     * A slow read is sent again to another host (see {@link CassandraSession#createSpeculativeRead(String)})
      * @param key
      * @param columnName
      * @return
      */
     public long get(String key, String columnName) {
-        
-        CounterQuery<String, String> query = HFactory.createCounterColumnQuery(keyspace, stringSerializer, stringSerializer);
-        query.setKey(key);
-        query.setName(columnName);
-        query.setColumnFamily(columnFamily);
-        
-        QueryResult<HCounterColumn<String>> result = query.execute();
-        return result.get().getValue();
-        
-    }
-    
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final CounterQuery<String, String> query = HFactory.createCounterColumnQuery(keyspace, stringSerializer, stringSerializer);
+            query.setKey(key);
+            query.setName(columnName);
+            query.setColumnFamily(columnFamily);
+
+            long stored = getRead.call(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    QueryResult<HCounterColumn<String>> result = query.execute();
+                    return result.get() != null ? result.get().getValue() : 0L;
+                }
+            });
+            long value = stored + getPending(key, columnName);
+            ok = true;
+            return value;
+        } finally {
+            getStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get a counter value at the given consistency level, including the increments not flushed yet
+     * @param key the row key
+     * @param columnName the column name
+     * @param level consistency level of this call, null for the level of the column family
+     * @return the value, 0 when the counter does not exist
+     */
+    public long get(String key, String columnName, HConsistencyLevel level) {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            return get(key, columnName);
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
+    }
+
+    /**
+     * Get some counters of a row in one round trip, pending increments included. A slow read is sent again to
+     * another host, as for a single counter
+     * @param key the row key
+     * @param columns the column names
+     * @return the values in the order of the given columns, 0 for the missing ones
+     */
+    public long[] get(String key, String... columns) {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            long[] values = new long[columns.length];
+            if (columns.length == 0) {
+                ok = true;
+                return values;
+            }
+
+            final SliceCounterQuery<String, String> query = HFactory.createCounterSliceQuery(keyspace, stringSerializer, stringSerializer);
+            query.setKey(key);
+            query.setColumnFamily(columnFamily);
+            query.setColumnNames(columns);
+
+            CounterSlice<String> slice = getRead.call(new Callable<CounterSlice<String>>() {
+                @Override
+                public CounterSlice<String> call() {
+                    return query.execute().get();
+                }
+            });
+            fill(values, key, columns, slice);
+            ok = true;
+            return values;
+        } finally {
+            getStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get some counters of a row at the given consistency level, pending increments included
+     * @param key the row key
+     * @param level consistency level of this call, null for the level of the column family
+     * @param columns the column names
+     * @return the values in the order of the given columns, 0 for the missing ones
+     */
+    public long[] get(String key, HConsistencyLevel level, String... columns) {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            return get(key, columns);
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
+    }
+
+    /**
+     * Get every counter of a row, paging through wide rows, pending increments included
+     * @param key the row key
+     * @return the values by column name, sorted by name (empty when the row does not exist)
+     */
+    public Map<String, Long> getAll(String key) {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Map<String, Long> values = new TreeMap<String, Long>();
+
+            SliceCounterQuery<String, String> query = HFactory.createCounterSliceQuery(keyspace, stringSerializer, stringSerializer);
+            query.setKey(key);
+            query.setColumnFamily(columnFamily);
+            String from = "";
+            while (true) {
+                // the start column of the next pages is the last one of the previous page
+                int count = from.length() == 0 ? ROW_PAGE_SIZE : ROW_PAGE_SIZE + 1;
+                query.setRange(from, "", false, count);
+                List<HCounterColumn<String>> columns = query.execute().get().getColumns();
+                for (HCounterColumn<String> column : columns) {
+                    values.put(column.getName(), column.getValue());
+                }
+                if (columns.size() < count) {
+                    break;
+                }
+                from = columns.get(columns.size() - 1).getName();
+            }
+
+            if (timer != null) {
+                for (Map.Entry<Cell, AtomicLong> entry : pending.entrySet()) {
+                    long delta = entry.getValue().get();
+                    if (entry.getKey().key.equals(key) && delta != FLUSHED) {
+                        Long stored = values.get(entry.getKey().columnName);
+                        values.put(entry.getKey().columnName, (stored != null ? stored : 0L) + delta);
+                    }
+                }
+            }
+            ok = true;
+            return values;
+        } finally {
+            getAllStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get the same counters of many rows with multiget counter queries, one round trip per chunk of
+     * cassandra.multiget.chunkSize keys, pending increments included. A slow chunk is sent again to another host
+     * @param keys the row keys, duplicates are read once
+     * @param columns the column names
+     * @return the values of every key in the order of the given keys, each one in the order of the given columns,
+     * 0 for the missing counters
+     */
+    public Map<String, long[]> multiGet(Collection<String> keys, String... columns) {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<String> unique = new ArrayList<String>(new LinkedHashSet<String>(keys));
+
+            Map<String, long[]> values = new LinkedHashMap<String, long[]>();
+            for (String key : unique) {
+                values.put(key, new long[columns.length]);
+            }
+            if (columns.length == 0) {
+                ok = true;
+                return values;
+            }
+
+            for (int from = 0; from < unique.size(); from += chunkSize) {
+                final MultigetSliceCounterQuery<String, String> query = HFactory.createMultigetSliceCounterQuery(keyspace,
+                        stringSerializer, stringSerializer);
+                query.setColumnFamily(columnFamily);
+                query.setKeys(unique.subList(from, Math.min(from + chunkSize, unique.size())));
+                query.setColumnNames(columns);
+
+                CounterRows<String, String> rows = multiGetRead.call(new Callable<CounterRows<String, String>>() {
+                    @Override
+                    public CounterRows<String, String> call() {
+                        return query.execute().get();
+                    }
+                });
+                for (CounterRow<String, String> row : rows) {
+                    fill(values.get(row.getKey()), row.getKey(), columns, row.getColumnSlice());
+                }
+            }
+            ok = true;
+            return values;
+        } finally {
+            multiGetStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get the same counters of many rows at the given consistency level, pending increments included
+     * @param keys the row keys, duplicates are read once
+     * @param level consistency level of this call, null for the level of the column family
+     * @param columns the column names
+     * @return the values of every key in the order of the given keys, each one in the order of the given columns
+     */
+    public Map<String, long[]> multiGet(Collection<String> keys, HConsistencyLevel level, String... columns) {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            return multiGet(keys, columns);
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
+    }
+
+    private void fill(long[] values, String key, String[] columns, CounterSlice<String> slice) {
+        for (int i = 0; i < columns.length; i++) {
+            HCounterColumn<String> column = slice.getColumnByName(columns[i]);
+            values[i] = (column != null ? column.getValue() : 0L) + getPending(key, columns[i]);
+        }
+    }
+
     /**
      * Add a value and changes the counter value (Counter Column Family)
      * @param key the column key
      * @param columnName column name
      * @param value positive values to add and negative values to decrement the counter
+     * @throws IllegalStateException after {@link #shutdown()}
      */
     public void add(String key, String columnName, long value) {
+        if (closed) {
+            throw new IllegalStateException("Counters DAO of " + columnFamily + " already shut down");
+        }
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            if (timer != null) {
+                addPending(new Cell(key, columnName), value);
+                if (closed) {
+                    // raced with shutdown, its last flush may be gone already
+                    flush();
+                } else if (pending.size() >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+                    try {
+                        timer.execute(flushTask);
+                    } catch (RejectedExecutionException e) {
+                        // shutting down, the last flush sends it
+                    }
+                }
+                ok = true;
+                return;
+            }
+
+            Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+            HCounterColumn<String> column = HFactory.createCounterColumn(columnName, value);
+
+            mutator.addCounter(key, columnFamily, column);
+            mutator.execute();
+            ok = true;
+        } finally {
+            addStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Sends the summed pending increments, in batches of cassandra.batch.maxMutations counters
+     */
+    public synchronized void flush() {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<Cell> cells = new ArrayList<Cell>();
+            List<Long> deltas = new ArrayList<Long>();
+            for (Map.Entry<Cell, AtomicLong> entry : pending.entrySet()) {
+                long delta = entry.getValue().getAndSet(FLUSHED);
+                pending.remove(entry.getKey(), entry.getValue());
+                if (delta != 0 && delta != FLUSHED) {
+                    cells.add(entry.getKey());
+                    deltas.add(delta);
+                }
+            }
+
+            for (int from = 0; from < cells.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, cells.size());
+                Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+                for (int i = from; i < to; i++) {
+                    Cell cell = cells.get(i);
+                    mutator.addCounter(cell.key, columnFamily, HFactory.createCounterColumn(cell.columnName, deltas.get(i)));
+                }
+                try {
+                    mutator.execute();
+                } catch (HUnavailableException e) {
+                    requeue(cells, deltas, from, to, e);
+                } catch (HPoolRecoverableException e) {
+                    requeue(cells, deltas, from, to, e);
+                } catch (HectorException e) {
+                    // may have been applied, sending it again could count it twice
+                    log.error("Error flushing " + (to - from) + " counters of " + columnFamily + ", dropped: " + e.toString(), e);
+                }
+            }
+            ok = true;
+        } finally {
+            flushStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Keeps the deltas of a batch that was not applied for the next flush
+     */
+    private void requeue(List<Cell> cells, List<Long> deltas, int from, int to, HectorException e) {
+        log.error("Error flushing " + (to - from) + " counters of " + columnFamily + ", retrying on the next flush: " + e.toString(), e);
+        for (int i = from; i < to; i++) {
+            addPending(cells.get(i), deltas.get(i));
+        }
+    }
+
+    /**
+     * @return true when the increments are summed in memory and sent in background
+     */
+    public boolean isWriteBehind() {
+        return timer != null;
+    }
+
+    /**
+     * Sends the pending increments, then releases the session. The adds afterwards are rejected
+     */
+    @Override
+    public void shutdown() {
+        closed = true;
+        if (timer != null) {
+            timer.shutdown();
+            try {
+                timer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+        super.shutdown();
+    }
+
+    private long getPending(String key, String columnName) {
+        AtomicLong cell = pending.get(new Cell(key, columnName));
+        long delta = cell != null ? cell.get() : 0;
+        return delta != FLUSHED ? delta : 0;
+    }
+
+    /**
+     * Lock free sum: a cell taken by a flush is dropped and the delta goes to a new one
+     */
+    private void addPending(Cell key, long delta) {
+        while (true) {
+            AtomicLong cell = pending.get(key);
+            if (cell == null) {
+                if (pending.putIfAbsent(key, new AtomicLong(delta)) == null) {
+                    return;
+                }
+                continue;
+            }
+            long value = cell.get();
+            if (value == FLUSHED) {
+                pending.remove(key, cell);
+            } else if (cell.compareAndSet(value, value + delta)) {
+                return;
+            }
+        }
+    }
+
+    private ScheduledExecutorService startTimer(long flushInterval, TimeUnit unit) {
+        if (flushInterval <= 0) {
+            return null;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "counters-" + columnFamily);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, unit);
+        return executor;
+    }
+
+    /**
+     * A counter: row key and column name
+     */
+    private static final class Cell {
+
+        final String key;
+        final String columnName;
+
+        Cell(String key, String columnName) {
+            this.key = key;
+            this.columnName = columnName;
+        }
 
-        Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
-        HCounterColumn<String> column = HFactory.createCounterColumn(columnName, value);
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Cell)) {
+                return false;
+            }
+            Cell other = (Cell) obj;
+            return key.equals(other.key) && columnName.equals(other.columnName);
+        }
 
-        mutator.addCounter(key, columnFamily, column);
-        mutator.execute();
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + columnName.hashCode();
+        }
     }
 }
@@ -1,25 +1,34 @@
 package com.movile.cassandra;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
-import me.prettyprint.cassandra.serializers.ObjectSerializer;
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
 import me.prettyprint.cassandra.service.template.ColumnFamilyResult;
 import me.prettyprint.cassandra.service.template.ColumnFamilyTemplate;
 import me.prettyprint.cassandra.service.template.ColumnFamilyUpdater;
 import me.prettyprint.cassandra.service.template.ThriftColumnFamilyTemplate;
+import me.prettyprint.hector.api.HConsistencyLevel;
 import me.prettyprint.hector.api.beans.ColumnSlice;
 import me.prettyprint.hector.api.beans.HColumn;
-import me.prettyprint.hector.api.beans.OrderedRows;
 import me.prettyprint.hector.api.beans.Row;
 import me.prettyprint.hector.api.exceptions.HectorException;
 import me.prettyprint.hector.api.factory.HFactory;
 import me.prettyprint.hector.api.mutation.Mutator;
-import me.prettyprint.hector.api.query.QueryResult;
-import me.prettyprint.hector.api.query.RangeSlicesQuery;
+import me.prettyprint.hector.api.query.MultigetSliceQuery;
 
 import com.movile.bean.Person;
+import com.movile.cassandra.metrics.OperationStats;
 
 /**
  * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
@@ -28,9 +37,59 @@ import com.movile.bean.Person;
 public class EmployeeDAOImpl extends CassandraBase {
 
     private static final String COLUNM_FAMILY_EMP = "Employees";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final String[] PERSON_COLUMNS = { "name", "email", "login", "passwd", "creation" };
+
+    /**
+     * Template built once per DAO, templates are thread safe (updaters are created per call)
+     */
+    private final ColumnFamilyTemplate<String, String> template;
+
+    /**
+     * Row cache of the session, null when the column family is not cached
+     */
+    private final RowCache cache;
+
+    private final RowCache.Loader rowLoader = new RowCache.Loader() {
+        @Override
+        public Map<String, byte[]> load(final String key) {
+            return getPersonRead.call(new Callable<Map<String, byte[]>>() {
+                @Override
+                public Map<String, byte[]> call() {
+                    return readRow(template, key);
+                }
+            });
+        }
+    };
+
+    /**
+     * Latencies of the operations
+     */
+    private final OperationStats saveStats = operationStats(COLUNM_FAMILY_EMP, "save");
+    private final OperationStats saveAllStats = operationStats(COLUNM_FAMILY_EMP, "saveAll");
+    private final OperationStats getPersonStats = operationStats(COLUNM_FAMILY_EMP, "getPerson");
+    private final OperationStats getPersonsStats = operationStats(COLUNM_FAMILY_EMP, "getPersons");
+    private final OperationStats getAllStats = operationStats(COLUNM_FAMILY_EMP, "getAll");
+
+    /**
+     * Speculative retry of the single person reads
+     */
+    private final SpeculativeRead getPersonRead = speculativeRead(COLUNM_FAMILY_EMP);
 
     public EmployeeDAOImpl() {
+        super(COLUNM_FAMILY_EMP);
+        template = new ThriftColumnFamilyTemplate<String, String>(keyspace, COLUNM_FAMILY_EMP, stringSerializer, stringSerializer);
+        cache = session.getRowCache(COLUNM_FAMILY_EMP);
+    }
 
+    /**
+     * Creates a DAO sharing an existing session
+     * @param session shared cluster/keyspace session
+     */
+    public EmployeeDAOImpl(CassandraSession session) {
+        super(session, COLUNM_FAMILY_EMP);
+        template = new ThriftColumnFamilyTemplate<String, String>(keyspace, COLUNM_FAMILY_EMP, stringSerializer, stringSerializer);
+        cache = session.getRowCache(COLUNM_FAMILY_EMP);
     }
 
     /**
@@ -39,18 +98,37 @@ public class EmployeeDAOImpl extends CassandraBase {
      * @throws HectorException
      */
     public void save(final Person person) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ColumnFamilyUpdater<String, String> updater = template.createUpdater(person.getId());
+            updater.setString("name", person.getName());
+            updater.setString("email", person.getEmail());
+            updater.setString("login", person.getLogin());
+            updater.setString("passwd", person.getPasswd());
+            updater.setLong("creation", person.getCreationDate().getTime());
+
+            template.update(updater);
+            invalidate(person.getId());
+            ok = true;
+        } finally {
+            saveStats.record(start, ok);
+        }
+    }
 
-        ColumnFamilyTemplate<String, String> template = new ThriftColumnFamilyTemplate<String, String>(keyspace, COLUNM_FAMILY_EMP, stringSerializer,
-                stringSerializer);
-
-        ColumnFamilyUpdater<String, String> updater = template.createUpdater(person.getId());
-        updater.setString("name", person.getName());
-        updater.setString("email", person.getEmail());
-        updater.setString("login", person.getLogin());
-        updater.setString("passwd", person.getPasswd());
-        updater.setLong("creation", person.getCreationDate().getTime());
-
-        template.update(updater);
+    /**
+     * Inserts an entire entity to Employee column family, at the given consistency level
+     * @param person person bean
+     * @param level consistency level of this call, null for the level of the column family
+     * @throws HectorException
+     */
+    public void save(final Person person, HConsistencyLevel level) throws HectorException {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            save(person);
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
     }
 
     /**
@@ -59,37 +137,128 @@ public class EmployeeDAOImpl extends CassandraBase {
      * @throws HectorException
      */
     public void saveV2(final Person person) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+
+            HColumn<String, String> colName = HFactory.createStringColumn("name", person.getName());
+            HColumn<String, String> colEmail = HFactory.createStringColumn("email", person.getEmail());
+            HColumn<String, String> colLogin = HFactory.createStringColumn("login", person.getLogin());
+            HColumn<String, String> colPasswd = HFactory.createStringColumn("passwd", person.getPasswd());
+            HColumn<String, Long> colCreation = HFactory.createColumn("creation", person.getCreationDate().getTime(), stringSerializer, longSerializer);
+
+            String key = person.getId();
+            mutator.addInsertion(key, COLUNM_FAMILY_EMP, colName);
+            mutator.addInsertion(key, COLUNM_FAMILY_EMP, colEmail);
+            mutator.addInsertion(key, COLUNM_FAMILY_EMP, colLogin);
+            mutator.addInsertion(key, COLUNM_FAMILY_EMP, colPasswd);
+            mutator.addInsertion(key, COLUNM_FAMILY_EMP, colCreation);
+
+            mutator.execute();
+            invalidate(key);
+            ok = true;
+        } finally {
+            saveStats.record(start, ok);
+        }
+    }
 
-        Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+    /**
+     * Inserts many entities to Employee column family, the columns of several persons are sent on each round trip
+     * @param persons person beans
+     * @throws HectorException
+     * @see #createBatchWriter()
+     */
+    public void saveAll(final Collection<Person> persons) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            BatchWriter writer = createCallBatchWriter();
+            try {
+                for (Person person : persons) {
+                    String key = person.getId();
+                    writer.addInsertion(key, COLUNM_FAMILY_EMP, HFactory.createStringColumn("name", person.getName()));
+                    writer.addInsertion(key, COLUNM_FAMILY_EMP, HFactory.createStringColumn("email", person.getEmail()));
+                    writer.addInsertion(key, COLUNM_FAMILY_EMP, HFactory.createStringColumn("login", person.getLogin()));
+                    writer.addInsertion(key, COLUNM_FAMILY_EMP, HFactory.createStringColumn("passwd", person.getPasswd()));
+                    writer.addInsertion(key, COLUNM_FAMILY_EMP,
+                            HFactory.createColumn("creation", person.getCreationDate().getTime(), stringSerializer, longSerializer));
+                }
+                writer.close();
+                ok = true;
+            } finally {
+                if (!ok) {
+                    // the failure is thrown, not replaced by the one of a partial batch
+                    writer.discard();
+                }
+                for (Person person : persons) {
+                    invalidate(person.getId());
+                }
+            }
+        } finally {
+            saveAllStats.record(start, ok);
+        }
+    }
 
-        HColumn<String, String> colName = HFactory.createStringColumn("name", person.getName());
-        HColumn<String, String> colEmail = HFactory.createStringColumn("email", person.getEmail());
-        HColumn<String, String> colLogin = HFactory.createStringColumn("login", person.getLogin());
-        HColumn<String, String> colPasswd = HFactory.createStringColumn("passwd", person.getPasswd());
-        HColumn<String, Long> colCreation = HFactory.createColumn("creation", person.getCreationDate().getTime(), stringSerializer, longSerializer);
+    /**
+     * Get a person related with some column key, a slow read is sent again to another host (see
+     * {@link CassandraSession#createSpeculativeRead(String)})
+     * @param id the key
+     * @return a filled User bean
+     * @throws HectorException
+     */
+    public Person getPerson(final String id) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            if (cache != null) {
+                Map<String, byte[]> row = cache.get(id, rowLoader);
+                ok = true;
+                return row != null ? toPerson(id, row) : null;
+            }
 
-        String key = person.getId();
-        mutator.addInsertion(key, COLUNM_FAMILY_EMP, colName);
-        mutator.addInsertion(key, COLUNM_FAMILY_EMP, colEmail);
-        mutator.addInsertion(key, COLUNM_FAMILY_EMP, colLogin);
-        mutator.addInsertion(key, COLUNM_FAMILY_EMP, colPasswd);
-        mutator.addInsertion(key, COLUNM_FAMILY_EMP, colCreation);
+            Person person = readPerson(id);
+            ok = true;
 
-        mutator.execute();
+            return person;
+        } finally {
+            getPersonStats.record(start, ok);
+        }
     }
 
     /**
-     * Get a person related with some column key
+     * Get a person related with some column key, read from the cluster at the given consistency level (the row
+     * cache is not used)
      * @param id the key
+     * @param level consistency level of this call, null for the level of the column family
      * @return a filled User bean
      * @throws HectorException
      */
-    public Person getPerson(final String id) throws HectorException {
+    public Person getPerson(final String id, HConsistencyLevel level) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            Person person = readPerson(id);
+            ok = true;
+            return person;
+        } finally {
+            ConsistencyPolicy.restore(previous);
+            getPersonStats.record(start, ok);
+        }
+    }
 
-        Person person = null;
-        ColumnFamilyTemplate<String, String> template = new ThriftColumnFamilyTemplate<String, String>(keyspace, COLUNM_FAMILY_EMP, stringSerializer,
-                stringSerializer);
+    private Person readPerson(final String id) {
+        return getPersonRead.call(new Callable<Person>() {
+            @Override
+            public Person call() {
+                return queryPerson(id);
+            }
+        });
+    }
 
+    private Person queryPerson(String id) {
+        Person person = null;
         ColumnFamilyResult<String, String> res = template.queryColumns(id);
 
         if (res.hasResults()) {
@@ -101,61 +270,187 @@ public class EmployeeDAOImpl extends CassandraBase {
             person.setPasswd(res.getString("passwd"));
             person.setCreationDate(res.getLong("creation") != null ? new Date(res.getLong("creation")) : null);
         }
-
         return person;
     }
 
     /**
-     * Get all of records, similar to selet * from Employees (limit 100 rows)
+     * Get many persons at once with multiget slice queries, one round trip per chunk of
+     * cassandra.multiget.chunkSize keys, the chunks are read concurrently
+     * @param ids the keys, duplicates are read once
+     * @return the found persons by id, in the order of the given ids (missing ids are left out)
+     * @throws HectorException
+     */
+    public Map<String, Person> getPersons(final Collection<String> ids) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(ids));
+            int chunkSize = session.getProperties().getInt("cassandra.multiget.chunkSize", 100, 1, 10000);
+
+            // every chunk but the first one goes to the session executor, when it has a free slot
+            Map<String, Person> found = new HashMap<String, Person>();
+            List<Future<Map<String, Person>>> pending = new ArrayList<Future<Map<String, Person>>>();
+            AsyncExecutor executor = keys.size() > chunkSize ? session.getAsyncExecutor() : null;
+            for (int from = chunkSize; from < keys.size(); from += chunkSize) {
+                final List<String> chunk = keys.subList(from, Math.min(from + chunkSize, keys.size()));
+                Future<Map<String, Person>> future = executor.trySubmit(new Callable<Map<String, Person>>() {
+                    @Override
+                    public Map<String, Person> call() {
+                        return multiget(chunk);
+                    }
+                });
+                if (future != null) {
+                    pending.add(future);
+                } else {
+                    found.putAll(multiget(chunk));
+                }
+            }
+            found.putAll(multiget(keys.subList(0, Math.min(chunkSize, keys.size()))));
+            for (Future<Map<String, Person>> future : pending) {
+                found.putAll(AsyncExecutor.await(future));
+            }
+
+            Map<String, Person> persons = new LinkedHashMap<String, Person>();
+            for (String key : keys) {
+                Person person = found.get(key);
+                if (person != null) {
+                    persons.put(key, person);
+                }
+            }
+            ok = true;
+            return persons;
+        } finally {
+            getPersonsStats.record(start, ok);
+        }
+    }
+
+    private Map<String, Person> multiget(List<String> keys) {
+        Map<String, Person> persons = new HashMap<String, Person>();
+        if (keys.isEmpty()) {
+            return persons;
+        }
+
+        MultigetSliceQuery<String, String, ByteBuffer> query = HFactory.createMultigetSliceQuery(keyspace, stringSerializer, stringSerializer,
+                ByteBufferSerializer.get());
+        query.setColumnFamily(COLUNM_FAMILY_EMP);
+        query.setKeys(keys);
+        query.setColumnNames(PERSON_COLUMNS);
+
+        for (Row<String, String, ByteBuffer> row : query.execute().get()) {
+            if (!row.getColumnSlice().getColumns().isEmpty()) {
+                persons.put(row.getKey(), toPerson(row));
+            }
+        }
+        return persons;
+    }
+
+    /**
+     * Get all of records, similar to selet * from Employees
+     * the whole column family is loaded in memory, prefer {@link #scan(int)} for large databases
      * @return a list if employees
      */
     public List<Person> getAll() {
-        List<Person> employees = new ArrayList<Person>();
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<Person> employees = new ArrayList<Person>();
+
+            Iterator<Person> iterator = scan(DEFAULT_PAGE_SIZE);
+            while (iterator.hasNext()) {
+                employees.add(iterator.next());
+            }
+            ok = true;
+            return employees;
+        } finally {
+            getAllStats.record(start, ok);
+        }
+    }
 
-        // creates a range query
-        RangeSlicesQuery<String, String, Object> rangeSlicesQuery = HFactory.createRangeSlicesQuery(keyspace, stringSerializer, stringSerializer,
-            ObjectSerializer.get());
+    /**
+     * Walks all of the records page by page, similar to a cursor over select * from Employees
+     * @param pageSize number of rows fetched per round trip, the memory used is bounded by it
+     * @return a lazy iterator of employees
+     */
+    public Iterator<Person> scan(int pageSize) {
+        final RowIterator<String, ByteBuffer> rows = new RowIterator<String, ByteBuffer>(keyspace, COLUNM_FAMILY_EMP, stringSerializer,
+                ByteBufferSerializer.get(), pageSize, 150);
+
+        return new Iterator<Person>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
 
-        // set the query parameters
-        rangeSlicesQuery.setColumnFamily(COLUNM_FAMILY_EMP);
+            @Override
+            public Person next() {
+                return toPerson(rows.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Walks all of the records in parallel, the token ranges of the ring are read by several threads at once
+     * @param callback receives every employee, called concurrently from the scan threads
+     * @return the number of employees read
+     * @throws HectorException
+     * @see TokenRangeScanner
+     */
+    public long scanParallel(final RowCallback<Person> callback) throws HectorException {
+        TokenRangeScanner<String, ByteBuffer> scanner = createScanner(COLUNM_FAMILY_EMP, stringSerializer, ByteBufferSerializer.get(), 150);
 
-        // the start key
-        rangeSlicesQuery.setKeys("", ""); // must set the next key for a large database
-        rangeSlicesQuery.setRange("", "", false, 150);
-        rangeSlicesQuery.setRowCount(100); // limit of rows returned
+        return scanner.scan(new RowCallback<Row<String, String, ByteBuffer>>() {
+            @Override
+            public void onRow(Row<String, String, ByteBuffer> row) {
+                callback.onRow(toPerson(row));
+            }
+        });
+    }
 
-        // executes the query and get rowns
-        QueryResult<OrderedRows<String, String, Object>> result = rangeSlicesQuery.execute();
+    private Person toPerson(String id, Map<String, byte[]> row) {
+        Person person = new Person();
+        person.setId(id);
+        person.setName(row.containsKey("name") ? stringSerializer.fromBytes(row.get("name")) : null);
+        person.setEmail(row.containsKey("email") ? stringSerializer.fromBytes(row.get("email")) : null);
+        person.setLogin(row.containsKey("login") ? stringSerializer.fromBytes(row.get("login")) : null);
+        person.setPasswd(row.containsKey("passwd") ? stringSerializer.fromBytes(row.get("passwd")) : null);
+        person.setCreationDate(row.containsKey("creation") ? new Date(longSerializer.fromBytes(row.get("creation"))) : null);
+        return person;
+    }
 
-        OrderedRows<String, String, Object> orderedRows = result.get();
+    private void invalidate(String id) {
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
 
-        if (result != null) {
-            for (Row<String, String, Object> row : orderedRows.getList()) {
-                // get the subscription column to acquire the object bytes
-                ColumnSlice<String, Object> columnSlice = row.getColumnSlice();
-                Person person = new Person();
-                person.setId(row.getKey());
+    private Person toPerson(Row<String, String, ByteBuffer> row) {
+        // get the subscription column to acquire the object bytes
+        ColumnSlice<String, ByteBuffer> columnSlice = row.getColumnSlice();
+        Person person = new Person();
+        person.setId(row.getKey());
 
-                // get column information and set the object
-                HColumn<String, Object> column = columnSlice.getColumnByName("name");
-                person.setName(column != null ? stringSerializer.fromByteBuffer(column.getValueBytes()) : "");
+        // get column information and set the object
+        HColumn<String, ByteBuffer> column = columnSlice.getColumnByName("name");
+        person.setName(column != null ? stringSerializer.fromByteBuffer(column.getValueBytes()) : null);
 
-                column = columnSlice.getColumnByName("email");
-                person.setEmail(column != null ? stringSerializer.fromByteBuffer(column.getValueBytes()) : "");
+        column = columnSlice.getColumnByName("email");
+        person.setEmail(column != null ? stringSerializer.fromByteBuffer(column.getValueBytes()) : null);
 
-                column = columnSlice.getColumnByName("login");
-                person.setLogin(column != null ? stringSerializer.fromByteBuffer(column.getValueBytes()) : "");
+        column = columnSlice.getColumnByName("login");
+        person.setLogin(column != null ? stringSerializer.fromByteBuffer(column.getValueBytes()) : null);
 
-                column = columnSlice.getColumnByName("passwd");
-                person.setPasswd(column != null ? stringSerializer.fromByteBuffer(column.getValueBytes()) : "");
+        column = columnSlice.getColumnByName("passwd");
+        person.setPasswd(column != null ? stringSerializer.fromByteBuffer(column.getValueBytes()) : null);
 
-                column = columnSlice.getColumnByName("creation");
-                person.setCreationDate(column != null ? new Date(longSerializer.fromByteBuffer(column.getValueBytes())) : null);
+        column = columnSlice.getColumnByName("creation");
+        person.setCreationDate(column != null ? new Date(longSerializer.fromByteBuffer(column.getValueBytes())) : null);
 
-                employees.add(person);
-            }
-        }
-        return employees;
+        return person;
     }
 
 }
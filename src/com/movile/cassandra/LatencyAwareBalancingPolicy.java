@@ -0,0 +1,318 @@
+package com.movile.cassandra;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.prettyprint.cassandra.connection.HClientPool;
+import me.prettyprint.cassandra.connection.HThriftClient;
+import me.prettyprint.cassandra.connection.LoadBalancingPolicy;
+import me.prettyprint.cassandra.service.CassandraHost;
+import me.prettyprint.hector.api.exceptions.HectorException;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Sends the requests to the host answering the fastest
+ *
+ * The pools are created by the wrapped policy and tracked here: the time between the borrow and the release of a
+ * client (the hector operation, failures and timeouts included) feeds an exponentially weighted moving average of
+ * the latency of its host. A request goes to the host of lowest average times its requests in flight plus one, so
+ * a fast host is not flooded. A host with no request for the probe interval gets the next one, so a host that was
+ * slow is measured again and used once it recovered. The hosts not measured yet go first and the ties are broken
+ * round robin.
+ *
+ * Hector 1.0 is not token aware, every host coordinates any request: the fastest host is the fastest coordinator.
+ * The calls run through {@link #call(Callable, Collection, Collection)} avoid some hosts and report where they went,
+ * which is how {@link SpeculativeRead} sends its duplicate to another host.
+ */
+public class LatencyAwareBalancingPolicy implements LoadBalancingPolicy {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Hosts to avoid and hosts used by the calls of a thread
+     */
+    private static final ThreadLocal<Routing> routing = new ThreadLocal<Routing>();
+
+    /**
+     * Borrow time of the client held by the thread, 0 when none
+     */
+    private static final ThreadLocal<long[]> borrowed = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private final LoadBalancingPolicy delegate;
+    private final double weight;
+    private final long probeIntervalNanos;
+    private final ConcurrentMap<CassandraHost, HostLatency> latencies = new ConcurrentHashMap<CassandraHost, HostLatency>();
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * @param delegate policy creating the pools
+     * @param weight weight of the last latency in the average, from 0 (exclusive) to 1
+     * @param probeInterval time after which a host with no request is tried again
+     * @param unit unit of the interval
+     */
+    public LatencyAwareBalancingPolicy(LoadBalancingPolicy delegate, double weight, long probeInterval, TimeUnit unit) {
+        if (weight <= 0 || weight > 1) {
+            throw new IllegalArgumentException("Invalid weight of the last latency: " + weight);
+        }
+        this.delegate = delegate;
+        this.weight = weight;
+        this.probeIntervalNanos = unit.toNanos(probeInterval);
+    }
+
+    @Override
+    public HClientPool getPool(Collection<HClientPool> pools, Set<CassandraHost> excludeHosts) {
+        Routing current = routing.get();
+        long now = System.nanoTime();
+        HClientPool pool = fastest(pools, excludeHosts, current != null ? current.avoided : null, now);
+        if (pool == null && current != null) {
+            // every host left is avoided, better a host already tried than none
+            pool = fastest(pools, excludeHosts, null, now);
+        }
+        if (pool == null) {
+            // every host is excluded, hector fails over to one of them anyway
+            pool = fastest(pools, null, null, now);
+        }
+        if (pool instanceof TrackedPool) {
+            HostLatency latency = ((TrackedPool) pool).latency;
+            if (latency.average >= 0 && now - latency.updated > probeIntervalNanos) {
+                // this request probes the host, the next ones wait for its latency
+                latency.updated = now;
+            }
+        }
+        if (pool != null && current != null && current.used != null) {
+            current.used.add(pool.getCassandraHost());
+        }
+        return pool;
+    }
+
+    private HClientPool fastest(Collection<HClientPool> pools, Set<CassandraHost> excludeHosts, Collection<CassandraHost> avoided,
+            long now) {
+        int size = pools.size();
+        if (size == 0) {
+            return null;
+        }
+        int first = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+
+        // two passes over the pools to start at the round robin position without copying them
+        HClientPool best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int pass = 0; pass < 2; pass++) {
+            int index = 0;
+            for (HClientPool pool : pools) {
+                boolean inPass = pass == 0 ? index >= first : index < first;
+                index++;
+                if (!inPass) {
+                    continue;
+                }
+                CassandraHost host = pool.getCassandraHost();
+                if ((excludeHosts != null && excludeHosts.contains(host)) || (avoided != null && avoided.contains(host))) {
+                    continue;
+                }
+                double score = score(pool, now);
+                if (score < bestScore) {
+                    best = pool;
+                    bestScore = score;
+                }
+            }
+        }
+        return best;
+    }
+
+    private double score(HClientPool pool, long now) {
+        if (!(pool instanceof TrackedPool)) {
+            return 0;
+        }
+        HostLatency latency = ((TrackedPool) pool).latency;
+        double average = latency.average;
+        if (average < 0) {
+            // not measured yet, spread by requests in flight (below any measured latency)
+            return pool.getNumActive();
+        }
+        if (now - latency.updated > probeIntervalNanos) {
+            return 0;
+        }
+        return average * (pool.getNumActive() + 1);
+    }
+
+    @Override
+    public HClientPool createConnection(CassandraHost host) {
+        HostLatency latency = latencies.get(host);
+        if (latency == null) {
+            latency = new HostLatency();
+            HostLatency previous = latencies.putIfAbsent(host, latency);
+            if (previous != null) {
+                latency = previous;
+            }
+        }
+        return new TrackedPool(delegate.createConnection(host), latency, weight);
+    }
+
+    /**
+     * @param host a host of the cluster
+     * @return the average latency of the host in microseconds, -1 when the host got no request yet
+     */
+    public long getLatencyMicros(CassandraHost host) {
+        HostLatency latency = latencies.get(host);
+        return latency == null || latency.average < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros((long) latency.average);
+    }
+
+    /**
+     * @return the policy creating the pools
+     */
+    public LoadBalancingPolicy getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Runs a call on the calling thread, its hector operations are sent to the hosts not avoided while there is one
+     * @param call the hector operations
+     * @param avoided hosts to avoid, null for none
+     * @param used collects the hosts the operations were sent to (thread safe), null to not collect them
+     * @return the result of the call
+     * @throws Exception the failure of the call
+     */
+    public static <T> T call(Callable<T> call, Collection<CassandraHost> avoided, Collection<CassandraHost> used) throws Exception {
+        Routing previous = routing.get();
+        routing.set(new Routing(avoided, used));
+        try {
+            return call.call();
+        } finally {
+            if (previous == null) {
+                routing.remove();
+            } else {
+                routing.set(previous);
+            }
+        }
+    }
+
+    private static final class Routing {
+
+        final Collection<CassandraHost> avoided;
+        final Collection<CassandraHost> used;
+
+        Routing(Collection<CassandraHost> avoided, Collection<CassandraHost> used) {
+            this.avoided = avoided;
+            this.used = used;
+        }
+    }
+
+    /**
+     * Moving average of the latencies of a host, kept across the pools of the host (down and back, recreated).
+     * The updates may race and lose a sample, which an average does not miss
+     */
+    private static final class HostLatency {
+
+        volatile double average = -1;
+        volatile long updated;
+
+        void record(long nanos, double weight) {
+            double previous = average;
+            average = previous < 0 ? nanos : previous + weight * (nanos - previous);
+            updated = System.nanoTime();
+        }
+    }
+
+    /**
+     * Pool of the wrapped policy timing its clients from borrow to release, hector borrows and releases a client
+     * on the thread running the operation
+     */
+    private static final class TrackedPool implements HClientPool {
+
+        private final HClientPool pool;
+        private final HostLatency latency;
+        private final double weight;
+
+        TrackedPool(HClientPool pool, HostLatency latency, double weight) {
+            this.pool = pool;
+            this.latency = latency;
+            this.weight = weight;
+        }
+
+        @Override
+        public HThriftClient borrowClient() throws HectorException {
+            HThriftClient client = pool.borrowClient();
+            borrowed.get()[0] = System.nanoTime();
+            return client;
+        }
+
+        @Override
+        public void releaseClient(HThriftClient client) throws HectorException {
+            long[] start = borrowed.get();
+            if (start[0] != 0) {
+                latency.record(System.nanoTime() - start[0], weight);
+                start[0] = 0;
+            }
+            pool.releaseClient(client);
+        }
+
+        @Override
+        public CassandraHost getCassandraHost() {
+            return pool.getCassandraHost();
+        }
+
+        @Override
+        public int getNumBeforeExhausted() {
+            return pool.getNumBeforeExhausted();
+        }
+
+        @Override
+        public boolean isExhausted() {
+            return pool.isExhausted();
+        }
+
+        @Override
+        public int getMaxActive() {
+            return pool.getMaxActive();
+        }
+
+        @Override
+        public String getStatusAsString() {
+            return pool.getStatusAsString();
+        }
+
+        @Override
+        public void shutdown() {
+            pool.shutdown();
+        }
+
+        @Override
+        public int getNumActive() {
+            return pool.getNumActive();
+        }
+
+        @Override
+        public int getNumIdle() {
+            return pool.getNumIdle();
+        }
+
+        @Override
+        public int getNumBlockedThreads() {
+            return pool.getNumBlockedThreads();
+        }
+
+        @Override
+        public String getName() {
+            return pool.getName();
+        }
+
+        @Override
+        public boolean getIsActive() {
+            return pool.getIsActive();
+        }
+
+        @Override
+        public String toString() {
+            return pool.toString();
+        }
+    }
+}
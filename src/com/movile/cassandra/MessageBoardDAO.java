@@ -0,0 +1,333 @@
+package com.movile.cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.prettyprint.cassandra.serializers.UUIDSerializer;
+import me.prettyprint.cassandra.utils.TimeUUIDUtils;
+import me.prettyprint.hector.api.HConsistencyLevel;
+import me.prettyprint.hector.api.beans.ColumnSlice;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.exceptions.HectorException;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+import me.prettyprint.hector.api.query.SliceQuery;
+
+import com.eaio.uuid.UUIDGen;
+import com.movile.bean.Message;
+import com.movile.cassandra.metrics.OperationStats;
+import com.movile.utils.SmartProperties;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Message boards stored as time ordered wide rows
+ *
+ * The posts of a board are split in one row per time bucket (an hour or a day, key board:bucketStart) of the
+ * Messages column family, whose comparator is TimeUUIDType: the column names are time uuids, sorted by time and
+ * unique even for posts of the same millisecond. The buckets of a board are listed in a row of the MessageBuckets
+ * column family (comparator LongType, one column per bucket start).
+ *
+ * Reads walk the buckets from the newest one and slice the rows in reverse order, fetching only the posts of the
+ * requested page: a row is never read whole. The id of the last post of a page is the cursor of the next one.
+ */
+public class MessageBoardDAO extends CassandraBase {
+
+    public static final String COLUMNFAMILY_MESSAGES = "Messages";
+    public static final String COLUMNFAMILY_BUCKETS = "MessageBuckets";
+
+    /**
+     * Buckets listed per round trip when walking back in time
+     */
+    private static final int BUCKET_PAGE_SIZE = 32;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Time slots of the uuids of back dated posts, distinct uuids for the posts of the same millisecond
+     */
+    private static final AtomicInteger sequence = new AtomicInteger();
+
+    /**
+     * Time span of the rows of a board
+     */
+    public enum Bucket {
+        HOUR(TimeUnit.HOURS.toMillis(1)), DAY(TimeUnit.DAYS.toMillis(1));
+
+        private final long millis;
+
+        private Bucket(long millis) {
+            this.millis = millis;
+        }
+
+        /**
+         * @param time time in milliseconds
+         * @return the start of the bucket holding the time
+         */
+        public long startOf(long time) {
+            return time - ((time % millis) + millis) % millis;
+        }
+    }
+
+    private final Bucket bucket;
+
+    /**
+     * Latencies of the operations
+     */
+    private final OperationStats postStats = operationStats(COLUMNFAMILY_MESSAGES, "post");
+    private final OperationStats getLatestStats = operationStats(COLUMNFAMILY_MESSAGES, "getLatest");
+    private final OperationStats getBeforeStats = operationStats(COLUMNFAMILY_MESSAGES, "getBefore");
+    private final OperationStats deleteStats = operationStats(COLUMNFAMILY_MESSAGES, "delete");
+
+    // default constructor
+    public MessageBoardDAO() {
+        super(COLUMNFAMILY_MESSAGES);
+        this.bucket = bucketOf(session.getProperties());
+    }
+
+    /**
+     * Creates a DAO sharing an existing session, whose rows span the cassandra.messages.bucket of the session
+     * (HOUR or DAY, HOUR when not set or unknown)
+     * @param session shared cluster/keyspace session
+     */
+    public MessageBoardDAO(CassandraSession session) {
+        super(session, COLUMNFAMILY_MESSAGES);
+        this.bucket = bucketOf(session.getProperties());
+    }
+
+    /**
+     * Creates a DAO sharing an existing session
+     * @param session shared cluster/keyspace session
+     * @param bucket time span of the rows
+     */
+    public MessageBoardDAO(CassandraSession session, Bucket bucket) {
+        super(session, COLUMNFAMILY_MESSAGES);
+        this.bucket = bucket;
+    }
+
+    private static Bucket bucketOf(SmartProperties properties) {
+        String value = properties.getString("cassandra.messages.bucket", "HOUR");
+        for (Bucket candidate : Bucket.values()) {
+            if (candidate.name().equalsIgnoreCase(value.trim())) {
+                return candidate;
+            }
+        }
+        log.warn("Invalid bucket of the message boards (" + value + "). Assuming HOUR");
+        return Bucket.HOUR;
+    }
+
+    /**
+     * @return the time span of the rows
+     */
+    public Bucket getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Posts a message now
+     * @param board board name
+     * @param text message text
+     * @return the posted message
+     * @throws HectorException
+     */
+    public Message post(String board, String text) throws HectorException {
+        return post(board, TimeUUIDUtils.getUniqueTimeUUIDinMillis(), text);
+    }
+
+    /**
+     * Posts a message now, at the given consistency level
+     * @param board board name
+     * @param text message text
+     * @param level consistency level of this call, null for the level of the column family
+     * @return the posted message
+     * @throws HectorException
+     */
+    public Message post(String board, String text, HConsistencyLevel level) throws HectorException {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            return post(board, text);
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
+    }
+
+    /**
+     * Posts a message at a given time
+     * @param board board name
+     * @param time post time in milliseconds
+     * @param text message text
+     * @return the posted message
+     * @throws HectorException
+     */
+    public Message post(String board, long time, String text) throws HectorException {
+        return post(board, timeUUID(time), text);
+    }
+
+    private Message post(String board, UUID id, String text) {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            long bucketStart = bucket.startOf(TimeUUIDUtils.getTimeFromUUID(id));
+            Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+            mutator.addInsertion(rowKey(board, bucketStart), COLUMNFAMILY_MESSAGES,
+                    HFactory.createColumn(id, text, UUIDSerializer.get(), stringSerializer));
+            // the bucket is listed by every post, an idempotent overwrite of an empty column in the same mutation
+            mutator.addInsertion(board, COLUMNFAMILY_BUCKETS, HFactory.createColumn(bucketStart, EMPTY, longSerializer, byteArraySerializer));
+            mutator.execute();
+            ok = true;
+            return new Message(id, text);
+        } finally {
+            postStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get the newest posts of a board
+     * @param board board name
+     * @param count maximum number of posts
+     * @return the posts, newest first
+     * @throws HectorException
+     */
+    public List<Message> getLatest(String board, int count) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<Message> messages = read(board, null, count);
+            ok = true;
+            return messages;
+        } finally {
+            getLatestStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get the newest posts of a board, at the given consistency level
+     * @param board board name
+     * @param count maximum number of posts
+     * @param level consistency level of this call, null for the level of the column family
+     * @return the posts, newest first
+     * @throws HectorException
+     */
+    public List<Message> getLatest(String board, int count, HConsistencyLevel level) throws HectorException {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            return getLatest(board, count);
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
+    }
+
+    /**
+     * Get the posts older than a cursor, the next page of {@link #getLatest(String, int)}
+     * @param board board name
+     * @param cursor id of the last post of the previous page
+     * @param count maximum number of posts
+     * @return the posts, newest first
+     * @throws HectorException
+     */
+    public List<Message> getBefore(String board, UUID cursor, int count) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<Message> messages = read(board, cursor, count);
+            ok = true;
+            return messages;
+        } finally {
+            getBeforeStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Removes every post of a board
+     * @param board board name
+     * @throws HectorException
+     */
+    public void delete(String board) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+            for (Long from = null;;) {
+                List<Long> buckets = getBuckets(board, from);
+                for (Long bucketStart : buckets) {
+                    mutator.addDeletion(rowKey(board, bucketStart), COLUMNFAMILY_MESSAGES);
+                }
+                if (buckets.size() < BUCKET_PAGE_SIZE) {
+                    break;
+                }
+                from = buckets.get(buckets.size() - 1) - 1;
+            }
+            mutator.addDeletion(board, COLUMNFAMILY_BUCKETS);
+            mutator.execute();
+            ok = true;
+        } finally {
+            deleteStats.record(start, ok);
+        }
+    }
+
+    private List<Message> read(String board, UUID cursor, int count) {
+        List<Message> messages = new ArrayList<Message>(count);
+        Long from = cursor != null ? bucket.startOf(TimeUUIDUtils.getTimeFromUUID(cursor)) : null;
+        while (messages.size() < count) {
+            List<Long> buckets = getBuckets(board, from);
+            for (Long bucketStart : buckets) {
+                readBucket(rowKey(board, bucketStart), cursor, count, messages);
+                if (messages.size() >= count) {
+                    break;
+                }
+            }
+            if (buckets.size() < BUCKET_PAGE_SIZE) {
+                break;
+            }
+            from = buckets.get(buckets.size() - 1) - 1;
+        }
+        return messages;
+    }
+
+    /**
+     * Reads the posts of a bucket older than the cursor (all of them when the cursor is not in the bucket), up to count
+     */
+    private void readBucket(String key, UUID cursor, int count, List<Message> messages) {
+        int wanted = count - messages.size() + (cursor != null ? 1 : 0);
+        SliceQuery<String, UUID, String> query = HFactory.createSliceQuery(keyspace, stringSerializer, UUIDSerializer.get(), stringSerializer);
+        query.setColumnFamily(COLUMNFAMILY_MESSAGES).setKey(key).setRange(cursor, null, true, wanted);
+        ColumnSlice<UUID, String> slice = query.execute().get();
+        for (HColumn<UUID, String> column : slice.getColumns()) {
+            if (messages.size() >= count) {
+                break;
+            }
+            if (!column.getName().equals(cursor)) {
+                messages.add(new Message(column.getName(), column.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Lists a page of buckets of a board, newest first
+     * @param from newest bucket start to list, null for the newest bucket
+     */
+    private List<Long> getBuckets(String board, Long from) {
+        SliceQuery<String, Long, byte[]> query = HFactory.createSliceQuery(keyspace, stringSerializer, longSerializer, byteArraySerializer);
+        query.setColumnFamily(COLUMNFAMILY_BUCKETS).setKey(board).setRange(from, null, true, BUCKET_PAGE_SIZE);
+        List<Long> buckets = new ArrayList<Long>(BUCKET_PAGE_SIZE);
+        for (HColumn<Long, byte[]> column : query.execute().get().getColumns()) {
+            buckets.add(column.getName());
+        }
+        return buckets;
+    }
+
+    private static String rowKey(String board, long bucketStart) {
+        return board + ":" + bucketStart;
+    }
+
+    /**
+     * Version 1 uuid of a given millisecond, the 100ns intervals within the millisecond are taken in turn
+     */
+    private static UUID timeUUID(long time) {
+        long ticks = time * 10000L + 0x01B21DD213814000L + (sequence.getAndIncrement() & Integer.MAX_VALUE) % 10000;
+        long high = ticks << 32 | (ticks & 0xFFFF00000000L) >>> 16 | 0x1000L | (ticks >>> 48 & 0x0FFFL);
+        return new UUID(high, UUIDGen.getClockSeqAndNode());
+    }
+}
@@ -0,0 +1,264 @@
+package com.movile.cassandra;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Read-through cache of whole rows (column name to value bytes) of one column family
+ *
+ * Entries expire after a fixed time to live and the least recently used ones are evicted when the cache goes over
+ * its maximum number of entries or its estimated size in bytes. The keys are spread over segments, each one an LRU
+ * list with its own lock and its share of the limits. A row invalidated while it is being loaded is not cached.
+ */
+public class RowCache {
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * Estimated bytes of the entry, map node and row map objects
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int COLUMN_OVERHEAD = 48;
+
+    /**
+     * Loads a row missing from the cache
+     */
+    public interface Loader {
+
+        /**
+         * @param key row key
+         * @return the columns of the row, null when the row does not exist (not cached)
+         */
+        Map<String, byte[]> load(String key);
+    }
+
+    private final Segment[] segments;
+    private final long ttlNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param maxEntries maximum number of cached rows
+     * @param maxBytes maximum estimated size of the cached rows
+     * @param ttl time a row stays cached
+     * @param unit unit of the time to live
+     */
+    public RowCache(int maxEntries, long maxBytes, long ttl, TimeUnit unit) {
+        if (maxEntries < 1 || maxBytes < 1 || ttl < 1) {
+            throw new IllegalArgumentException("Invalid cache limits: " + maxEntries + " entries, " + maxBytes + " bytes, ttl " + ttl);
+        }
+        ttlNanos = unit.toNanos(ttl);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS), Math.max(1, maxBytes / SEGMENTS));
+        }
+    }
+
+    /**
+     * Get a row from the cache, loading it on a miss
+     * @param key row key
+     * @param loader reads the row from cassandra
+     * @return the columns of the row (not to be modified), null when the row does not exist
+     */
+    public Map<String, byte[]> get(String key, Loader loader) {
+        Segment segment = segment(key);
+        Map<String, byte[]> row = segment.get(key, System.nanoTime());
+        if (row != null) {
+            hits.incrementAndGet();
+            return row;
+        }
+
+        misses.incrementAndGet();
+        long stamp = segment.stamp();
+        row = loader.load(key);
+        if (row != null) {
+            segment.put(key, row, weigh(key, row), stamp, System.nanoTime() + ttlNanos);
+        }
+        return row;
+    }
+
+    /**
+     * Drops a row, to be called on every write to it
+     * @param key row key
+     */
+    public void invalidate(String key) {
+        segment(key).invalidate(key);
+    }
+
+    /**
+     * Drops every row
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.invalidateAll();
+        }
+    }
+
+    /**
+     * @return number of reads answered by the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of reads that went to cassandra
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of rows dropped to respect the size limits
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of rows dropped because their time to live was over
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * @return number of cached rows
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return estimated size in bytes of the cached rows
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "RowCache [size=" + size() + ", bytes=" + getWeight() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", expirations=" + expirations + "]";
+    }
+
+    private Segment segment(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static long weigh(String key, Map<String, byte[]> row) {
+        long weight = ENTRY_OVERHEAD + 2L * key.length();
+        for (Map.Entry<String, byte[]> column : row.entrySet()) {
+            weight += COLUMN_OVERHEAD + 2L * column.getKey().length() + column.getValue().length;
+        }
+        return weight;
+    }
+
+    private static final class Entry {
+
+        final Map<String, byte[]> row;
+        final long weight;
+        final long expiresAt;
+
+        Entry(Map<String, byte[]> row, long weight, long expiresAt) {
+            this.row = row;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * LRU list of a share of the keys
+     */
+    private final class Segment {
+
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long maxBytes;
+
+        private long weight;
+        private long invalidations;
+
+        Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Map<String, byte[]> get(String key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt - now <= 0) {
+                entries.remove(key);
+                weight -= entry.weight;
+                expirations.incrementAndGet();
+                return null;
+            }
+            return entry.row;
+        }
+
+        synchronized long stamp() {
+            return invalidations;
+        }
+
+        synchronized void put(String key, Map<String, byte[]> row, long rowWeight, long stamp, long expiresAt) {
+            // invalidated during the load, the row may be stale
+            if (stamp != invalidations || rowWeight > maxBytes) {
+                return;
+            }
+            Entry previous = entries.put(key, new Entry(row, rowWeight, expiresAt));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += rowWeight;
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || weight > maxBytes) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                weight -= evicted.weight;
+                evictions.incrementAndGet();
+            }
+        }
+
+        synchronized void invalidate(String key) {
+            invalidations++;
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                weight -= entry.weight;
+            }
+        }
+
+        synchronized void invalidateAll() {
+            invalidations++;
+            entries.clear();
+            weight = 0;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.movile.cassandra;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Receives the rows of a scan, one call per row
+ *
+ * Parallel scans call it from several threads at once, implementations must be thread safe.
+ */
+public interface RowCallback<T> {
+
+    /**
+     * @param row a scanned row, an exception thrown here aborts the scan
+     */
+    void onRow(T row);
+}
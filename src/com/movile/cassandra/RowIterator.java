@@ -0,0 +1,109 @@
+package com.movile.cassandra;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.OrderedRows;
+import me.prettyprint.hector.api.beans.Row;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.query.RangeSlicesQuery;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Lazy walk over all of the rows of a column family
+ *
+ * Rows are fetched one page at a time with range slice queries, the last key of a page is the start key of
+ * the next one (the repeated boundary row is skipped), so only one page is held in memory at any time.
+ * Rows without columns (range ghosts of deleted keys) are skipped. Not thread safe.
+ */
+public class RowIterator<N, V> implements Iterator<Row<String, N, V>> {
+
+    private final RangeSlicesQuery<String, N, V> query;
+    private final int pageSize;
+
+    private Iterator<Row<String, N, V>> page;
+    private String lastKey;
+    private boolean lastPage;
+    private Row<String, N, V> next;
+
+    /**
+     * @param keyspace keyspace to query
+     * @param columnFamily column family to walk
+     * @param nameSerializer column name serializer
+     * @param valueSerializer column value serializer
+     * @param pageSize number of rows fetched per query
+     * @param columnCount maximum number of columns fetched per row
+     */
+    public RowIterator(Keyspace keyspace, String columnFamily, Serializer<N> nameSerializer, Serializer<V> valueSerializer, int pageSize,
+            int columnCount) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        this.pageSize = pageSize;
+
+        query = HFactory.createRangeSlicesQuery(keyspace, StringSerializer.get(), nameSerializer, valueSerializer);
+        query.setColumnFamily(columnFamily);
+        query.setRange(null, null, false, columnCount);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (page == null || !page.hasNext()) {
+                if (lastPage) {
+                    return false;
+                }
+                fetchPage();
+                continue;
+            }
+
+            Row<String, N, V> row = page.next();
+            if (!row.getColumnSlice().getColumns().isEmpty()) {
+                next = row;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Row<String, N, V> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Row<String, N, V> row = next;
+        next = null;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void fetchPage() {
+        // the start key is inclusive, after the first page ask for one more row to make up for the repeated one
+        int rowCount = lastKey == null ? pageSize : pageSize + 1;
+        query.setKeys(lastKey == null ? "" : lastKey, "");
+        query.setRowCount(rowCount);
+
+        OrderedRows<String, N, V> rows = query.execute().get();
+        List<Row<String, N, V>> list = rows.getList();
+
+        lastPage = list.size() < rowCount;
+
+        // skip the boundary row, already returned as the last one of the previous page
+        int first = 0;
+        if (lastKey != null && !list.isEmpty() && lastKey.equals(list.get(0).getKey())) {
+            first = 1;
+        }
+        page = list.subList(first, list.size()).iterator();
+
+        if (!list.isEmpty()) {
+            lastKey = rows.peekLast().getKey();
+        }
+    }
+}
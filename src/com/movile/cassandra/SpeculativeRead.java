@@ -0,0 +1,216 @@
+package com.movile.cassandra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.prettyprint.cassandra.service.CassandraHost;
+import me.prettyprint.hector.api.Cluster;
+import me.prettyprint.hector.api.HConsistencyLevel;
+import me.prettyprint.hector.api.exceptions.HectorException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.movile.cassandra.metrics.LatencyHistogram;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Speculative retry of one read operation of a DAO
+ *
+ * A read running longer than a percentile of its own recent latencies is sent again to another host, the first
+ * answer wins and the other one is left to complete in background. The threshold is the given percentile of the
+ * attempts of the last second (at least {@link #MIN_SAMPLES} of them, the threshold is kept until then), never
+ * below the minimum delay. A read is not duplicated before the first threshold, when the cluster has a single live
+ * host, or when the speculative executor of the session has no free slot (it then runs on the calling thread).
+ *
+ * Only idempotent reads go through here: the duplicate is the same query at the same consistency level. The
+ * attempts run on the speculative executor of the session, never on the slots of the async DAOs, the duplicate
+ * avoids the hosts of the first attempt when the cluster uses the {@link LatencyAwareBalancingPolicy}. Every read
+ * then pays a thread hop, which is why the percentile is 0 (off) unless configured.
+ */
+public class SpeculativeRead {
+
+    /**
+     * Attempts needed to compute a threshold
+     */
+    static final int MIN_SAMPLES = 100;
+
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final CassandraSession session;
+    private final double quantile;
+    private final long minDelayNanos;
+
+    /**
+     * Latencies of the single attempts, not of the reads as seen by the caller
+     */
+    private final LatencyHistogram attempts = new LatencyHistogram();
+    private final AtomicLong speculations = new AtomicLong();
+
+    /**
+     * Delay before the duplicate, -1 while unknown. Updated at most once per interval
+     */
+    private volatile long thresholdNanos = -1;
+    private volatile long nextUpdate = System.nanoTime();
+    private LatencyHistogram.Snapshot lastSnapshot;
+
+    /**
+     * @param session session running the attempts
+     * @param percentile percentile of the latencies after which the read is duplicated (e.g. 99), 0 to never duplicate
+     * @param minDelay minimum delay before the duplicate
+     * @param unit unit of the delay
+     */
+    public SpeculativeRead(CassandraSession session, double percentile, long minDelay, TimeUnit unit) {
+        if (percentile < 0 || percentile >= 100) {
+            throw new IllegalArgumentException("Invalid percentile of the speculative reads: " + percentile);
+        }
+        this.session = session;
+        this.quantile = percentile / 100;
+        this.minDelayNanos = unit.toNanos(minDelay);
+    }
+
+    /**
+     * Runs a read, duplicated on another host when it takes longer than the threshold
+     * @param read the hector read, idempotent
+     * @return the first result
+     * @throws HectorException the failure of the read, when every attempt failed
+     */
+    public <T> T call(final Callable<T> read) throws HectorException {
+        if (quantile == 0) {
+            return direct(read);
+        }
+        long threshold = threshold();
+        Cluster cluster = session.getCluster();
+        if (threshold < 0 || cluster.getConnectionManager().getActivePools().size() < 2) {
+            return timed(read, null, null);
+        }
+
+        // the attempts run elsewhere, they keep the consistency override of the caller
+        final HConsistencyLevel level = ConsistencyPolicy.current();
+        final Collection<CassandraHost> used = new CopyOnWriteArraySet<CassandraHost>();
+        AsyncExecutor executor = session.getSpeculativeExecutor();
+        BlockingQueue<Future<T>> done = new LinkedBlockingQueue<Future<T>>();
+
+        ListenableFuture<T> first = executor.trySubmit(attempt(read, level, null, used));
+        if (first == null) {
+            return timed(read, null, null);
+        }
+        whenDone(first, done);
+        try {
+            Future<T> result = done.poll(threshold, TimeUnit.NANOSECONDS);
+            if (result != null) {
+                return AsyncExecutor.await(result);
+            }
+
+            int pending = 1;
+            ListenableFuture<T> second = executor.trySubmit(attempt(read, level, new ArrayList<CassandraHost>(used), null));
+            if (second != null) {
+                speculations.incrementAndGet();
+                whenDone(second, done);
+                pending++;
+            }
+
+            // the first success, or the first failure when both failed
+            RuntimeException failure = null;
+            while (pending-- > 0) {
+                try {
+                    return AsyncExecutor.await(done.take());
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HectorException("Interrupted waiting for a speculative read", e);
+        }
+    }
+
+    private <T> Callable<T> attempt(final Callable<T> read, final HConsistencyLevel level, final Collection<CassandraHost> avoided,
+            final Collection<CassandraHost> used) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                HConsistencyLevel previous = ConsistencyPolicy.override(level);
+                try {
+                    return timed(read, avoided, used);
+                } finally {
+                    ConsistencyPolicy.restore(previous);
+                }
+            }
+        };
+    }
+
+    private <T> T timed(Callable<T> read, Collection<CassandraHost> avoided, Collection<CassandraHost> used) {
+        long start = System.nanoTime();
+        try {
+            return LatencyAwareBalancingPolicy.call(read, avoided, used);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new HectorException(e);
+        } finally {
+            attempts.record(System.nanoTime() - start);
+        }
+    }
+
+    private static <T> T direct(Callable<T> read) {
+        try {
+            return read.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new HectorException(e);
+        }
+    }
+
+    private static <T> void whenDone(final ListenableFuture<T> future, final BlockingQueue<Future<T>> done) {
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                done.add(future);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private long threshold() {
+        long now = System.nanoTime();
+        if (now - nextUpdate >= 0) {
+            synchronized (this) {
+                if (now - nextUpdate >= 0) {
+                    LatencyHistogram.Snapshot snapshot = attempts.snapshot();
+                    LatencyHistogram.Snapshot window = lastSnapshot != null ? snapshot.minus(lastSnapshot) : snapshot;
+                    if (window.getCount() >= MIN_SAMPLES) {
+                        thresholdNanos = Math.max(minDelayNanos, window.getValueAt(quantile));
+                        lastSnapshot = snapshot;
+                    }
+                    nextUpdate = now + UPDATE_INTERVAL_NANOS;
+                }
+            }
+        }
+        return thresholdNanos;
+    }
+
+    /**
+     * @return the delay before a duplicate in microseconds, -1 while not known or when never duplicating
+     */
+    public long getThresholdMicros() {
+        long threshold = quantile == 0 ? -1 : threshold();
+        return threshold < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(threshold);
+    }
+
+    /**
+     * @return the number of reads duplicated so far
+     */
+    public long getSpeculations() {
+        return speculations.get();
+    }
+}
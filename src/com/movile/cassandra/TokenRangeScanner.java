@@ -0,0 +1,279 @@
+package com.movile.cassandra;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.prettyprint.cassandra.model.ColumnSliceImpl;
+import me.prettyprint.cassandra.model.ExecutingKeyspace;
+import me.prettyprint.cassandra.model.KeyspaceOperationCallback;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.cassandra.service.KeyspaceService;
+import me.prettyprint.hector.api.Cluster;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.ColumnSlice;
+import me.prettyprint.hector.api.beans.Row;
+import me.prettyprint.hector.api.exceptions.HectorException;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.KeyRange;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.log4j.Logger;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Parallel walk over all of the rows of a column family
+ *
+ * The ring (describe_ring) is split in token ranges, at least one per worker thread, and every range is paged
+ * independently with token bounded range slices: the start token is exclusive, so the next page starts after the
+ * token of the last returned key. Up to parallelism ranges are read at once, the callback is called from the
+ * worker threads. Rows without columns (range ghosts of deleted keys) are skipped.
+ *
+ * The tokens of the keys are computed on the client, only the RandomPartitioner is supported.
+ * Regular column families only, counter rows are not returned by the range slices used here.
+ */
+public class TokenRangeScanner<N, V> {
+
+    private static Logger log = Logger.getLogger("cassandra");
+
+    private static final String RANDOM_PARTITIONER = "org.apache.cassandra.dht.RandomPartitioner";
+    private static final BigInteger MAXIMUM_TOKEN = BigInteger.valueOf(2).pow(127);
+
+    private static final AtomicInteger scans = new AtomicInteger();
+
+    private final Cluster cluster;
+    private final ExecutingKeyspace keyspace;
+    private final String columnFamily;
+    private final Serializer<N> nameSerializer;
+    private final Serializer<V> valueSerializer;
+    private final int parallelism;
+    private final int pageSize;
+
+    private final ColumnParent columnParent;
+    private final SlicePredicate predicate;
+
+    /**
+     * @param cluster cluster the ring is read from
+     * @param keyspace keyspace to query
+     * @param columnFamily column family to walk
+     * @param nameSerializer column name serializer
+     * @param valueSerializer column value serializer
+     * @param parallelism maximum number of token ranges read at once
+     * @param pageSize number of rows fetched per query
+     * @param columnCount maximum number of columns fetched per row
+     */
+    public TokenRangeScanner(Cluster cluster, Keyspace keyspace, String columnFamily, Serializer<N> nameSerializer,
+            Serializer<V> valueSerializer, int parallelism, int pageSize, int columnCount) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        this.cluster = cluster;
+        this.keyspace = (ExecutingKeyspace) keyspace;
+        this.columnFamily = columnFamily;
+        this.nameSerializer = nameSerializer;
+        this.valueSerializer = valueSerializer;
+        this.parallelism = parallelism;
+        this.pageSize = pageSize;
+
+        columnParent = new ColumnParent(columnFamily);
+        predicate = new SlicePredicate();
+        predicate.setSlice_range(new SliceRange(ByteBuffer.allocate(0), ByteBuffer.allocate(0), false, columnCount));
+    }
+
+    /**
+     * Reads the whole column family, blocks until every range is done.
+     * The first failure (query or callback) cancels the ranges not read yet and is thrown here.
+     * @param callback receives every row, called concurrently by up to parallelism threads
+     * @return the number of rows passed to the callback
+     * @throws HectorException
+     */
+    public long scan(final RowCallback<Row<String, N, V>> callback) throws HectorException {
+        String partitioner = cluster.describePartitioner();
+        if (!RANDOM_PARTITIONER.equals(partitioner)) {
+            throw new IllegalStateException("Token range scans need the RandomPartitioner, the cluster uses " + partitioner);
+        }
+
+        List<BigInteger[]> ranges = split(cluster.describeRing(keyspace.getKeyspaceName()));
+        if (log.isDebugEnabled()) {
+            log.debug("Scanning " + columnFamily + " in " + ranges.size() + " token ranges, parallelism " + parallelism);
+        }
+
+        final AtomicBoolean aborted = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()),
+                new ScanThreadFactory(columnFamily + "-scan-" + scans.incrementAndGet()));
+        try {
+            CompletionService<Long> completion = new ExecutorCompletionService<Long>(executor);
+            for (final BigInteger[] range : ranges) {
+                completion.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return scanRange(range[0], range[1], callback, aborted);
+                    }
+                });
+            }
+
+            long rows = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                rows += completion.take().get();
+            }
+            return rows;
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new HectorException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HectorException("Scan of " + columnFamily + " interrupted", e);
+        } finally {
+            aborted.set(true);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Pages the rows of one token range, (start, end]
+     */
+    private long scanRange(BigInteger start, BigInteger end, RowCallback<Row<String, N, V>> callback, AtomicBoolean aborted) {
+        long rows = 0;
+        BigInteger cursor = start;
+        while (!aborted.get()) {
+            final KeyRange keyRange = new KeyRange(pageSize);
+            keyRange.setStart_token(cursor.toString());
+            keyRange.setEnd_token(end.toString());
+
+            Map<ByteBuffer, List<Column>> page = keyspace.doExecute(new KeyspaceOperationCallback<Map<ByteBuffer, List<Column>>>() {
+                @Override
+                public Map<ByteBuffer, List<Column>> doInKeyspace(KeyspaceService ks) throws HectorException {
+                    return ks.getRangeSlices(columnParent, predicate, keyRange);
+                }
+            }).get();
+
+            ByteBuffer lastKey = null;
+            for (Entry<ByteBuffer, List<Column>> entry : page.entrySet()) {
+                lastKey = entry.getKey();
+                if (!entry.getValue().isEmpty()) {
+                    callback.onRow(new ScannedRow<N, V>(StringSerializer.get().fromByteBuffer(lastKey.duplicate()),
+                            new ColumnSliceImpl<N, V>(entry.getValue(), nameSerializer, valueSerializer)));
+                    rows++;
+                }
+            }
+
+            if (page.size() < pageSize) {
+                break;
+            }
+            cursor = token(lastKey);
+            if (cursor.equals(end)) {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Splits the ring ranges so that there are at least parallelism of them
+     * @return the (start, end] token pairs
+     */
+    private List<BigInteger[]> split(List<TokenRange> ring) {
+        int pieces = (parallelism + ring.size() - 1) / ring.size();
+
+        List<BigInteger[]> ranges = new ArrayList<BigInteger[]>();
+        for (TokenRange tokenRange : ring) {
+            BigInteger start = new BigInteger(tokenRange.getStart_token());
+            BigInteger end = new BigInteger(tokenRange.getEnd_token());
+
+            // a range wraps around the ring when its start is not before its end, (t, t] is the whole ring
+            BigInteger length = end.subtract(start);
+            if (length.signum() <= 0) {
+                length = length.add(MAXIMUM_TOKEN);
+            }
+
+            BigInteger previous = start;
+            for (int i = 1; i <= pieces; i++) {
+                BigInteger next = i == pieces ? end
+                        : start.add(length.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(pieces))).mod(MAXIMUM_TOKEN);
+                ranges.add(new BigInteger[] { previous, next });
+                previous = next;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * RandomPartitioner token of a key
+     * @param key row key
+     * @return the md5 based token
+     */
+    static BigInteger token(ByteBuffer key) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update(key.duplicate());
+            return new BigInteger(md5.digest()).abs();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class ScannedRow<N, V> implements Row<String, N, V> {
+
+        private final String key;
+        private final ColumnSlice<N, V> columnSlice;
+
+        ScannedRow(String key, ColumnSlice<N, V> columnSlice) {
+            this.key = key;
+            this.columnSlice = columnSlice;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public ColumnSlice<N, V> getColumnSlice() {
+            return columnSlice;
+        }
+    }
+
+    private static final class ScanThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger threads = new AtomicInteger();
+
+        ScanThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.movile.cassandra.mapping;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import me.prettyprint.hector.api.Serializer;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Maps a field of a bean to a column of its row
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Column {
+
+    /**
+     * @return the column name, the field name by default
+     */
+    String name() default "";
+
+    /**
+     * @return the codec of the values (a class with a static get() or a public no-arg constructor),
+     * by default the one registered in ColumnCodecs for the field type
+     */
+    @SuppressWarnings("rawtypes")
+    Class<? extends Serializer> serializer() default Serializer.class;
+
+    /**
+     * @return true to leave the value out of {@link EntityMapper#toString(Object)} (passwords, tokens)
+     */
+    boolean secret() default false;
+}
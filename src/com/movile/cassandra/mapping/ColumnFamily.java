@@ -0,0 +1,23 @@
+package com.movile.cassandra.mapping;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Maps a bean to the rows of a column family, one row per bean
+ * @see EntityMapper
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ColumnFamily {
+
+    /**
+     * @return the column family name
+     */
+    String value();
+}
@@ -0,0 +1,417 @@
+package com.movile.cassandra.mapping;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import me.prettyprint.cassandra.model.ExecutingKeyspace;
+import me.prettyprint.cassandra.model.KeyspaceOperationCallback;
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.service.KeyspaceService;
+import me.prettyprint.hector.api.HConsistencyLevel;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.beans.Row;
+import me.prettyprint.hector.api.exceptions.HectorException;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+
+import com.movile.cassandra.AsyncExecutor;
+import com.movile.cassandra.BatchWriter;
+import com.movile.cassandra.CassandraBase;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.ConsistencyPolicy;
+import com.movile.cassandra.RowCache;
+import com.movile.cassandra.RowIterator;
+import com.movile.cassandra.metrics.OperationStats;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Generic DAO of an annotated bean
+ *
+ * The reads ask only for the mapped columns and fill the beans straight from the thrift results, matching the
+ * encoded column names. Whole rows (mapped or not) are cached when the column family has a row cache
+ * (cassandra.cache.*).
+ * @see EntityMapper
+ */
+public class EntityDAO<T> extends CassandraBase {
+
+    /**
+     * Columns fetched per row by the scans
+     */
+    private static final int SCAN_COLUMN_COUNT = 100;
+
+    /**
+     * Whole row, as read by the template queries of the other DAOs
+     */
+    private static final SlicePredicate ROW_PREDICATE = new SlicePredicate().setSlice_range(new SliceRange(ByteBuffer.wrap(new byte[0]),
+            ByteBuffer.wrap(new byte[0]), false, 100));
+
+    private final EntityMapper<T> mapper;
+    private final String columnFamily;
+    private final ColumnParent columnParent;
+    private final SlicePredicate predicate;
+
+    /**
+     * Row cache of the session, null when the column family is not cached
+     */
+    private final RowCache cache;
+
+    /**
+     * Latencies of the operations
+     */
+    private final OperationStats saveStats;
+    private final OperationStats saveAllStats;
+    private final OperationStats getStats;
+    private final OperationStats multiGetStats;
+
+    /**
+     * The row cache is shared with the other DAOs of the column family, which expect whole rows: the rows are loaded
+     * with every column (up to the limit of the template queries), not only the mapped ones
+     */
+    private final RowCache.Loader rowLoader = new RowCache.Loader() {
+        @Override
+        public Map<String, byte[]> load(String key) {
+            List<org.apache.cassandra.thrift.Column> columns = getSlice(key, ROW_PREDICATE);
+            if (columns.isEmpty()) {
+                return null;
+            }
+            Map<String, byte[]> row = new TreeMap<String, byte[]>();
+            for (org.apache.cassandra.thrift.Column column : columns) {
+                row.put(stringSerializer.fromByteBuffer(column.bufferForName().duplicate()),
+                        byteArraySerializer.fromByteBuffer(column.bufferForValue().duplicate()));
+            }
+            return row;
+        }
+    };
+
+    // default constructor
+    public EntityDAO(Class<T> type) {
+        this(CassandraSession.acquire(), EntityMapper.of(type));
+        // the DAO retained its own reference, the one of acquire is given back
+        session.release();
+    }
+
+    /**
+     * Creates a DAO sharing an existing session
+     * @param session shared cluster/keyspace session
+     * @param type annotated bean class
+     */
+    public EntityDAO(CassandraSession session, Class<T> type) {
+        this(session, EntityMapper.of(type));
+    }
+
+    private EntityDAO(CassandraSession session, EntityMapper<T> mapper) {
+        super(session, mapper.getColumnFamily());
+        this.mapper = mapper;
+        columnFamily = mapper.getColumnFamily();
+        columnParent = new ColumnParent(columnFamily);
+        predicate = new SlicePredicate().setColumn_names(mapper.getEncodedColumnNames());
+        cache = session.getRowCache(columnFamily);
+        saveStats = operationStats(columnFamily, "save");
+        saveAllStats = operationStats(columnFamily, "saveAll");
+        getStats = operationStats(columnFamily, "get");
+        multiGetStats = operationStats(columnFamily, "multiGet");
+    }
+
+    /**
+     * @return the mapping of the beans
+     */
+    public EntityMapper<T> getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Inserts the non null fields of a bean in one round trip
+     * @param entity the bean
+     * @throws HectorException
+     */
+    public void save(T entity) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            String key = mapper.getKey(entity);
+            Mutator<String> mutator = HFactory.createMutator(keyspace, stringSerializer);
+            for (HColumn<ByteBuffer, Object> column : mapper.toColumns(entity)) {
+                mutator.addInsertion(key, columnFamily, column);
+            }
+            mutator.execute();
+            invalidate(key);
+            ok = true;
+        } finally {
+            saveStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Inserts the non null fields of a bean in one round trip, at the given consistency level
+     * @param entity the bean
+     * @param level consistency level of this call, null for the level of the column family
+     * @throws HectorException
+     */
+    public void save(T entity, HConsistencyLevel level) throws HectorException {
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            save(entity);
+        } finally {
+            ConsistencyPolicy.restore(previous);
+        }
+    }
+
+    /**
+     * Inserts many beans, the columns of several beans are sent on each round trip
+     * @param entities the beans
+     * @throws HectorException
+     * @see #createBatchWriter()
+     */
+    public void saveAll(Collection<? extends T> entities) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            BatchWriter writer = createCallBatchWriter();
+            try {
+                for (T entity : entities) {
+                    String key = mapper.getKey(entity);
+                    for (HColumn<ByteBuffer, Object> column : mapper.toColumns(entity)) {
+                        writer.addInsertion(key, columnFamily, column);
+                    }
+                }
+                writer.close();
+                ok = true;
+            } finally {
+                if (!ok) {
+                    // the failure is thrown, not replaced by the one of a partial batch
+                    writer.discard();
+                }
+                for (T entity : entities) {
+                    invalidate(mapper.getKey(entity));
+                }
+            }
+        } finally {
+            saveAllStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get a bean by its row key
+     * @param id the key
+     * @return the bean, null when the row has none of the mapped columns
+     * @throws HectorException
+     */
+    public T get(String id) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            if (cache != null) {
+                Map<String, byte[]> row = cache.get(id, rowLoader);
+                ok = true;
+                return row != null ? mapper.fromRow(id, row) : null;
+            }
+            T entity = toEntity(id, getSlice(id));
+            ok = true;
+            return entity;
+        } finally {
+            getStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get a bean by its row key, read from the cluster at the given consistency level (the row cache is not used)
+     * @param id the key
+     * @param level consistency level of this call, null for the level of the column family
+     * @return the bean, null when the row has none of the mapped columns
+     * @throws HectorException
+     */
+    public T get(String id, HConsistencyLevel level) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+        try {
+            T entity = toEntity(id, getSlice(id));
+            ok = true;
+            return entity;
+        } finally {
+            ConsistencyPolicy.restore(previous);
+            getStats.record(start, ok);
+        }
+    }
+
+    /**
+     * Get many beans at once with multiget slice queries, one round trip per chunk of cassandra.multiget.chunkSize
+     * keys, the chunks are read concurrently
+     * @param ids the keys, duplicates are read once
+     * @return the found beans by key, in the order of the given keys (missing keys and rows with none of the mapped
+     * columns are left out)
+     * @throws HectorException
+     */
+    public Map<String, T> multiGet(Collection<String> ids) throws HectorException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(ids));
+            int chunkSize = session.getProperties().getInt("cassandra.multiget.chunkSize", 100, 1, 10000);
+
+            // every chunk but the first one goes to the session executor, when it has a free slot
+            final HConsistencyLevel level = ConsistencyPolicy.current();
+            Map<String, T> found = new HashMap<String, T>();
+            List<Future<Map<String, T>>> pending = new ArrayList<Future<Map<String, T>>>();
+            AsyncExecutor executor = keys.size() > chunkSize ? session.getAsyncExecutor() : null;
+            for (int from = chunkSize; from < keys.size(); from += chunkSize) {
+                final List<String> chunk = keys.subList(from, Math.min(from + chunkSize, keys.size()));
+                Future<Map<String, T>> future = executor.trySubmit(new Callable<Map<String, T>>() {
+                    @Override
+                    public Map<String, T> call() {
+                        // the chunk keeps the consistency override of the caller
+                        HConsistencyLevel previous = ConsistencyPolicy.override(level);
+                        try {
+                            return multiget(chunk);
+                        } finally {
+                            ConsistencyPolicy.restore(previous);
+                        }
+                    }
+                });
+                if (future != null) {
+                    pending.add(future);
+                } else {
+                    found.putAll(multiget(chunk));
+                }
+            }
+            found.putAll(multiget(keys.subList(0, Math.min(chunkSize, keys.size()))));
+            for (Future<Map<String, T>> future : pending) {
+                found.putAll(AsyncExecutor.await(future));
+            }
+
+            Map<String, T> entities = new LinkedHashMap<String, T>();
+            for (String key : keys) {
+                T entity = found.get(key);
+                if (entity != null) {
+                    entities.put(key, entity);
+                }
+            }
+            ok = true;
+            return entities;
+        } finally {
+            multiGetStats.record(start, ok);
+        }
+    }
+
+    private Map<String, T> multiget(List<String> keys) {
+        Map<String, T> found = new HashMap<String, T>();
+        if (keys.isEmpty()) {
+            return found;
+        }
+        final List<ByteBuffer> chunk = stringSerializer.toBytesList(keys);
+        Map<ByteBuffer, List<org.apache.cassandra.thrift.Column>> rows = execute(
+                new KeyspaceOperationCallback<Map<ByteBuffer, List<org.apache.cassandra.thrift.Column>>>() {
+                    @Override
+                    public Map<ByteBuffer, List<org.apache.cassandra.thrift.Column>> doInKeyspace(KeyspaceService ks)
+                            throws HectorException {
+                        return ks.multigetSlice(chunk, columnParent, predicate);
+                    }
+                });
+        for (Map.Entry<ByteBuffer, List<org.apache.cassandra.thrift.Column>> row : rows.entrySet()) {
+            String key = stringSerializer.fromByteBuffer(row.getKey().duplicate());
+            T entity = toEntity(key, row.getValue());
+            if (entity != null) {
+                found.put(key, entity);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Walks all of the beans page by page, the rows with none of the mapped columns are skipped (as get returns null
+     * for them)
+     * @param pageSize number of rows fetched per round trip, the memory used is bounded by it
+     * @return a lazy iterator of beans
+     * @see RowIterator
+     */
+    public Iterator<T> scan(int pageSize) {
+        final RowIterator<ByteBuffer, ByteBuffer> rows = new RowIterator<ByteBuffer, ByteBuffer>(keyspace, columnFamily,
+                ByteBufferSerializer.get(), ByteBufferSerializer.get(), pageSize, SCAN_COLUMN_COUNT);
+
+        return new Iterator<T>() {
+
+            private T next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && rows.hasNext()) {
+                    Row<String, ByteBuffer, ByteBuffer> row = rows.next();
+                    T entity = mapper.newInstance(row.getKey());
+                    boolean mapped = false;
+                    for (HColumn<ByteBuffer, ByteBuffer> column : row.getColumnSlice().getColumns()) {
+                        mapped |= mapper.setColumn(entity, column.getName(), column.getValue());
+                    }
+                    if (mapped) {
+                        next = entity;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T entity = next;
+                next = null;
+                return entity;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private T toEntity(String key, List<org.apache.cassandra.thrift.Column> columns) {
+        if (columns.isEmpty()) {
+            return null;
+        }
+        T entity = mapper.newInstance(key);
+        for (org.apache.cassandra.thrift.Column column : columns) {
+            mapper.setColumn(entity, column.bufferForName(), column.bufferForValue());
+        }
+        return entity;
+    }
+
+    private List<org.apache.cassandra.thrift.Column> getSlice(String id) {
+        return getSlice(id, predicate);
+    }
+
+    private List<org.apache.cassandra.thrift.Column> getSlice(String id, final SlicePredicate predicate) {
+        final ByteBuffer key = stringSerializer.toByteBuffer(id);
+        return execute(new KeyspaceOperationCallback<List<org.apache.cassandra.thrift.Column>>() {
+            @Override
+            public List<org.apache.cassandra.thrift.Column> doInKeyspace(KeyspaceService ks) throws HectorException {
+                return ks.getSlice(key, columnParent, predicate);
+            }
+        });
+    }
+
+    private <R> R execute(KeyspaceOperationCallback<R> callback) {
+        return ((ExecutingKeyspace) keyspace).doExecute(callback).get();
+    }
+
+    private void invalidate(String id) {
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+}
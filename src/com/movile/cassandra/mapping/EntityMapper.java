@@ -0,0 +1,377 @@
+package com.movile.cassandra.mapping;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.factory.HFactory;
+
+import com.movile.cassandra.ColumnCodecs;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Mapping of a bean annotated with {@link ColumnFamily}, {@link RowKey} and {@link Column} to the columns of its row
+ *
+ * The annotations are read once per class: every mapped field gets its column name, already encoded (the names are
+ * never encoded again on writes, nor decoded on reads), its codec and an accessible field handle, so mapping a
+ * bean costs one field get or set per column and no lookup. Fields of the class and of its superclasses are mapped,
+ * the class needs a no-arg constructor (any visibility). Null values are not written.
+ *
+ * The mapped beans can implement equals, hashCode and toString by delegating to the field based ones of their
+ * mapper, which leave the reflective lookups of commons-lang builders out of the hash maps and the logs.
+ */
+public final class EntityMapper<T> {
+
+    private static final ConcurrentMap<Class<?>, EntityMapper<?>> mappers = new ConcurrentHashMap<Class<?>, EntityMapper<?>>();
+
+    private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        WRAPPERS.put(boolean.class, Boolean.class);
+        WRAPPERS.put(byte.class, Byte.class);
+        WRAPPERS.put(char.class, Character.class);
+        WRAPPERS.put(short.class, Short.class);
+        WRAPPERS.put(int.class, Integer.class);
+        WRAPPERS.put(long.class, Long.class);
+        WRAPPERS.put(float.class, Float.class);
+        WRAPPERS.put(double.class, Double.class);
+    }
+
+    private final Class<T> type;
+    private final Constructor<T> constructor;
+    private final String columnFamily;
+    private final Field key;
+    private final Property[] properties;
+    private final Map<ByteBuffer, Property> byEncodedName = new HashMap<ByteBuffer, Property>();
+    private final Map<String, Property> byName = new HashMap<String, Property>();
+
+    /**
+     * Get the mapping of a class, built on the first call
+     * @param type annotated bean class
+     * @return the mapper
+     * @throws IllegalArgumentException when the class is not correctly annotated
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMapper<T> of(Class<T> type) {
+        EntityMapper<?> mapper = mappers.get(type);
+        if (mapper == null) {
+            mapper = new EntityMapper<T>(type);
+            EntityMapper<?> previous = mappers.putIfAbsent(type, mapper);
+            if (previous != null) {
+                mapper = previous;
+            }
+        }
+        return (EntityMapper<T>) mapper;
+    }
+
+    private EntityMapper(Class<T> type) {
+        this.type = type;
+
+        ColumnFamily cf = type.getAnnotation(ColumnFamily.class);
+        if (cf == null) {
+            throw new IllegalArgumentException(type.getName() + " is not annotated with @ColumnFamily");
+        }
+        columnFamily = cf.value();
+
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no no-arg constructor", e);
+        }
+
+        Field keyField = null;
+        List<Property> mapped = new ArrayList<Property>();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (field.isAnnotationPresent(RowKey.class)) {
+                    if (keyField != null || field.getType() != String.class) {
+                        throw new IllegalArgumentException(type.getName() + " needs exactly one String @RowKey field");
+                    }
+                    field.setAccessible(true);
+                    keyField = field;
+                }
+                Column column = field.getAnnotation(Column.class);
+                if (column != null) {
+                    Property property = new Property(field, column);
+                    if (byName.put(property.name, property) != null) {
+                        throw new IllegalArgumentException(type.getName() + " maps the column " + property.name + " twice");
+                    }
+                    byEncodedName.put(property.encodedName, property);
+                    mapped.add(property);
+                }
+            }
+        }
+        if (keyField == null) {
+            throw new IllegalArgumentException(type.getName() + " needs exactly one String @RowKey field");
+        }
+        key = keyField;
+        properties = mapped.toArray(new Property[mapped.size()]);
+    }
+
+    /**
+     * @return the mapped class
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return the column family of the beans
+     */
+    public String getColumnFamily() {
+        return columnFamily;
+    }
+
+    /**
+     * @return the names of the mapped columns
+     */
+    public List<String> getColumnNames() {
+        List<String> names = new ArrayList<String>(properties.length);
+        for (Property property : properties) {
+            names.add(property.name);
+        }
+        return names;
+    }
+
+    /**
+     * @return the encoded names of the mapped columns, to be used as they are in slice predicates
+     */
+    public List<ByteBuffer> getEncodedColumnNames() {
+        List<ByteBuffer> names = new ArrayList<ByteBuffer>(properties.length);
+        for (Property property : properties) {
+            names.add(property.encodedName.duplicate());
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @param entity a bean
+     * @return its row key
+     */
+    public String getKey(T entity) {
+        return (String) get(key, entity);
+    }
+
+    /**
+     * @param entity a bean
+     * @return the columns of its non null fields
+     */
+    public List<HColumn<ByteBuffer, Object>> toColumns(T entity) {
+        List<HColumn<ByteBuffer, Object>> columns = new ArrayList<HColumn<ByteBuffer, Object>>(properties.length);
+        for (Property property : properties) {
+            Object value = get(property.field, entity);
+            if (value != null) {
+                columns.add(HFactory.createColumn(property.encodedName.duplicate(), value, ByteBufferSerializer.get(), property.serializer));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @param key row key
+     * @return a new bean with only its key set
+     */
+    public T newInstance(String key) {
+        try {
+            T entity = constructor.newInstance();
+            this.key.set(entity, key);
+            return entity;
+        } catch (Exception e) {
+            throw new IllegalStateException("Can not create a " + type.getName() + ": " + e.toString(), e);
+        }
+    }
+
+    /**
+     * Sets the field mapped to a column
+     * @param entity the bean
+     * @param name encoded column name
+     * @param value value bytes, the buffer position is not changed
+     * @return false when the column is not mapped
+     */
+    public boolean setColumn(T entity, ByteBuffer name, ByteBuffer value) {
+        return set(byEncodedName.get(name), entity, value);
+    }
+
+    /**
+     * Sets the field mapped to a column
+     * @param entity the bean
+     * @param name column name
+     * @param value value bytes, the buffer position is not changed
+     * @return false when the column is not mapped
+     */
+    public boolean setColumn(T entity, String name, ByteBuffer value) {
+        return set(byName.get(name), entity, value);
+    }
+
+    /**
+     * Builds a bean from the columns of its row in the form kept by the row caches
+     * @param key row key
+     * @param row column name to value bytes, the columns not mapped are ignored
+     * @return the bean, null when the row has none of the mapped columns
+     */
+    public T fromRow(String key, Map<String, byte[]> row) {
+        T entity = newInstance(key);
+        boolean mapped = false;
+        for (Map.Entry<String, byte[]> column : row.entrySet()) {
+            mapped |= setColumn(entity, column.getKey(), ByteBuffer.wrap(column.getValue()));
+        }
+        return mapped ? entity : null;
+    }
+
+    /**
+     * Field based equality of two beans: same class, key and mapped fields
+     * @param entity a bean
+     * @param obj the other object
+     * @return true when they are equal
+     */
+    public boolean equals(T entity, Object obj) {
+        if (entity == obj) {
+            return true;
+        }
+        if (entity == null || obj == null || obj.getClass() != entity.getClass()) {
+            return false;
+        }
+        if (!equal(get(key, entity), get(key, obj))) {
+            return false;
+        }
+        for (Property property : properties) {
+            if (!equal(get(property.field, entity), get(property.field, obj))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param entity a bean
+     * @return a hash of its key and mapped fields, consistent with {@link #equals(Object, Object)}
+     */
+    public int hashCode(T entity) {
+        int result = 17;
+        result = 31 * result + hash(get(key, entity));
+        for (Property property : properties) {
+            result = 31 * result + hash(get(property.field, entity));
+        }
+        return result;
+    }
+
+    /**
+     * @param entity a bean
+     * @return its key and mapped fields, but the secret ones
+     */
+    public String toString(T entity) {
+        StringBuilder sb = new StringBuilder(type.getSimpleName()).append(" [").append(key.getName()).append('=').append(get(key, entity));
+        for (Property property : properties) {
+            if (!property.secret) {
+                sb.append(", ").append(property.field.getName()).append('=').append(get(property.field, entity));
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static boolean equal(Object a, Object b) {
+        if (a instanceof byte[] && b instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        }
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int hash(Object value) {
+        if (value instanceof byte[]) {
+            return Arrays.hashCode((byte[]) value);
+        }
+        return value != null ? value.hashCode() : 0;
+    }
+
+    private boolean set(Property property, T entity, ByteBuffer value) {
+        if (property == null) {
+            return false;
+        }
+        Object decoded = property.serializer.fromByteBuffer(value.duplicate());
+        if (decoded != null || !property.field.getType().isPrimitive()) {
+            try {
+                property.field.set(entity, decoded);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return true;
+    }
+
+    private static Object get(Field field, Object entity) {
+        try {
+            return field.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EntityMapper [type=" + type.getName() + ", columnFamily=" + columnFamily + ", columns=" + byName.keySet() + "]";
+    }
+
+    /**
+     * A mapped field
+     */
+    private static final class Property {
+
+        final Field field;
+        final String name;
+        final ByteBuffer encodedName;
+        final Serializer<Object> serializer;
+        final boolean secret;
+
+        @SuppressWarnings("unchecked")
+        Property(Field field, Column column) {
+            this.field = field;
+            field.setAccessible(true);
+            name = column.name().length() > 0 ? column.name() : field.getName();
+            encodedName = StringSerializer.get().toByteBuffer(name);
+            secret = column.secret();
+
+            if (column.serializer() != Serializer.class) {
+                serializer = (Serializer<Object>) instantiate(column.serializer());
+            } else {
+                Class<?> valueType = field.getType().isPrimitive() ? WRAPPERS.get(field.getType()) : field.getType();
+                serializer = (Serializer<Object>) ColumnCodecs.forClass(valueType);
+            }
+        }
+
+        private static Serializer<?> instantiate(Class<?> serializerClass) {
+            try {
+                Method get = serializerClass.getMethod("get");
+                if (Modifier.isStatic(get.getModifiers())) {
+                    return (Serializer<?>) get.invoke(null);
+                }
+            } catch (NoSuchMethodException e) {
+                // no singleton, try the constructor
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Can not get the serializer " + serializerClass.getName(), e);
+            }
+            try {
+                return (Serializer<?>) serializerClass.newInstance();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Can not create the serializer " + serializerClass.getName(), e);
+            }
+        }
+    }
+}
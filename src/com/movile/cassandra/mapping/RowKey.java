@@ -0,0 +1,17 @@
+package com.movile.cassandra.mapping;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Marks the String field holding the row key of a mapped bean
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface RowKey {
+}
@@ -0,0 +1,250 @@
+package com.movile.cassandra.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Latency statistics of the DAO operations of a session, by column family and operation
+ *
+ * Every (column family, operation) pair has its own {@link OperationStats}, looked up once by the DAO constructors
+ * so that the calls only pay the clock reads and the histogram increment. The stats are registered as MBeans
+ * (com.movile.cassandra:type=DAOMetrics,session=...,columnFamily=...,operation=...) and can be logged periodically
+ * to the cassandra.metrics logger: the logged percentiles and rates are the ones of the last interval, the column
+ * family lines add up the operations of the column family.
+ */
+public class DAOMetrics {
+
+    private static Logger log = Logger.getLogger("cassandra");
+    private static Logger metricsLog = Logger.getLogger("cassandra.metrics");
+
+    private static final String DOMAIN = "com.movile.cassandra";
+
+    private final String sessionName;
+    private final boolean jmx;
+    private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<String, OperationStats>();
+
+    /**
+     * Stats registered by this instance, another session of the same name keeps its own MBeans
+     */
+    private final Set<OperationStats> registered = Collections.newSetFromMap(new ConcurrentHashMap<OperationStats, Boolean>());
+
+    private ScheduledExecutorService timer;
+
+    /**
+     * Previous snapshots of the logger, only touched by the timer thread
+     */
+    private Map<String, LatencyHistogram.Snapshot> previous = new HashMap<String, LatencyHistogram.Snapshot>();
+    private Map<String, Long> previousErrors = new HashMap<String, Long>();
+    private long previousTime;
+
+    /**
+     * @param sessionName name of the session in the MBean names
+     * @param jmx true to register the stats as MBeans
+     */
+    public DAOMetrics(String sessionName, boolean jmx) {
+        this.sessionName = sessionName;
+        this.jmx = jmx;
+    }
+
+    /**
+     * Get the stats of an operation, created on the first call
+     * @param columnFamily column family name
+     * @param operation operation name (the DAO method name)
+     * @return the stats shared by every DAO of the session
+     */
+    public OperationStats operation(String columnFamily, String operation) {
+        String name = columnFamily + "." + operation;
+        OperationStats stats = operations.get(name);
+        if (stats == null) {
+            stats = new OperationStats(columnFamily, operation);
+            OperationStats existing = operations.putIfAbsent(name, stats);
+            if (existing != null) {
+                return existing;
+            }
+            if (jmx) {
+                register(stats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the stats of every operation by columnFamily.operation name, sorted
+     */
+    public Map<String, OperationStats> getOperations() {
+        return new TreeMap<String, OperationStats>(operations);
+    }
+
+    /**
+     * Statistics since the start, one line per operation and per column family
+     * @return the statistics, empty when no operation was called
+     */
+    public String getSummary() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<String, LatencyHistogram.Snapshot>();
+        Map<String, Long> errors = new HashMap<String, Long>();
+        for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+            errors.put(entry.getKey(), entry.getValue().getErrors());
+        }
+        return format(snapshots, errors, 0);
+    }
+
+    /**
+     * Logs the statistics of the last interval every interval, to the cassandra.metrics logger
+     * @param interval time between two logs, 0 to not log
+     * @param unit unit of the interval
+     */
+    public synchronized void startLogger(long interval, TimeUnit unit) {
+        if (interval <= 0 || timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cassandra-metrics-" + sessionName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        previousTime = System.nanoTime();
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    logInterval();
+                } catch (Exception e) {
+                    log.error("Error logging the DAO metrics: " + e.toString(), e);
+                }
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stops the logger and unregisters the MBeans
+     */
+    public void close() {
+        synchronized (this) {
+            if (timer != null) {
+                timer.shutdownNow();
+                timer = null;
+            }
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationStats stats : registered) {
+            try {
+                server.unregisterMBean(objectName(stats));
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Could not unregister the MBean of " + stats + ": " + e.toString());
+                }
+            }
+            registered.remove(stats);
+        }
+    }
+
+    private void logInterval() {
+        long now = System.nanoTime();
+        long elapsed = now - previousTime;
+        previousTime = now;
+
+        Map<String, LatencyHistogram.Snapshot> current = new HashMap<String, LatencyHistogram.Snapshot>();
+        Map<String, Long> currentErrors = new HashMap<String, Long>();
+        Map<String, LatencyHistogram.Snapshot> interval = new TreeMap<String, LatencyHistogram.Snapshot>();
+        Map<String, Long> intervalErrors = new HashMap<String, Long>();
+        for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+            String name = entry.getKey();
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            long errors = entry.getValue().getErrors();
+            current.put(name, snapshot);
+            currentErrors.put(name, errors);
+
+            LatencyHistogram.Snapshot last = previous.get(name);
+            Long lastErrors = previousErrors.get(name);
+            interval.put(name, last != null ? snapshot.minus(last) : snapshot);
+            intervalErrors.put(name, lastErrors != null ? errors - lastErrors : errors);
+        }
+        previous = current;
+        previousErrors = currentErrors;
+
+        String lines = format(interval, intervalErrors, elapsed);
+        if (lines.length() > 0 && metricsLog.isInfoEnabled()) {
+            metricsLog.info("DAO metrics of the last " + TimeUnit.NANOSECONDS.toSeconds(elapsed) + "s:\n" + lines);
+        }
+    }
+
+    /**
+     * One line per operation with calls, then one per column family
+     * @param errors errors of the operations over the same period as the snapshots
+     * @param elapsed length of the interval of the snapshots in nanoseconds for the rates, 0 to leave them out
+     */
+    private String format(Map<String, LatencyHistogram.Snapshot> snapshots, Map<String, Long> errors, long elapsed) {
+        Map<String, LatencyHistogram.Snapshot> byColumnFamily = new TreeMap<String, LatencyHistogram.Snapshot>();
+        Map<String, Long> errorsByColumnFamily = new HashMap<String, Long>();
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : snapshots.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue();
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            long operationErrors = errors.get(entry.getKey());
+            append(sb, entry.getKey(), snapshot, operationErrors, elapsed);
+
+            String columnFamily = operations.get(entry.getKey()).getColumnFamily();
+            LatencyHistogram.Snapshot total = byColumnFamily.get(columnFamily);
+            Long totalErrors = errorsByColumnFamily.get(columnFamily);
+            byColumnFamily.put(columnFamily, total != null ? total.plus(snapshot) : snapshot);
+            errorsByColumnFamily.put(columnFamily, totalErrors != null ? totalErrors + operationErrors : operationErrors);
+        }
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : byColumnFamily.entrySet()) {
+            append(sb, entry.getKey() + ".*", entry.getValue(), errorsByColumnFamily.get(entry.getKey()), elapsed);
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, LatencyHistogram.Snapshot snapshot, long errors, long elapsed) {
+        sb.append(name).append(" [count=").append(snapshot.getCount()).append(", errors=").append(errors);
+        if (elapsed > 0) {
+            sb.append(", rate=").append(String.format("%.1f", snapshot.getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed))
+                    .append("/s");
+        }
+        sb.append(", mean=").append(micros(snapshot.getMean()));
+        sb.append(", p50=").append(micros(snapshot.getValueAt(0.5)));
+        sb.append(", p99=").append(micros(snapshot.getValueAt(0.99)));
+        sb.append(", p999=").append(micros(snapshot.getValueAt(0.999)));
+        sb.append(", max=").append(micros(snapshot.getMax())).append("]\n");
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+
+    private void register(OperationStats stats) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats, objectName(stats));
+            registered.add(stats);
+        } catch (Exception e) {
+            log.warn("Could not register the MBean of " + stats + ": " + e.toString());
+        }
+    }
+
+    private ObjectName objectName(OperationStats stats) throws Exception {
+        return new ObjectName(DOMAIN + ":type=DAOMetrics,session=" + ObjectName.quote(sessionName) + ",columnFamily="
+                + ObjectName.quote(stats.getColumnFamily()) + ",operation=" + ObjectName.quote(stats.getOperation()));
+    }
+}
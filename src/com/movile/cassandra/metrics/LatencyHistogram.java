@@ -0,0 +1,162 @@
+package com.movile.cassandra.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Lock-free log-linear histogram of latencies in nanoseconds (the bucketing of HdrHistogram with 2 significant
+ * digits)
+ *
+ * Values up to 63 are counted exactly, every power of two above is split in 32 linear sub-buckets, so a reported
+ * percentile is within about 3% of the recorded value. Values above 2^36 ns (about 68 seconds) are counted in the
+ * last bucket. Recording is one array increment and one sum add, no allocation. The histogram is never reset:
+ * interval statistics are the difference of two snapshots.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_VALUES = SUB_BUCKETS * 2;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = LINEAR_VALUES + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts a value
+     * @param nanos latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : (nanos > MAX_VALUE ? MAX_VALUE : nanos);
+        counts.incrementAndGet(index(value));
+        sum.addAndGet(value);
+        for (long current = max.get(); value > current && !max.compareAndSet(current, value); current = max.get()) {
+            // retry until the maximum is at least this value
+        }
+    }
+
+    /**
+     * @return a copy of the counts so far (the buckets are read one by one, a concurrent record may be partly seen)
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.get(), max.get());
+    }
+
+    static int index(long value) {
+        if (value < LINEAR_VALUES) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return LINEAR_VALUES + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the middle of the values counted in a bucket
+     */
+    static long valueOf(int index) {
+        if (index < LINEAR_VALUES) {
+            return index;
+        }
+        int bucket = index - LINEAR_VALUES;
+        int shift = bucket / SUB_BUCKETS + 1;
+        long low = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return low + (1L << shift) / 2;
+    }
+
+    /**
+     * Counts of a histogram at some point in time
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @param previous an older snapshot of the same histogram
+         * @return the values recorded between the two snapshots (the maximum is the one of their highest bucket)
+         */
+        public Snapshot minus(Snapshot previous) {
+            long[] delta = new long[BUCKETS];
+            long deltaMax = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                delta[i] = counts[i] - previous.counts[i];
+                if (delta[i] > 0) {
+                    deltaMax = Math.min(valueOf(i), max);
+                }
+            }
+            return new Snapshot(delta, count - previous.count, sum - previous.sum, deltaMax);
+        }
+
+        /**
+         * @param other a snapshot of another histogram
+         * @return the values of both
+         */
+        public Snapshot plus(Snapshot other) {
+            long[] total = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                total[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(total, count + other.count, sum + other.sum, Math.max(max, other.max));
+        }
+
+        /**
+         * @return the number of values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the largest value, in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return the mean value in nanoseconds, 0 when empty
+         */
+        public long getMean() {
+            return count > 0 ? sum / count : 0;
+        }
+
+        /**
+         * @param quantile between 0 and 1 (0.99 for the 99th percentile)
+         * @return the value in nanoseconds below which the given fraction of the values fall, 0 when empty
+         */
+        public long getValueAt(double quantile) {
+            if (count <= 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(valueOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.movile.cassandra.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Latencies and errors of one DAO operation on one column family
+ *
+ * The DAOs get their stats once (see {@link DAOMetrics#operation(String, String)}) and time every call:
+ *
+ * <pre>
+ * long start = System.nanoTime();
+ * boolean ok = false;
+ * try {
+ *     ...
+ *     ok = true;
+ * } finally {
+ *     getStats.record(start, ok);
+ * }
+ * </pre>
+ */
+public final class OperationStats implements OperationStatsMBean {
+
+    private final String columnFamily;
+    private final String operation;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final long created = System.nanoTime();
+
+    OperationStats(String columnFamily, String operation) {
+        this.columnFamily = columnFamily;
+        this.operation = operation;
+    }
+
+    /**
+     * Records a call, failed calls are counted as errors and their latency is recorded as well
+     * @param start System.nanoTime() at the start of the call
+     * @param ok false when the call failed
+     */
+    public void record(long start, boolean ok) {
+        latencies.record(System.nanoTime() - start);
+        if (!ok) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the counts of the latencies so far
+     */
+    public LatencyHistogram.Snapshot snapshot() {
+        return latencies.snapshot();
+    }
+
+    @Override
+    public String getColumnFamily() {
+        return columnFamily;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return latencies.snapshot().getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the calls per second since the stats were created
+     */
+    @Override
+    public double getMeanRate() {
+        long elapsed = System.nanoTime() - created;
+        return elapsed > 0 ? getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.snapshot().getMean());
+    }
+
+    @Override
+    public long getP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.snapshot().getValueAt(0.5));
+    }
+
+    @Override
+    public long getP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.snapshot().getValueAt(0.99));
+    }
+
+    @Override
+    public long getP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.snapshot().getValueAt(0.999));
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.snapshot().getMax());
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStats [columnFamily=" + columnFamily + ", operation=" + operation + "]";
+    }
+}
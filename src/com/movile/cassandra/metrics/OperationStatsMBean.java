@@ -0,0 +1,28 @@
+package com.movile.cassandra.metrics;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * JMX view of the statistics of one DAO operation on one column family, latencies in microseconds
+ */
+public interface OperationStatsMBean {
+
+    String getColumnFamily();
+
+    String getOperation();
+
+    long getCount();
+
+    long getErrors();
+
+    double getMeanRate();
+
+    long getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+}
@@ -0,0 +1,115 @@
+package com.movile.utils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Properties added, changed or removed between two versions of a property file
+ *
+ * A null old value means the property was added, a null new value that it was removed.
+ */
+public final class PropertiesDiff {
+
+    private final Map<String, String> oldValues;
+    private final Map<String, String> newValues;
+
+    private PropertiesDiff(Map<String, String> oldValues, Map<String, String> newValues) {
+        this.oldValues = Collections.unmodifiableMap(oldValues);
+        this.newValues = Collections.unmodifiableMap(newValues);
+    }
+
+    /**
+     * @param before previous version of the properties
+     * @param after new version of the properties
+     * @return the properties whose value is not the same in both versions
+     */
+    public static PropertiesDiff between(Properties before, Properties after) {
+        Set<String> names = new HashSet<String>(before.stringPropertyNames());
+        names.addAll(after.stringPropertyNames());
+
+        Map<String, String> oldValues = new TreeMap<String, String>();
+        Map<String, String> newValues = new TreeMap<String, String>();
+        for (String name : names) {
+            String oldValue = before.getProperty(name);
+            String newValue = after.getProperty(name);
+            if (oldValue == null ? newValue != null : !oldValue.equals(newValue)) {
+                oldValues.put(name, oldValue);
+                newValues.put(name, newValue);
+            }
+        }
+        return new PropertiesDiff(oldValues, newValues);
+    }
+
+    /**
+     * @return true when both versions hold the same values
+     */
+    public boolean isEmpty() {
+        return newValues.isEmpty();
+    }
+
+    /**
+     * @return the names of the changed properties, sorted
+     */
+    public Set<String> getNames() {
+        return newValues.keySet();
+    }
+
+    /**
+     * @param names property names
+     * @return true when any of the properties changed
+     */
+    public boolean contains(String... names) {
+        for (String name : names) {
+            if (newValues.containsKey(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param name property name
+     * @return the previous value, null when the property was added or did not change
+     */
+    public String getOldValue(String name) {
+        return oldValues.get(name);
+    }
+
+    /**
+     * @param name property name
+     * @return the new value, null when the property was removed or did not change
+     */
+    public String getNewValue(String name) {
+        return newValues.get(name);
+    }
+
+    /**
+     * Applies the changes to a set of properties
+     * @param properties properties to update
+     */
+    public void applyTo(Properties properties) {
+        for (Map.Entry<String, String> entry : newValues.entrySet()) {
+            if (entry.getValue() == null) {
+                properties.remove(entry.getKey());
+            } else {
+                properties.setProperty(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String name : newValues.keySet()) {
+            sb.append(sb.length() > 0 ? ", " : "").append(name).append(": ");
+            sb.append(oldValues.get(name) == null ? "(not set)" : oldValues.get(name)).append(" -> ");
+            sb.append(newValues.get(name) == null ? "(removed)" : newValues.get(name));
+        }
+        return sb.length() > 0 ? sb.toString() : "no changes";
+    }
+}
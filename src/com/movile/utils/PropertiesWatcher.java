@@ -0,0 +1,204 @@
+package com.movile.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author J.P. Eiti Kimura (eiti.kimura@movile.com)
+ * Reloads a property file when it changes on disk
+ *
+ * The directory of the file is watched by a daemon thread (NIO WatchService). On a change the file is read again
+ * and compared to its previous version: the properties added, changed or removed are applied to the
+ * SmartProperties at once and the listeners are told what changed. The events are coalesced over QUIET_PERIOD_MS,
+ * editors and deployment tools often write a file in several steps. An unreadable file is logged and ignored,
+ * the current values stay in place.
+ *
+ * Only the properties that changed in the file are touched, the values set by other means are kept.
+ */
+public class PropertiesWatcher {
+
+    private static Logger log = Logger.getLogger("system");
+
+    private static final long QUIET_PERIOD_MS = 200;
+
+    /**
+     * Told about the changes of the watched file
+     */
+    public interface Listener {
+
+        /**
+         * Called once the changes are visible through the SmartProperties, by the watcher thread
+         * @param diff properties added, changed or removed
+         */
+        void propertiesChanged(PropertiesDiff diff);
+    }
+
+    private final SmartProperties target;
+    private final File file;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Content of the file at the last reload
+     */
+    private Properties current;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param target properties updated on every change, already loaded from the file
+     * @param filename property file
+     * @throws IOException when the file can not be read
+     */
+    public PropertiesWatcher(SmartProperties target, String filename) throws IOException {
+        this.target = target;
+        this.file = new File(filename).getAbsoluteFile();
+        this.current = read();
+    }
+
+    /**
+     * @param listener told about the next changes
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener not told anymore
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts watching the file
+     * @throws IOException when the directory of the file can not be watched
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        final WatchService service = FileSystems.getDefault().newWatchService();
+        file.getParentFile().toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        watchService = service;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(service);
+            }
+        }, "properties-watcher-" + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching " + file + " for changes");
+    }
+
+    /**
+     * Stops watching the file
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Error closing the watcher of " + file, e);
+        }
+        thread = null;
+        watchService = null;
+    }
+
+    /**
+     * Reads the file again and applies its changes, also called by the watcher thread
+     * @return the properties added, changed or removed, empty when the file did not change
+     * @throws IOException when the file can not be read
+     */
+    public synchronized PropertiesDiff reload() throws IOException {
+        Properties loaded = read();
+        PropertiesDiff diff = PropertiesDiff.between(current, loaded);
+        current = loaded;
+        if (diff.isEmpty()) {
+            return diff;
+        }
+
+        target.applyChanges(diff);
+        log.info("Reloaded " + file + ": " + diff);
+        for (Listener listener : listeners) {
+            try {
+                listener.propertiesChanged(diff);
+            } catch (RuntimeException e) {
+                log.error("Error applying the changes of " + file, e);
+            }
+        }
+        return diff;
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = pollEvents(key);
+
+                // wait for the writes to settle before reading the file
+                while ((key = service.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= pollEvents(key);
+                }
+                if (!changed) {
+                    continue;
+                }
+                try {
+                    reload();
+                } catch (IOException e) {
+                    log.warn("Could not reload " + file + ", keeping the current values: " + e.getMessage());
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.info("Stopped watching " + file);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true when an event is about the watched file
+     */
+    private boolean pollEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+            } else if (file.getName().equals(((Path) event.context()).toString())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private Properties read() throws IOException {
+        Properties properties = new Properties();
+        InputStream is = new FileInputStream(file);
+        try {
+            properties.load(is);
+        } finally {
+            is.close();
+        }
+        return properties;
+    }
+}
@@ -4,75 +4,117 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 /**
  * @author Daniel A. Panhan (daniel.panhan@movile.com)
  * @author Igor Hjelmstrom Vinhas Ribeiro (igor.ribeiro@movile.com)
+ *
+ * The loaded properties are compiled into an immutable snapshot of values parsed once (string, int, long, double
+ * and boolean forms), published through a volatile reference: the getters do one map lookup, take no lock and
+ * allocate nothing. Any change made through {@link #getUnderlyingProperties()} (setProperty, put, remove, clear,
+ * load) or the loadProperties methods drops the snapshot, the next read compiles a new one.
+ *
+ * The defaults, invalid and out of range values are logged once per property and snapshot, not on every call.
  */
 public class SmartProperties {
 
-    private Properties properties;
+    private final SnapshotProperties properties;
     private Logger logger;
 
+    /**
+     * @param properties initial properties, copied
+     * @param logger logger of the defaults and invalid values
+     */
     public SmartProperties(Properties properties, Logger logger) {
-        this.properties = properties;
+        this.properties = new SnapshotProperties();
+        this.properties.putAll(properties);
         this.logger = logger;
     }
 
     public String getString(String property, String defaultValue) {
-        String value = properties.getProperty(property);
+        Snapshot snapshot = properties.snapshot();
+        Value value = snapshot.values.get(property);
         if (value == null) {
-            logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            if (logger.isInfoEnabled() && snapshot.firstLog(property)) {
+                logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            }
             return defaultValue;
-        } else {
-            logger.trace("Property " + property + " - returning configured value: " + value);
-            return value;
         }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Property " + property + " - returning configured value: " + value.string);
+        }
+        return value.string;
     }
 
     public Integer getInt(String property, Integer defaultValue) {
-        String value = properties.getProperty(property);
+        Snapshot snapshot = properties.snapshot();
+        Value value = snapshot.values.get(property);
         if (value == null) {
-            logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            if (logger.isInfoEnabled() && snapshot.firstLog(property)) {
+                logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            }
             return defaultValue;
         }
-        try {
-            Integer result = new Integer(value);
-            logger.trace("Property " + property + " - returning configured value: " + result);
-            return result;
-        } catch (Exception e) {
-            logger.warn("Property " + property + " set to invalid value (" + value + "). Ignoring and assuming the default value: " + defaultValue);
+        if (value.intValue == null) {
+            invalid(snapshot, property, value, defaultValue);
             return defaultValue;
         }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Property " + property + " - returning configured value: " + value.intValue);
+        }
+        return value.intValue;
     }
 
-    public Integer getInt(String property, Integer defaultValue, Integer minValue, Integer maxValue) {
-        Integer value = getInt(property, defaultValue);
-        if (value < minValue || value > maxValue) {
-            logger.warn("Property " + property + " set to out of range [" + minValue + "," + maxValue + "] value (" + value
-                    + "). Ignoring and assuming the default value: " + defaultValue);
+    public int getInt(String property, int defaultValue, int minValue, int maxValue) {
+        Snapshot snapshot = properties.snapshot();
+        Value value = snapshot.values.get(property);
+        if (value == null) {
+            if (logger.isInfoEnabled() && snapshot.firstLog(property)) {
+                logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            }
+            return defaultValue;
+        }
+        if (value.intValue == null) {
+            invalid(snapshot, property, value, defaultValue);
+            return defaultValue;
+        }
+        int result = value.intValue;
+        if (result < minValue || result > maxValue) {
+            if (logger.isEnabledFor(Level.WARN) && snapshot.firstLog(property)) {
+                logger.warn("Property " + property + " set to out of range [" + minValue + "," + maxValue + "] value (" + result
+                        + "). Ignoring and assuming the default value: " + defaultValue);
+            }
             return defaultValue;
         }
-        return value;
+        return result;
     }
 
     public Long getLong(String property, Long defaultValue) {
-        String value = properties.getProperty(property);
+        Snapshot snapshot = properties.snapshot();
+        Value value = snapshot.values.get(property);
         if (value == null) {
-            logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            if (logger.isInfoEnabled() && snapshot.firstLog(property)) {
+                logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            }
             return defaultValue;
         }
-        try {
-            Long result = new Long(value);
-            logger.trace("Property " + property + " - returning configured value: " + result);
-            return result;
-        } catch (Exception e) {
-            logger.warn("Property " + property + " set to invalid value (" + value + "). Ignoring and assuming the default value: " + defaultValue);
+        if (value.longValue == null) {
+            invalid(snapshot, property, value, defaultValue);
             return defaultValue;
         }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Property " + property + " - returning configured value: " + value.longValue);
+        }
+        return value.longValue;
     }
 
     public Long getLong(String property) {
@@ -83,46 +125,69 @@ public class SmartProperties {
             return result;
     }
 
-    public Long getLong(String property, Long defaultValue, Long minValue, Long maxValue) {
-        Long value = getLong(property, defaultValue);
-        if (value < minValue || value > maxValue) {
-            logger.warn("Property " + property + " set to out of range [" + minValue + "," + maxValue + "] value. Ignoring and assuming the default value: "
-                    + defaultValue);
+    public long getLong(String property, long defaultValue, long minValue, long maxValue) {
+        Snapshot snapshot = properties.snapshot();
+        Value value = snapshot.values.get(property);
+        if (value == null) {
+            if (logger.isInfoEnabled() && snapshot.firstLog(property)) {
+                logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            }
+            return defaultValue;
+        }
+        if (value.longValue == null) {
+            invalid(snapshot, property, value, defaultValue);
+            return defaultValue;
+        }
+        long result = value.longValue;
+        if (result < minValue || result > maxValue) {
+            if (logger.isEnabledFor(Level.WARN) && snapshot.firstLog(property)) {
+                logger.warn("Property " + property + " set to out of range [" + minValue + "," + maxValue
+                        + "] value. Ignoring and assuming the default value: " + defaultValue);
+            }
             return defaultValue;
         }
-        return value;
+        return result;
     }
 
     public Boolean getBoolean(String property, Boolean defaultValue) {
-        String value = properties.getProperty(property);
+        Snapshot snapshot = properties.snapshot();
+        Value value = snapshot.values.get(property);
         if (value == null) {
-            logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            if (logger.isInfoEnabled() && snapshot.firstLog(property)) {
+                logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            }
             return defaultValue;
         }
-        try {
-            Boolean result = Boolean.valueOf(value);
-            logger.trace("Property " + property + " - returning configured value: " + result);
-            return result;
-        } catch (Exception e) {
-            logger.warn("Property " + property + " set to invalid value (" + value + "). Ignoring and assuming the default value: " + defaultValue);
-            return defaultValue;
+        if (logger.isTraceEnabled()) {
+            logger.trace("Property " + property + " - returning configured value: " + value.booleanValue);
         }
+        return value.booleanValue;
     }
 
     public Double getDouble(String property, Double defaultValue) {
-        String value = properties.getProperty(property);
+        Snapshot snapshot = properties.snapshot();
+        Value value = snapshot.values.get(property);
         if (value == null) {
-            logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            if (logger.isInfoEnabled() && snapshot.firstLog(property)) {
+                logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+            }
             return defaultValue;
         }
-        try {
-            Double result = new Double(value);
-            logger.trace("Property " + property + " - returning configured value: " + result);
-            return result;
-        } catch (Exception e) {
-            logger.warn("Property " + property + " set to invalid value (" + value + "). Ignoring and assuming the default value: " + defaultValue);
+        if (value.doubleValue == null) {
+            invalid(snapshot, property, value, defaultValue);
             return defaultValue;
         }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Property " + property + " - returning configured value: " + value.doubleValue);
+        }
+        return value.doubleValue;
+    }
+
+    private void invalid(Snapshot snapshot, String property, Value value, Object defaultValue) {
+        if (logger.isEnabledFor(Level.WARN) && snapshot.firstLog(property)) {
+            logger.warn("Property " + property + " set to invalid value (" + value.string + "). Ignoring and assuming the default value: "
+                    + defaultValue);
+        }
     }
 
     public void loadProperties(String filename) throws IOException {
@@ -147,10 +212,20 @@ public class SmartProperties {
         properties.putAll(p);
     }
 
+    /**
+     * Applies the changes of a reloaded property file at once: no read sees part of them
+     * @param diff properties added, changed or removed
+     */
+    public void applyChanges(PropertiesDiff diff) {
+        synchronized (properties) {
+            diff.applyTo(properties);
+        }
+    }
+
     public String getString(String s) {
         String result = getString(s, null);
 
-        if (result == null) {
+        if (result == null && logger.isInfoEnabled()) {
             logger.info("Missing value for property " + s);
         }
 
@@ -160,7 +235,7 @@ public class SmartProperties {
     public int getInt(String s) {
         Integer result = getInt(s, null);
 
-        if (result == null) {
+        if (result == null && logger.isInfoEnabled()) {
             logger.info("Missing value for property " + s);
         }
 
@@ -170,7 +245,7 @@ public class SmartProperties {
     public boolean getBoolean(String s) {
         Boolean result = getBoolean(s, null);
 
-        if (result == null) {
+        if (result == null && logger.isInfoEnabled()) {
             logger.info("Missing value for property " + s);
         }
 
@@ -180,14 +255,136 @@ public class SmartProperties {
     public double getDouble(String s) {
         Double result = getDouble(s, null);
 
-        if (result == null) {
+        if (result == null && logger.isInfoEnabled()) {
             logger.info("Missing value for property " + s);
         }
 
         return result;
     }
 
+    /**
+     * @return the properties behind the snapshot, changes made to them are seen by the next read
+     */
     public Properties getUnderlyingProperties() {
         return properties;
     }
+
+    /**
+     * Properties whose changes drop the snapshot. The snapshot is compiled under the lock of the changes, so a
+     * snapshot is never older than a completed change.
+     */
+    private static final class SnapshotProperties extends Properties {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient volatile Snapshot snapshot;
+
+        Snapshot snapshot() {
+            Snapshot current = snapshot;
+            if (current == null) {
+                synchronized (this) {
+                    current = snapshot;
+                    if (current == null) {
+                        current = new Snapshot(this);
+                        snapshot = current;
+                    }
+                }
+            }
+            return current;
+        }
+
+        @Override
+        public synchronized Object put(Object key, Object value) {
+            Object previous = super.put(key, value);
+            snapshot = null;
+            return previous;
+        }
+
+        @Override
+        public synchronized void putAll(Map<?, ?> t) {
+            super.putAll(t);
+            snapshot = null;
+        }
+
+        @Override
+        public synchronized Object remove(Object key) {
+            Object previous = super.remove(key);
+            snapshot = null;
+            return previous;
+        }
+
+        @Override
+        public synchronized void clear() {
+            super.clear();
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Immutable parsed copy of the properties
+     */
+    private static final class Snapshot {
+
+        final Map<String, Value> values;
+
+        /**
+         * Properties already logged with this snapshot
+         */
+        private final ConcurrentMap<String, Boolean> logged = new ConcurrentHashMap<String, Boolean>();
+
+        Snapshot(Properties properties) {
+            Map<String, Value> parsed = new HashMap<String, Value>();
+            for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+                if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+                    parsed.put((String) entry.getKey(), new Value((String) entry.getValue()));
+                }
+            }
+            values = Collections.unmodifiableMap(parsed);
+        }
+
+        /**
+         * @return true on the first call for a property
+         */
+        boolean firstLog(String property) {
+            return logged.get(property) == null && logged.putIfAbsent(property, Boolean.TRUE) == null;
+        }
+    }
+
+    /**
+     * A value in every supported type, null when it does not parse
+     */
+    private static final class Value {
+
+        final String string;
+        final Integer intValue;
+        final Long longValue;
+        final Double doubleValue;
+        final Boolean booleanValue;
+
+        Value(String string) {
+            this.string = string;
+            Integer i = null;
+            try {
+                i = Integer.valueOf(string);
+            } catch (NumberFormatException e) {
+                // not an int
+            }
+            Long l = null;
+            try {
+                l = Long.valueOf(string);
+            } catch (NumberFormatException e) {
+                // not a long
+            }
+            Double d = null;
+            try {
+                d = Double.valueOf(string);
+            } catch (NumberFormatException e) {
+                // not a double
+            }
+            intValue = i;
+            longValue = l;
+            doubleValue = d;
+            booleanValue = Boolean.valueOf(string);
+        }
+    }
 }
@@ -0,0 +1,43 @@
+package com.movile.bench;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Entry point of the benchmarks jar: the JMH command line, with the results written as JSON by default.
+ *
+ * Without -rf/-rff the results go to results/jmh-yyyyMMdd-HHmmss.json, one file per run, to be compared across
+ * commits. Every other option is JMH's, for instance:
+ *
+ * <pre>
+ * java -jar benchmarks.jar DAOBenchmark -t 4 -p rowWidth=10,1000 -p valueSize=16,1024
+ * </pre>
+ *
+ * (-t is the number of threads, -p the benchmark parameters, -l lists the benchmarks, -h the other options).
+ */
+public final class BenchmarkMain {
+
+    private static final String RESULTS_DIR = "results";
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add(0, "-rf");
+            arguments.add(1, "json");
+        }
+        if (!arguments.contains("-rff")) {
+            new File(RESULTS_DIR).mkdirs();
+            String name = "jmh-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+            arguments.add(0, "-rff");
+            arguments.add(1, new File(RESULTS_DIR, name).getPath());
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+}
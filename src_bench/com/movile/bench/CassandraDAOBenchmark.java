@@ -0,0 +1,209 @@
+package com.movile.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.beans.Row;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.ColumnIterator;
+import com.movile.cassandra.ColumnVisitor;
+import com.movile.cassandra.RowCallback;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Every operation of CassandraDAOImpl against the in-memory cluster, by row width and value size.
+ *
+ * The column family holds ROWS rows of rowWidth columns of valueSize characters each, the reads pick a row in
+ * turn per thread. The writes go to a row of their own per thread (rows are not grown by the benchmark), run with
+ * -t to measure them under contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CassandraDAOBenchmark {
+
+    private static final String COLUMN_FAMILY = "MessageBoard";
+    private static final int ROWS = 20;
+
+    @Param({ "10", "1000" })
+    public int rowWidth;
+
+    @Param({ "16", "1024" })
+    public int valueSize;
+
+    private CassandraSession session;
+    private CassandraDAOImpl manager;
+
+    private String value;
+    private String[] some;
+
+    /**
+     * Row and column picked by each thread
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+        private String scratch;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams thread) {
+            scratch = "scratch" + thread.getThreadIndex();
+        }
+
+        String nextKey() {
+            return rowKey(next++ % ROWS);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        manager = new CassandraDAOImpl(session, COLUMN_FAMILY);
+
+        char[] chars = new char[valueSize];
+        Arrays.fill(chars, 'x');
+        value = new String(chars);
+
+        Mutator<String> mutator = HFactory.createMutator(session.getKeyspace(), StringSerializer.get());
+        for (int row = 0; row < ROWS; row++) {
+            for (int i = 0; i < rowWidth; i++) {
+                mutator.addInsertion(rowKey(row), COLUMN_FAMILY, HFactory.createStringColumn(columnName(i), value));
+            }
+            mutator.execute();
+        }
+        some = new String[] { columnName(0), columnName(rowWidth / 2), columnName(rowWidth - 1) };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public Map<String, String> getColumns(Cursor cursor) {
+        return manager.getColumns(cursor.nextKey());
+    }
+
+    @Benchmark
+    public Map<String, String> getNamedColumns(Cursor cursor) {
+        return manager.getColumns(cursor.nextKey(), some);
+    }
+
+    @Benchmark
+    public Map<String, Object> getTypedColumns(Cursor cursor) {
+        return manager.getTypedColumns(cursor.nextKey());
+    }
+
+    @Benchmark
+    public Map<String, Object> getTypedNamedColumns(Cursor cursor) {
+        return manager.getTypedColumns(cursor.nextKey(), some);
+    }
+
+    @Benchmark
+    public Object getColumnValue(Cursor cursor) {
+        return manager.getColumnValue(cursor.nextKey(), some[1], CassandraDAOImpl.Type.STRING);
+    }
+
+    @Benchmark
+    public HColumn<String, ByteBuffer> getColumn(Cursor cursor) {
+        return manager.getColumn(cursor.nextKey(), some[1]);
+    }
+
+    @Benchmark
+    public ByteBuffer getColumnBuffer(Cursor cursor) {
+        return manager.getColumnBuffer(cursor.nextKey(), some[1]);
+    }
+
+    @Benchmark
+    public int visitColumns(Cursor cursor, final Blackhole blackhole) {
+        return manager.visitColumns(cursor.nextKey(), new ColumnVisitor() {
+            @Override
+            public void visit(ByteBuffer name, ByteBuffer value, long clock) {
+                blackhole.consume(value);
+            }
+        });
+    }
+
+    @Benchmark
+    public int iterateColumns(Cursor cursor, Blackhole blackhole) {
+        ColumnIterator<String, ByteBuffer> columns = manager.iterateColumns(cursor.nextKey());
+        int count = 0;
+        while (columns.hasNext()) {
+            blackhole.consume(columns.next());
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long scanParallel(final Blackhole blackhole) {
+        return manager.scanParallel(new RowCallback<Row<String, String, ByteBuffer>>() {
+            @Override
+            public void onRow(Row<String, String, ByteBuffer> row) {
+                blackhole.consume(row);
+            }
+        });
+    }
+
+    @Benchmark
+    public void update(Cursor cursor) {
+        manager.update(cursor.scratch, some[0], value, CassandraDAOImpl.Type.STRING);
+    }
+
+    @Benchmark
+    public Long updateColumn(Cursor cursor) {
+        return manager.updateColumn(cursor.scratch, some[0], value, CassandraDAOImpl.Type.STRING);
+    }
+
+    @Benchmark
+    public void deleteColumn(Cursor cursor) {
+        manager.deleteColumn(cursor.scratch, some[0]);
+    }
+
+    @Benchmark
+    public void delete(Cursor cursor) {
+        manager.delete(cursor.scratch);
+    }
+
+    @Benchmark
+    public void increment(Cursor cursor) {
+        manager.increment(cursor.scratch, "hits", 1);
+    }
+
+    private static String rowKey(int row) {
+        return "row" + row;
+    }
+
+    private static String columnName(int i) {
+        return String.format("c%06d", i);
+    }
+}
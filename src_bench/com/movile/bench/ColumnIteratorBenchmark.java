@@ -0,0 +1,102 @@
+package com.movile.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.hector.api.factory.HFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.movile.cassandra.BatchWriter;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.ColumnIterator;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Walk over a wide row, page by page on demand versus with the next page prefetched in background, when the
+ * processing of each column costs about as much as the round trip of its page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnIteratorBenchmark {
+
+    private static final String COLUMN_FAMILY = "MessageBoard";
+    private static final String KEY = "wide";
+
+    @Param({ "10000" })
+    public int columns;
+
+    @Param({ "500" })
+    public int pageSize;
+
+    @Param({ "10" })
+    public int latencyMillis;
+
+    /**
+     * Work per column, in JMH tokens
+     */
+    @Param({ "3000" })
+    public int tokens;
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+    private CassandraDAOImpl manager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+        manager = new CassandraDAOImpl(session, COLUMN_FAMILY);
+
+        BatchWriter writer = manager.createBatchWriter();
+        for (int i = 0; i < columns; i++) {
+            writer.addInsertion(KEY, COLUMN_FAMILY, HFactory.createStringColumn(String.format("c%06d", i), "message " + i));
+        }
+        writer.close();
+        cassandra.setLatency(latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public int onDemand(Blackhole blackhole) {
+        return walk(manager.iterateColumns(KEY, null, null, false, pageSize, false), blackhole);
+    }
+
+    @Benchmark
+    public int prefetch(Blackhole blackhole) {
+        return walk(manager.iterateColumns(KEY, null, null, false, pageSize, true), blackhole);
+    }
+
+    private int walk(ColumnIterator<String, ByteBuffer> iterator, Blackhole blackhole) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next().getValue());
+            Blackhole.consumeCPU(tokens);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,133 @@
+package com.movile.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.cassandra.service.template.ColumnFamilyTemplate;
+import me.prettyprint.cassandra.service.template.ThriftColumnFamilyTemplate;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.factory.HFactory;
+import me.prettyprint.hector.api.mutation.Mutator;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Latency and transferred bytes of single column reads versus the width of the row.
+ *
+ * fullRowThenPick replays the previous getColumn (query the row through the template, then pick the column),
+ * the other benchmarks only ask for the named columns. The bytesPerCall counter is what the in-memory cluster
+ * returned for the last call (names, values and timestamps), it is the same for every call of a benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnReadBenchmark {
+
+    private static final String COLUMN_FAMILY = "MessageBoard";
+    private static final String KEY = "Today";
+
+    @Param({ "10", "1000", "100000" })
+    public int rowWidth;
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+    private CassandraDAOImpl manager;
+    private ColumnFamilyTemplate<String, String> template;
+
+    private String first;
+    private String[] some;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Transfer {
+
+        public long bytesPerCall;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+        manager = new CassandraDAOImpl(session, COLUMN_FAMILY);
+        template = new ThriftColumnFamilyTemplate<String, String>(session.getKeyspace(), COLUMN_FAMILY, StringSerializer.get(),
+                StringSerializer.get());
+
+        char[] value = new char[64];
+        Arrays.fill(value, 'x');
+        Mutator<String> mutator = HFactory.createMutator(session.getKeyspace(), StringSerializer.get());
+        for (int i = 0; i < rowWidth; i++) {
+            mutator.addInsertion(KEY, COLUMN_FAMILY, HFactory.createStringColumn(columnName(i), new String(value)));
+            if (i % 1000 == 999) {
+                mutator.execute();
+            }
+        }
+        mutator.execute();
+
+        first = columnName(0);
+        some = new String[] { columnName(0), columnName(rowWidth / 2), columnName(rowWidth - 1) };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public HColumn<String, ByteBuffer> fullRowThenPick(Transfer transfer) {
+        long before = cassandra.getBytesRead();
+        HColumn<String, ByteBuffer> column = template.queryColumns(KEY).getColumn(first);
+        transfer.bytesPerCall = cassandra.getBytesRead() - before;
+        return column;
+    }
+
+    @Benchmark
+    public HColumn<String, ByteBuffer> getColumn(Transfer transfer) {
+        long before = cassandra.getBytesRead();
+        HColumn<String, ByteBuffer> column = manager.getColumn(KEY, first);
+        transfer.bytesPerCall = cassandra.getBytesRead() - before;
+        return column;
+    }
+
+    @Benchmark
+    public Object getColumnValue(Transfer transfer) {
+        long before = cassandra.getBytesRead();
+        Object value = manager.getColumnValue(KEY, first, CassandraDAOImpl.Type.STRING);
+        transfer.bytesPerCall = cassandra.getBytesRead() - before;
+        return value;
+    }
+
+    @Benchmark
+    public Object getNamedColumns(Transfer transfer) {
+        long before = cassandra.getBytesRead();
+        Object columns = manager.getColumns(KEY, some);
+        transfer.bytesPerCall = cassandra.getBytesRead() - before;
+        return columns;
+    }
+
+    private static String columnName(int i) {
+        return String.format("c%06d", i);
+    }
+}
@@ -0,0 +1,148 @@
+package com.movile.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.CountersDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Every operation of CountersDAOImpl against the in-memory cluster, by number of counters per row.
+ *
+ * The ROWS rows hold rowWidth counters each, the reads pick a row in turn per thread, multiGet reads 3 counters
+ * of every row. addAndFlush sums BATCH increments in a write-behind DAO (no flush timer) then sends them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CountersDAOBenchmark {
+
+    private static final String COLUMN_FAMILY = "Counters";
+    private static final int ROWS = 100;
+    private static final int BATCH = 100;
+
+    @Param({ "10", "1000" })
+    public int rowWidth;
+
+    private CassandraSession session;
+    private CountersDAOImpl counters;
+    private CountersDAOImpl writeBehind;
+
+    private List<String> keys;
+    private String[] some;
+
+    /**
+     * Row picked and counter written by each thread
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+        private String column;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams thread) {
+            column = "thread" + thread.getThreadIndex();
+        }
+
+        String nextKey() {
+            return rowKey(next++ % ROWS);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        counters = new CountersDAOImpl(session, COLUMN_FAMILY, 0, TimeUnit.MILLISECONDS, 1);
+        writeBehind = new CountersDAOImpl(session, COLUMN_FAMILY, 1, TimeUnit.HOURS, Integer.MAX_VALUE);
+
+        keys = new ArrayList<String>(ROWS);
+        for (int row = 0; row < ROWS; row++) {
+            keys.add(rowKey(row));
+            for (int i = 0; i < rowWidth; i++) {
+                writeBehind.add(rowKey(row), columnName(i), i);
+            }
+            writeBehind.flush();
+        }
+        some = new String[] { columnName(0), columnName(rowWidth / 2), columnName(rowWidth - 1) };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writeBehind.shutdown();
+        counters.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public void increment(Cursor cursor) {
+        counters.increment(cursor.nextKey(), cursor.column);
+    }
+
+    @Benchmark
+    public void decrement(Cursor cursor) {
+        counters.decrement(cursor.nextKey(), cursor.column);
+    }
+
+    @Benchmark
+    public void add(Cursor cursor) {
+        counters.add(cursor.nextKey(), cursor.column, 10);
+    }
+
+    @Benchmark
+    public void addAndFlush(Cursor cursor) {
+        for (int i = 0; i < BATCH; i++) {
+            writeBehind.add(cursor.nextKey(), cursor.column, 1);
+        }
+        writeBehind.flush();
+    }
+
+    @Benchmark
+    public long get(Cursor cursor) {
+        return counters.get(cursor.nextKey(), some[1]);
+    }
+
+    @Benchmark
+    public long[] getSome(Cursor cursor) {
+        return counters.get(cursor.nextKey(), some);
+    }
+
+    @Benchmark
+    public Map<String, Long> getAll(Cursor cursor) {
+        return counters.getAll(cursor.nextKey());
+    }
+
+    @Benchmark
+    public Map<String, long[]> multiGet() {
+        return counters.multiGet(keys, some);
+    }
+
+    private static String rowKey(int row) {
+        return "row" + row;
+    }
+
+    private static String columnName(int i) {
+        return String.format("c%06d", i);
+    }
+}
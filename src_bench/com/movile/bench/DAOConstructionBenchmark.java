@@ -0,0 +1,120 @@
+package com.movile.bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.cassandra.model.ConfigurableConsistencyLevel;
+import me.prettyprint.cassandra.service.CassandraHostConfigurator;
+import me.prettyprint.cassandra.service.ExhaustedPolicy;
+import me.prettyprint.cassandra.service.FailoverPolicy;
+import me.prettyprint.hector.api.Cluster;
+import me.prettyprint.hector.api.HConsistencyLevel;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.factory.HFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.AppProperties;
+import com.movile.utils.SmartProperties;
+
+/**
+ * Cost of getting a DAO ready to use.
+ *
+ * legacyConstruction replays what every DAO constructor did before the shared session (read the cassandra.* properties,
+ * build the host configurator and the consistency policy and create the keyspace), the other benchmarks create a DAO
+ * over the shared session, with the default (properties based) and with an explicit session.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DAOConstructionBenchmark {
+
+    private static final String CLUSTER_NAME = "bench-cluster";
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+    private CassandraSession defaultSession;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("cassandra.clusterName", CLUSTER_NAME);
+        properties.setProperty("cassandra.ips", "127.0.0.1:9160");
+        AppProperties.getDefaultInstance().loadProperties(properties);
+
+        // the properties based paths find this cluster already registered in hector by name
+        cassandra = new InMemoryCassandra();
+        HFactory.getOrCreateCluster(CLUSTER_NAME, cassandra.createHostConfigurator());
+
+        session = cassandra.createSession();
+        defaultSession = CassandraSession.acquire();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        defaultSession.release();
+        session.release();
+    }
+
+    @Benchmark
+    public Keyspace legacyConstruction() {
+        SmartProperties properties = AppProperties.getDefaultInstance();
+        String hosts = properties.getString("cassandra.ips", "127.0.0.1:9106");
+        String clusterName = properties.getString("cassandra.clusterName", "sbs01_cluster");
+        int maxActive = properties.getInt("cassandra.maxActive", 50);
+        int maxIdle = properties.getInt("cassandra.maxIdle", 5);
+        int maxWaitTime = 1000 * properties.getInt("cassandra.maxWaitTime", 30);
+        int reconnectInterval = properties.getInt("cassandra.reconnectInterval", 5);
+        boolean autoDiscoveryHosts = properties.getBoolean("cassandra.autoDiscoveryHosts", false);
+
+        CassandraHostConfigurator hostConfigurator = new CassandraHostConfigurator(hosts);
+        hostConfigurator.setMaxWaitTimeWhenExhausted(maxWaitTime);
+        hostConfigurator.setExhaustedPolicy(ExhaustedPolicy.WHEN_EXHAUSTED_GROW);
+        hostConfigurator.setMaxActive(maxActive);
+        hostConfigurator.setCassandraThriftSocketTimeout(maxWaitTime);
+        hostConfigurator.setMaxIdle(maxIdle);
+        hostConfigurator.setRetryDownedHosts(true);
+        hostConfigurator.setRetryDownedHostsDelayInSeconds(reconnectInterval);
+        hostConfigurator.setAutoDiscoverHosts(autoDiscoveryHosts);
+        hostConfigurator.setAutoDiscoveryDelayInSeconds(60);
+
+        Cluster cluster = HFactory.getOrCreateCluster(clusterName, hostConfigurator);
+
+        ConfigurableConsistencyLevel consistenceLevel = new ConfigurableConsistencyLevel();
+        consistenceLevel.setDefaultReadConsistencyLevel(HConsistencyLevel.ONE);
+        consistenceLevel.setDefaultWriteConsistencyLevel(HConsistencyLevel.ONE);
+
+        return HFactory.createKeyspace(CassandraSession.KEYSPACE, cluster, consistenceLevel, FailoverPolicy.ON_FAIL_TRY_ALL_AVAILABLE);
+    }
+
+    @Benchmark
+    public CassandraDAOImpl defaultSessionConstruction() {
+        CassandraDAOImpl dao = new CassandraDAOImpl("Employees");
+        dao.shutdown();
+        return dao;
+    }
+
+    @Benchmark
+    public CassandraDAOImpl sharedSessionConstruction() {
+        CassandraDAOImpl dao = new CassandraDAOImpl(session, "Employees");
+        dao.shutdown();
+        return dao;
+    }
+}
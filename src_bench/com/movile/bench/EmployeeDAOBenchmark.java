@@ -0,0 +1,168 @@
+package com.movile.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.RowCallback;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Every operation of EmployeeDAOImpl against the in-memory cluster, by number of employees and size of their
+ * string fields.
+ *
+ * The reads pick the employees in turn per thread, getPersons and saveAll work on BATCH employees per call.
+ * The writes overwrite employees of their own per thread, so the column family does not grow while measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmployeeDAOBenchmark {
+
+    private static final int BATCH = 100;
+
+    @Param({ "1000" })
+    public int employees;
+
+    @Param({ "16", "1024" })
+    public int valueSize;
+
+    private CassandraSession session;
+    private EmployeeDAOImpl dao;
+
+    private List<String> ids;
+
+    /**
+     * Employees picked and written by each thread
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+        private Person person;
+        private List<Person> batch;
+
+        @Setup(Level.Trial)
+        public void setUp(EmployeeDAOBenchmark benchmark, ThreadParams thread) {
+            person = benchmark.person("writer" + thread.getThreadIndex());
+            batch = new ArrayList<Person>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                batch.add(benchmark.person("writer" + thread.getThreadIndex() + "-" + i));
+            }
+        }
+
+        String nextId(List<String> ids) {
+            return ids.get(next++ % ids.size());
+        }
+
+        List<String> nextBatch(List<String> ids) {
+            int from = next % (ids.size() - BATCH + 1);
+            next += BATCH;
+            return ids.subList(from, from + BATCH);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        dao = new EmployeeDAOImpl(session);
+
+        ids = new ArrayList<String>(employees);
+        List<Person> persons = new ArrayList<Person>(employees);
+        for (int i = 0; i < employees; i++) {
+            String id = String.format("employee%06d", i);
+            ids.add(id);
+            persons.add(person(id));
+        }
+        dao.saveAll(persons);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dao.shutdown();
+        session.release();
+    }
+
+    Person person(String id) {
+        char[] chars = new char[valueSize];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        return new Person(id, value, id, value, value);
+    }
+
+    @Benchmark
+    public void save(Cursor cursor) {
+        dao.save(cursor.person);
+    }
+
+    @Benchmark
+    public void saveV2(Cursor cursor) {
+        dao.saveV2(cursor.person);
+    }
+
+    @Benchmark
+    public void saveAll(Cursor cursor) {
+        dao.saveAll(cursor.batch);
+    }
+
+    @Benchmark
+    public Person getPerson(Cursor cursor) {
+        return dao.getPerson(cursor.nextId(ids));
+    }
+
+    @Benchmark
+    public Map<String, Person> getPersons(Cursor cursor) {
+        return dao.getPersons(cursor.nextBatch(ids));
+    }
+
+    @Benchmark
+    public List<Person> getAll() {
+        return dao.getAll();
+    }
+
+    @Benchmark
+    public int scan(Blackhole blackhole) {
+        Iterator<Person> persons = dao.scan(BATCH);
+        int count = 0;
+        while (persons.hasNext()) {
+            blackhole.consume(persons.next());
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long scanParallel(final Blackhole blackhole) {
+        return dao.scanParallel(new RowCallback<Person>() {
+            @Override
+            public void onRow(Person person) {
+                blackhole.consume(person);
+            }
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.movile.bench;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.mapping.EntityDAO;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * The annotation mapped EntityDAO against the hand-written EmployeeDAOImpl, on the same Employees rows.
+ *
+ * Latency per call, run with the gc profiler (-prof gc) for the allocation per call. The row cache is off (the
+ * cassandra.cache properties are not loaded), every read goes to the in-memory cluster.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityMapperBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final int MULTIGET_IDS = 100;
+
+    private CassandraSession session;
+    private EmployeeDAOImpl empDAO;
+    private EntityDAO<Person> entityDAO;
+    private Person person;
+    private List<String> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        empDAO = new EmployeeDAOImpl(session);
+        entityDAO = new EntityDAO<Person>(session, Person.class);
+
+        List<Person> persons = new ArrayList<Person>();
+        for (int i = 0; i < ROWS; i++) {
+            persons.add(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+        }
+        empDAO.saveAll(persons);
+        person = persons.get(0);
+        ids = new ArrayList<String>();
+        for (int i = 0; i < MULTIGET_IDS; i++) {
+            ids.add("emp" + i * (ROWS / MULTIGET_IDS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityDAO.shutdown();
+        empDAO.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public void saveHandWritten() {
+        empDAO.save(person);
+    }
+
+    @Benchmark
+    public void saveMapped() {
+        entityDAO.save(person);
+    }
+
+    @Benchmark
+    public Person getHandWritten() {
+        return empDAO.getPerson("emp500");
+    }
+
+    @Benchmark
+    public Person getMapped() {
+        return entityDAO.get("emp500");
+    }
+
+    @Benchmark
+    public Map<String, Person> multiGetHandWritten() {
+        return empDAO.getPersons(ids);
+    }
+
+    @Benchmark
+    public Map<String, Person> multiGetMapped() {
+        return entityDAO.multiGet(ids);
+    }
+
+    @Benchmark
+    public void scanHandWritten(Blackhole blackhole) {
+        Iterator<Person> scan = empDAO.scan(100);
+        while (scan.hasNext()) {
+            blackhole.consume(scan.next());
+        }
+    }
+
+    @Benchmark
+    public void scanMapped(Blackhole blackhole) {
+        Iterator<Person> scan = entityDAO.scan(100);
+        while (scan.hasNext()) {
+            blackhole.consume(scan.next());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.movile.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * EmployeeDAOImpl throughput when every operation logs one INFO line to the cassandra logger, by logging setup:
+ * <ul>
+ * <li>off: the logger is at WARN, the line is not built</li>
+ * <li>sync: the previous conf/log/log4j.xml, a file appender flushed on every line with location info (%C(%M))</li>
+ * <li>async: the current conf/log/log4j.xml, an async appender dropping when full, location info off, over a
+ * buffered file appender</li>
+ * </ul>
+ * The appenders are built here with the settings of the configuration files and write to a temporary file. Run
+ * with -t 4 for the contention on the appenders.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final int EMPLOYEES = 1000;
+
+    private static final String SYNC_PATTERN = "[%-5p] [%d{ISO8601}] [%C(%M)] %m%n";
+    private static final String ASYNC_PATTERN = "[%-5p] [%d{ISO8601}] [%t] [%c] %m%n";
+
+    private static Logger log = Logger.getLogger("cassandra");
+
+    @Param({ "off", "sync", "async" })
+    public String logging;
+
+    private CassandraSession session;
+    private EmployeeDAOImpl dao;
+    private List<String> ids;
+
+    private File file;
+    private Appender appender;
+    private org.apache.log4j.Level level;
+
+    /**
+     * Employees picked and written by each thread
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+        private Person person;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams thread) {
+            String id = "writer" + thread.getThreadIndex();
+            person = new Person(id, "Cloe Anderson", id, "secret", "cloe@mail.com");
+        }
+
+        String nextId(List<String> ids) {
+            return ids.get(next++ % ids.size());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        session = new InMemoryCassandra().createSession();
+        dao = new EmployeeDAOImpl(session);
+
+        ids = new ArrayList<String>(EMPLOYEES);
+        List<Person> persons = new ArrayList<Person>(EMPLOYEES);
+        for (int i = 0; i < EMPLOYEES; i++) {
+            String id = String.format("employee%06d", i);
+            ids.add(id);
+            persons.add(new Person(id, "Eiti Kimura", id, "mypassword", "eiti@mail.com"));
+        }
+        dao.saveAll(persons);
+
+        level = log.getLevel();
+        file = File.createTempFile("cassandra", ".log");
+        if ("sync".equals(logging)) {
+            FileAppender fileAppender = new FileAppender(new PatternLayout(SYNC_PATTERN), file.getPath(), false);
+            fileAppender.setImmediateFlush(true);
+            appender = fileAppender;
+        } else if ("async".equals(logging)) {
+            FileAppender fileAppender = new FileAppender(new PatternLayout(ASYNC_PATTERN), file.getPath(), false, true, 8192);
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setBufferSize(8192);
+            asyncAppender.setBlocking(false);
+            asyncAppender.setLocationInfo(false);
+            asyncAppender.addAppender(fileAppender);
+            appender = asyncAppender;
+        }
+        if (appender != null) {
+            log.addAppender(appender);
+            log.setLevel(org.apache.log4j.Level.INFO);
+        } else {
+            log.setLevel(org.apache.log4j.Level.WARN);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (appender != null) {
+            log.removeAppender(appender);
+            appender.close();
+        }
+        log.setLevel(level);
+        file.delete();
+
+        dao.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public Person getPerson(Cursor cursor) {
+        String id = cursor.nextId(ids);
+        Person person = dao.getPerson(id);
+        if (log.isInfoEnabled()) {
+            log.info("Employee " + id + " read");
+        }
+        return person;
+    }
+
+    @Benchmark
+    public void save(Cursor cursor) {
+        dao.save(cursor.person);
+        if (log.isInfoEnabled()) {
+            log.info("Employee " + cursor.person.getId() + " saved");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.movile.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.movile.cassandra.metrics.DAOMetrics;
+import com.movile.cassandra.metrics.OperationStats;
+
+/**
+ * Cost of timing a DAO call: the two clock reads alone (baseline) against the clock reads plus the histogram
+ * record of {@link OperationStats}, as paid by every instrumented operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+
+    private OperationStats stats;
+
+    @Setup
+    public void setUp() {
+        stats = new DAOMetrics("bench", false).operation("Employees", "getPerson");
+    }
+
+    @Benchmark
+    public long clockOnly() {
+        long start = System.nanoTime();
+        return System.nanoTime() - start;
+    }
+
+    @Benchmark
+    public void record() {
+        long start = System.nanoTime();
+        stats.record(start, true);
+    }
+
+    @Benchmark
+    public void recordError() {
+        long start = System.nanoTime();
+        stats.record(start, false);
+    }
+}
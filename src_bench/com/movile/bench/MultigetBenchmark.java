@@ -0,0 +1,84 @@
+package com.movile.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Latency of resolving N employee ids: N sequential getPerson calls versus one getPersons call.
+ *
+ * The in-memory nodes wait a simulated round trip (latencyMicros) on every call, which is what the
+ * multiget saves, the chunks of getPersons use the default size (cassandra.multiget.chunkSize).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultigetBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int ids;
+
+    @Param({ "200" })
+    public long latencyMicros;
+
+    private CassandraSession session;
+    private EmployeeDAOImpl empDAO;
+    private List<String> keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryCassandra cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+        empDAO = new EmployeeDAOImpl(session);
+
+        keys = new ArrayList<String>();
+        for (int i = 0; i < ids; i++) {
+            empDAO.save(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+            keys.add("emp" + i);
+        }
+        cassandra.setLatency(latencyMicros, TimeUnit.MICROSECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        empDAO.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public List<Person> sequentialGetPerson() {
+        List<Person> persons = new ArrayList<Person>(keys.size());
+        for (String key : keys) {
+            persons.add(empDAO.getPerson(key));
+        }
+        return persons;
+    }
+
+    @Benchmark
+    public Map<String, Person> getPersons() {
+        return empDAO.getPersons(keys);
+    }
+}
@@ -0,0 +1,105 @@
+package com.movile.bench;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.movile.bean.Person;
+
+/**
+ * Field based Person.equals/hashCode/toString against the previous commons-lang reflection builders.
+ *
+ * hashSet inserts 1000 persons into a new HashSet (hashCode and, on collisions, equals), toString formats one
+ * person as a log line would. The reflective variants run on a subclass that keeps the previous implementations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonObjectMethodsBenchmark {
+
+    private static final int PERSONS = 1000;
+
+    /**
+     * Person with the previous reflection based methods
+     */
+    public static class ReflectivePerson extends Person {
+
+        public ReflectivePerson(String id, String name, String login, String passwd, String email) {
+            super(id, name, login, passwd, email);
+        }
+
+        @Override
+        public int hashCode() {
+            return HashCodeBuilder.reflectionHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return ToStringBuilder.reflectionToString(this);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return EqualsBuilder.reflectionEquals(this, obj);
+        }
+    }
+
+    private Person[] persons;
+    private Person[] reflectivePersons;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        persons = new Person[PERSONS];
+        reflectivePersons = new Person[PERSONS];
+        for (int i = 0; i < PERSONS; i++) {
+            persons[i] = new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com");
+            reflectivePersons[i] = new ReflectivePerson("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com");
+        }
+    }
+
+    @Benchmark
+    public Set<Person> hashSetFieldBased() {
+        return fill(persons);
+    }
+
+    @Benchmark
+    public Set<Person> hashSetReflection() {
+        return fill(reflectivePersons);
+    }
+
+    @Benchmark
+    public String toStringFieldBased() {
+        return persons[0].toString();
+    }
+
+    @Benchmark
+    public String toStringReflection() {
+        return reflectivePersons[0].toString();
+    }
+
+    private static Set<Person> fill(Person[] all) {
+        Set<Person> set = new HashSet<Person>();
+        for (Person person : all) {
+            set.add(person);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,107 @@
+package com.movile.bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.movile.utils.SmartProperties;
+
+/**
+ * Property reads through the parsed snapshot against the previous lookups (synchronized Properties lookup, parse
+ * and log message on every call), for a set property and for a missing one. Run with -prof gc for the allocations.
+ *
+ * The logger is at INFO, as in production: the previous reads of a missing property log on every call, they are
+ * sent to no appender here so only the message building is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SmartPropertiesBenchmark {
+
+    /**
+     * The previous reads
+     */
+    static final class LegacyProperties {
+
+        private final Properties properties;
+        private final Logger logger;
+
+        LegacyProperties(Properties properties, Logger logger) {
+            this.properties = properties;
+            this.logger = logger;
+        }
+
+        // new Integer(String) is deprecated for removal since Java 9, kept as the previous code had it
+        @SuppressWarnings({ "deprecation", "removal" })
+        Integer getInt(String property, Integer defaultValue, Integer minValue, Integer maxValue) {
+            String value = properties.getProperty(property);
+            Integer result;
+            if (value == null) {
+                logger.info("Property " + property + " not set. Assuming the default value: " + defaultValue);
+                result = defaultValue;
+            } else {
+                try {
+                    result = new Integer(value);
+                    logger.trace("Property " + property + " - returning configured value: " + result);
+                } catch (Exception e) {
+                    result = defaultValue;
+                }
+            }
+            if (result < minValue || result > maxValue) {
+                return defaultValue;
+            }
+            return result;
+        }
+    }
+
+    private SmartProperties snapshot;
+    private LegacyProperties legacy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Logger logger = Logger.getLogger("bench.smartProperties");
+        logger.setLevel(org.apache.log4j.Level.INFO);
+        logger.setAdditivity(false);
+
+        Properties properties = new Properties();
+        properties.setProperty("cassandra.columns.pageSize", "1000");
+        properties.setProperty("cassandra.multiget.chunkSize", "100");
+        snapshot = new SmartProperties(properties, logger);
+        legacy = new LegacyProperties(properties, logger);
+    }
+
+    @Benchmark
+    public int snapshotSet() {
+        return snapshot.getInt("cassandra.columns.pageSize", 1000, 1, 100000);
+    }
+
+    @Benchmark
+    public int snapshotMissing() {
+        return snapshot.getInt("cassandra.scan.pageSize", 1000, 1, 100000);
+    }
+
+    @Benchmark
+    public int legacySet() {
+        return legacy.getInt("cassandra.columns.pageSize", 1000, 1, 100000);
+    }
+
+    @Benchmark
+    public int legacyMissing() {
+        return legacy.getInt("cassandra.scan.pageSize", 1000, 1, 100000);
+    }
+}
@@ -0,0 +1,125 @@
+package com.movile.bench;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.cassandra.service.template.ColumnFamilyResult;
+import me.prettyprint.cassandra.service.template.ColumnFamilyTemplate;
+import me.prettyprint.cassandra.service.template.ColumnFamilyUpdater;
+import me.prettyprint.cassandra.service.template.ThriftColumnFamilyTemplate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Allocation per operation of the template based DAO methods, run it with the gc profiler: -prof gc
+ *
+ * The perCallTemplate benchmarks replay the previous implementation, which built a new ThriftColumnFamilyTemplate
+ * on every call, the others use the template cached by the DAO.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateAllocationBenchmark {
+
+    private static final String COLUMN_FAMILY = "Employees";
+
+    private CassandraSession session;
+    private EmployeeDAOImpl empDAO;
+    private CassandraDAOImpl manager;
+    private Person person;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        empDAO = new EmployeeDAOImpl(session);
+        manager = new CassandraDAOImpl(session, COLUMN_FAMILY);
+
+        person = new Person("jared86", "Jared Polin AKA the FRO", "jared", "552fro", "jared@mail.com");
+        empDAO.save(person);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        empDAO.shutdown();
+        manager.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public Person getPerson() {
+        return empDAO.getPerson("jared86");
+    }
+
+    @Benchmark
+    public Person getPersonPerCallTemplate() {
+        ColumnFamilyResult<String, String> res = newTemplate().queryColumns("jared86");
+        Person result = new Person();
+        result.setId("jared86");
+        result.setName(res.getString("name"));
+        result.setEmail(res.getString("email"));
+        result.setLogin(res.getString("login"));
+        result.setPasswd(res.getString("passwd"));
+        result.setCreationDate(new Date(res.getLong("creation")));
+        return result;
+    }
+
+    @Benchmark
+    public Object getColumns() {
+        return manager.getColumns("jared86");
+    }
+
+    @Benchmark
+    public Object getColumnsPerCallTemplate() {
+        ColumnFamilyResult<String, String> res = newTemplate().queryColumns("jared86");
+        Map<String, String> columns = new TreeMap<String, String>();
+        for (String columnName : res.getColumnNames()) {
+            columns.put(columnName, StringSerializer.get().fromByteBuffer(res.getColumn(columnName).getValue()));
+        }
+        return columns;
+    }
+
+    @Benchmark
+    public void save() {
+        empDAO.save(person);
+    }
+
+    @Benchmark
+    public void savePerCallTemplate() {
+        ColumnFamilyTemplate<String, String> template = newTemplate();
+        ColumnFamilyUpdater<String, String> updater = template.createUpdater(person.getId());
+        updater.setString("name", person.getName());
+        updater.setString("email", person.getEmail());
+        updater.setString("login", person.getLogin());
+        updater.setString("passwd", person.getPasswd());
+        updater.setLong("creation", person.getCreationDate().getTime());
+        template.update(updater);
+    }
+
+    private ColumnFamilyTemplate<String, String> newTemplate() {
+        return new ThriftColumnFamilyTemplate<String, String>(session.getKeyspace(), COLUMN_FAMILY, StringSerializer.get(),
+                StringSerializer.get());
+    }
+}
@@ -0,0 +1,97 @@
+package com.movile.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.ColumnVisitor;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Allocation per row read of the copying reads (getColumns, getColumnValue as byte[]) versus the ByteBuffer views
+ * (visitColumns, getColumnBuffer), over rows of binary payload columns.
+ *
+ * Run with the gc profiler (-prof gc): gc.alloc.rate.norm is the number of bytes allocated per row. The in-memory
+ * cluster hands out views of its stored values, so what is left is what the read path itself allocates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZeroCopyReadBenchmark {
+
+    private static final String COLUMN_FAMILY = "MessageBoard";
+    private static final String KEY = "blobs";
+
+    @Param({ "10" })
+    public int columns;
+
+    @Param({ "4096" })
+    public int valueSize;
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+    private CassandraDAOImpl manager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+        manager = new CassandraDAOImpl(session, COLUMN_FAMILY);
+
+        byte[] payload = new byte[valueSize];
+        for (int i = 0; i < columns; i++) {
+            manager.update(KEY, "blob" + i, payload, CassandraDAOImpl.Type.BYTE_ARRAY);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+        session.release();
+    }
+
+    @Benchmark
+    public Map<String, String> getColumns() {
+        return manager.getColumns(KEY);
+    }
+
+    @Benchmark
+    public Object getColumnValue() {
+        return manager.getColumnValue(KEY, "blob0", CassandraDAOImpl.Type.BYTE_ARRAY);
+    }
+
+    @Benchmark
+    public int visitColumns(final Blackhole blackhole) {
+        return manager.visitColumns(KEY, new ColumnVisitor() {
+            @Override
+            public void visit(ByteBuffer name, ByteBuffer value, long clock) {
+                blackhole.consume(value.get(0));
+            }
+        });
+    }
+
+    @Benchmark
+    public ByteBuffer getColumnBuffer() {
+        return manager.getColumnBuffer(KEY, "blob0");
+    }
+}
@@ -0,0 +1,134 @@
+package com.movile.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import me.prettyprint.hector.api.exceptions.HPoolExhaustedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.AsyncCassandraDAO;
+import com.movile.cassandra.AsyncEmployeeDAO;
+import com.movile.cassandra.AsyncExecutor;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.CountersDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Asynchronous DAOs and their bounded executor, against the in-memory cluster
+ */
+public class AsyncDAOTest {
+
+    private CassandraSession session;
+    private AsyncEmployeeDAO empDAO;
+
+    @Before
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        empDAO = new AsyncEmployeeDAO(session);
+    }
+
+    @After
+    public void tearDown() {
+        empDAO.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void fanOutReads() throws Exception {
+        List<Future<Void>> saves = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 300; i++) {
+            saves.add(empDAO.saveAsync(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com")));
+        }
+        for (Future<Void> save : saves) {
+            save.get();
+        }
+
+        List<Future<Person>> reads = new ArrayList<Future<Person>>();
+        for (int i = 0; i < 300; i++) {
+            reads.add(empDAO.getPersonAsync("emp" + i));
+        }
+        for (int i = 0; i < 300; i++) {
+            Assert.assertEquals("Employee " + i, reads.get(i).get().getName());
+        }
+    }
+
+    @Test
+    public void bulkOperations() throws Exception {
+        List<Person> persons = new ArrayList<Person>();
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 250; i++) {
+            persons.add(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+            ids.add("emp" + i);
+        }
+        empDAO.saveAllAsync(persons).get();
+
+        Map<String, Person> found = empDAO.getPersonsAsync(ids).get();
+        Assert.assertEquals(ids, new ArrayList<String>(found.keySet()));
+        Assert.assertEquals("Employee 249", found.get("emp249").getName());
+        Assert.assertEquals(250, empDAO.getAllAsync().get().size());
+    }
+
+    @Test
+    public void updateAndIncrement() throws Exception {
+        AsyncCassandraDAO manager = new AsyncCassandraDAO(session, "Employees");
+        manager.updateAsync("joe", "email", "joe@mail.com", CassandraDAOImpl.Type.STRING).get();
+        Assert.assertEquals("joe@mail.com", manager.getColumnValueAsync("joe", "email", CassandraDAOImpl.Type.STRING).get());
+
+        AsyncCassandraDAO counters = new AsyncCassandraDAO(session, "Counters");
+        for (int i = 0; i < 10; i++) {
+            counters.incrementAsync("page", "views").get();
+        }
+        CountersDAOImpl countersDAO = new CountersDAOImpl(session, "Counters");
+        Assert.assertEquals(10L, countersDAO.get("page", "views"));
+        countersDAO.shutdown();
+        manager.shutdown();
+        counters.shutdown();
+    }
+
+    /**
+     * Requests beyond the maximum in flight wait for a slot, and fail when none is freed in time
+     */
+    @Test
+    public void boundedInFlightRequests() throws Exception {
+        AsyncExecutor executor = new AsyncExecutor("test", 2, 50, TimeUnit.MILLISECONDS);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<String> blocked = new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                release.await();
+                return "done";
+            }
+        };
+
+        Future<String> first = executor.submit(blocked);
+        Future<String> second = executor.submit(blocked);
+        Assert.assertEquals(2, executor.getInFlight());
+
+        Future<String> rejected = executor.submit(blocked);
+        try {
+            rejected.get();
+            Assert.fail("a third request was accepted");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof HPoolExhaustedException);
+        }
+
+        release.countDown();
+        Assert.assertEquals("done", first.get());
+        Assert.assertEquals("done", second.get());
+        Assert.assertEquals("done", executor.submit(blocked).get());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,177 @@
+package com.movile.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.factory.HFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.BatchWriter;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Batched writes, against the in-memory cluster
+ */
+public class BatchWriterTest {
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+
+    @Before
+    public void setUp() {
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+    }
+
+    @After
+    public void tearDown() {
+        session.release();
+    }
+
+    @Test
+    public void flushByMutationCount() {
+        BatchWriter writer = new BatchWriter(session.getKeyspace(), 10, Long.MAX_VALUE, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 25; i++) {
+            writer.addInsertion("row" + i, "MessageBoard", HFactory.createStringColumn("text", "message " + i));
+        }
+        Assert.assertEquals(2, writer.getBatchCount());
+        Assert.assertEquals(5, writer.getPendingMutations());
+        Assert.assertEquals(20, cassandra.getRowCount("MessageBoard"));
+
+        writer.close();
+        Assert.assertEquals(3, writer.getBatchCount());
+        Assert.assertEquals(25, writer.getMutationCount());
+        Assert.assertEquals(25, cassandra.getRowCount("MessageBoard"));
+    }
+
+    @Test
+    public void flushBySize() {
+        BatchWriter writer = new BatchWriter(session.getKeyspace(), Integer.MAX_VALUE, 1000, 0, TimeUnit.MILLISECONDS);
+        char[] value = new char[96];
+        Arrays.fill(value, 'x');
+        for (int i = 0; i < 10; i++) {
+            // 112 bytes each (key, name, value and timestamp), the ninth one goes over 1000
+            writer.addInsertion("row" + i, "MessageBoard", HFactory.createStringColumn("text", new String(value)));
+        }
+        Assert.assertEquals(1, writer.getBatchCount());
+        Assert.assertEquals(9, writer.getMutationCount());
+        Assert.assertEquals(1, writer.getPendingMutations());
+        writer.close();
+    }
+
+    @Test
+    public void flushByDelay() throws InterruptedException {
+        BatchWriter writer = new BatchWriter(session.getKeyspace(), Integer.MAX_VALUE, Long.MAX_VALUE, 50, TimeUnit.MILLISECONDS);
+        writer.addInsertion("row", "MessageBoard", HFactory.createStringColumn("text", "message"));
+        Assert.assertEquals(0, cassandra.getRowCount("MessageBoard"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getBatchCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, writer.getBatchCount());
+        Assert.assertEquals(1, cassandra.getRowCount("MessageBoard"));
+        writer.close();
+    }
+
+    @Test
+    public void delayIsAnUpperBound() throws InterruptedException {
+        BatchWriter writer = new BatchWriter(session.getKeyspace(), 2, Long.MAX_VALUE, 300, TimeUnit.MILLISECONDS);
+        // the first batch is sent by count, the delay of the second one starts with its own first mutation
+        writer.addInsertion("a", "MessageBoard", HFactory.createStringColumn("text", "message"));
+        writer.addInsertion("b", "MessageBoard", HFactory.createStringColumn("text", "message"));
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        writer.addInsertion("c", "MessageBoard", HFactory.createStringColumn("text", "message"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getBatchCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertEquals(2, writer.getBatchCount());
+        Assert.assertTrue(String.valueOf(elapsed), elapsed >= 290 && elapsed < 550);
+        writer.close();
+    }
+
+    @Test
+    public void deletionsAcrossColumnFamilies() {
+        BatchWriter writer = new BatchWriter(session.getKeyspace(), 100, Long.MAX_VALUE, 0, TimeUnit.MILLISECONDS);
+        writer.addInsertion("a", "MessageBoard", HFactory.createStringColumn("text", "message"));
+        writer.addInsertion("a", "Employees", HFactory.createStringColumn("name", "someone"));
+        writer.addInsertion("a", "Employees", HFactory.createStringColumn("email", "someone@mail.com"));
+        writer.flush();
+
+        writer.addDeletion("a", "MessageBoard");
+        writer.addDeletion("a", "Employees", "email", StringSerializer.get());
+        writer.close();
+
+        Assert.assertEquals(2, writer.getBatchCount());
+        Assert.assertEquals(0, cassandra.getRowCount("MessageBoard"));
+        EmployeeDAOImpl empDAO = new EmployeeDAOImpl(session);
+        Person person = empDAO.getPerson("a");
+        empDAO.shutdown();
+        Assert.assertEquals("someone", person.getName());
+        Assert.assertNull(person.getEmail());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedWriterRejectsMutations() {
+        BatchWriter writer = new BatchWriter(session.getKeyspace(), 100, Long.MAX_VALUE, 0, TimeUnit.MILLISECONDS);
+        writer.close();
+        writer.addDeletion("a", "MessageBoard");
+    }
+
+    @Test
+    public void saveAll() {
+        List<Person> persons = new ArrayList<Person>();
+        for (int i = 0; i < 1000; i++) {
+            persons.add(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+        }
+        EmployeeDAOImpl empDAO = new EmployeeDAOImpl(session);
+        empDAO.saveAll(persons);
+
+        Assert.assertEquals(1000, cassandra.getRowCount("Employees"));
+        Assert.assertEquals("emp999@mail.com", empDAO.getPerson("emp999").getEmail());
+        empDAO.shutdown();
+    }
+
+    @Test
+    public void discardDropsThePendingMutations() {
+        BatchWriter writer = new BatchWriter(session.getKeyspace(), 100, Long.MAX_VALUE, 0, TimeUnit.MILLISECONDS);
+        writer.addInsertion("row", "MessageBoard", HFactory.createStringColumn("text", "message"));
+        writer.discard();
+        Assert.assertEquals(0, writer.getPendingMutations());
+        Assert.assertEquals(0, cassandra.getRowCount("MessageBoard"));
+    }
+
+    @Test
+    public void failedSaveAllSendsNothingMore() {
+        List<Person> persons = new ArrayList<Person>();
+        for (int i = 0; i < 3; i++) {
+            persons.add(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+        }
+        persons.get(2).setCreationDate(null);
+        EmployeeDAOImpl empDAO = new EmployeeDAOImpl(session);
+        try {
+            empDAO.saveAll(persons);
+            Assert.fail();
+        } catch (NullPointerException e) {
+            // the original failure, the partial batch is not sent
+            Assert.assertEquals(0, cassandra.getRowCount("Employees"));
+        } finally {
+            empDAO.shutdown();
+        }
+    }
+}
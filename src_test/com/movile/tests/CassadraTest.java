@@ -5,7 +5,6 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -18,10 +17,12 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.movile.bean.Message;
 import com.movile.bean.Person;
 import com.movile.cassandra.CassandraDAOImpl;
 import com.movile.cassandra.CountersDAOImpl;
 import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.MessageBoardDAO;
 import com.movile.utils.AppProperties;
 
 /**
@@ -55,8 +56,9 @@ public class CassadraTest {
 
         clearDataSet();
 
-        // finishes resource
+        // finishes resource, the pool is closed with the last DAO
         manager.shutdown();
+        empDAO.shutdown();
     }
 
     /**
@@ -297,42 +299,47 @@ public class CassadraTest {
     public void simulateMessageBoard() throws InterruptedException {
 
         SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-        CassandraDAOImpl managerMessageBoard = new CassandraDAOImpl("MessageBoard");
+        MessageBoardDAO messageBoard = new MessageBoardDAO();
         
         // clear the today's message board
-        managerMessageBoard.delete("Today");
+        messageBoard.delete("Today");
         
         // insert some data
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime()), "ekm82: Hello Everyone, today is a sunny day, nice job for everyone", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() + 50000), "cloe79: How are you guys?", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() + 10000), "suzy84: I wish a great day for all of you!", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() + 150000), "jared86: What's up doc?", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() + 4000), "jared86: Where are Juliet?", CassandraDAOImpl.Type.STRING);
+        long now = new Date().getTime();
+        messageBoard.post("Today", now, "ekm82: Hello Everyone, today is a sunny day, nice job for everyone");
+        messageBoard.post("Today", now + 50000, "cloe79: How are you guys?");
+        messageBoard.post("Today", now + 10000, "suzy84: I wish a great day for all of you!");
+        messageBoard.post("Today", now + 150000, "jared86: What's up doc?");
+        messageBoard.post("Today", now + 4000, "jared86: Where are Juliet?");
 
-        Map<String, String> posts = managerMessageBoard.getColumns("Today");
+        List<Message> posts = messageBoard.getLatest("Today", 20);
 
         //wait a little
         Thread.sleep(3000);
         
-        //simulate more chat conversation
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime()), "suzy84: Great message board I liked it", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() - 50000), "unknown: what is happening here?", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() + 10000), "ekm82: Do you think that these messages are being stored?", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() + 50000), "cloe79: Today is friday!", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() + 150000), "jared86: Let's practice a little!", CassandraDAOImpl.Type.STRING);
-        managerMessageBoard.update("Today", String.valueOf(new Date().getTime() + 900000), "joe92: Let's go to the weekend!", CassandraDAOImpl.Type.STRING);
-
-        // read all of the columns of key: Today
-        posts = managerMessageBoard.getColumns("Today");
-        
-        for (Entry<String,String> entry : posts.entrySet()) {
-            String message = sdf.format(new Date(Long.parseLong(entry.getKey())));
-            message += " - " + entry.getValue();
-            System.out.println(message);
+        //simulate more chat conversation, posts of the same millisecond are kept apart
+        now = new Date().getTime();
+        messageBoard.post("Today", now, "suzy84: Great message board I liked it");
+        messageBoard.post("Today", now - 50000, "unknown: what is happening here?");
+        messageBoard.post("Today", now + 10000, "ekm82: Do you think that these messages are being stored?");
+        messageBoard.post("Today", now + 50000, "cloe79: Today is friday!");
+        messageBoard.post("Today", now + 150000, "jared86: Let's practice a little!");
+        messageBoard.post("Today", now + 900000, "joe92: Let's go to the weekend!");
+
+        // read the board, newest first, 4 posts per page
+        posts = messageBoard.getLatest("Today", 4);
+        int count = 0;
+        while (!posts.isEmpty()) {
+            for (Message post : posts) {
+                System.out.println(sdf.format(new Date(post.getTime())) + " - " + post.getText());
+                count++;
+            }
+            posts = messageBoard.getBefore("Today", posts.get(posts.size() - 1).getId(), 4);
         }
         
         // check the message board size
-        Assert.assertEquals(11,posts.entrySet().size());
+        Assert.assertEquals(11, count);
+        messageBoard.shutdown();
     }
     
     @Test
@@ -375,12 +382,14 @@ public class CassadraTest {
         counters.increment("jared86", "posts");
         counters.decrement("jared86", "posts");
         counters.add("jared86", "posts", 5L);
+        counters.shutdown();
     }
     
     @Test
     public void getCounterValue() {
         CountersDAOImpl counters = new CountersDAOImpl("Counters");
         Assert.assertNotNull(counters.get("jared86", "posts"));
+        counters.shutdown();
     }    
     
     /**
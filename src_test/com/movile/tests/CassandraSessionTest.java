@@ -0,0 +1,88 @@
+package com.movile.tests;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.CountersDAOImpl;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Reference counting of the shared cassandra session
+ */
+public class CassandraSessionTest {
+
+    @Test
+    public void daosShareTheSessionKeyspace() {
+        CassandraSession session = new InMemoryCassandra().createSession();
+
+        EmployeeDAOImpl empDAO = new EmployeeDAOImpl(session);
+        CassandraDAOImpl manager = new CassandraDAOImpl(session, "Employees");
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters");
+        Assert.assertEquals(4, session.getReferences());
+
+        empDAO.shutdown();
+        manager.shutdown();
+        counters.shutdown();
+        session.release();
+        Assert.assertTrue(session.isClosed());
+    }
+
+    /**
+     * Shutting down one DAO must not close the pool used by the others
+     */
+    @Test
+    public void poolClosedOnlyByTheLastRelease() {
+        CassandraSession session = new InMemoryCassandra().createSession();
+
+        CassandraDAOImpl first = new CassandraDAOImpl(session, "Employees");
+        CassandraDAOImpl second = new CassandraDAOImpl(session, "Employees");
+        session.release();
+
+        first.shutdown();
+        first.shutdown(); // a second shutdown must not release someone else's reference
+        Assert.assertFalse(session.isClosed());
+        Assert.assertEquals(1, session.getReferences());
+
+        second.update("cloe79", "name", "Cloe Anderson", CassandraDAOImpl.Type.STRING);
+        Assert.assertEquals("Cloe Anderson", second.getColumnValue("cloe79", "name", CassandraDAOImpl.Type.STRING));
+
+        second.shutdown();
+        Assert.assertTrue(session.isClosed());
+    }
+
+    /**
+     * Sessions of clusters with the same name keep their own hosts and pools
+     */
+    @Test
+    public void sessionsOfTheSameClusterNameAreIndependent() {
+        InMemoryCassandra firstCassandra = new InMemoryCassandra();
+        InMemoryCassandra secondCassandra = new InMemoryCassandra();
+        CassandraSession first = CassandraSession.create("shared", firstCassandra.createHostConfigurator());
+        CassandraSession second = CassandraSession.create("shared", secondCassandra.createHostConfigurator());
+        Assert.assertNotSame(first.getCluster(), second.getCluster());
+
+        CassandraDAOImpl manager = new CassandraDAOImpl(second, "Employees");
+        manager.update("cloe79", "name", "Cloe Anderson", CassandraDAOImpl.Type.STRING);
+        Assert.assertEquals(0, firstCassandra.getRowCount("Employees"));
+        Assert.assertEquals(1, secondCassandra.getRowCount("Employees"));
+
+        first.release();
+        Assert.assertEquals("Cloe Anderson", manager.getColumnValue("cloe79", "name", CassandraDAOImpl.Type.STRING));
+
+        manager.shutdown();
+        second.release();
+        Assert.assertTrue(second.isClosed());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedSessionCanNotBeRetained() {
+        CassandraSession session = new InMemoryCassandra().createSession();
+        session.release();
+
+        new EmployeeDAOImpl(session);
+    }
+}
@@ -0,0 +1,118 @@
+package com.movile.tests;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidParameterException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.serializers.DateSerializer;
+import me.prettyprint.cassandra.serializers.FloatSerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraDAOImpl.Type;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.ColumnCodecs;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Typed column values and the codec registry, against the in-memory cluster
+ */
+public class ColumnCodecsTest {
+
+    private CassandraSession session;
+    private CassandraDAOImpl manager;
+
+    @Before
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        manager = new CassandraDAOImpl(session, "MessageBoard");
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void everyTypeRoundTrips() {
+        UUID uuid = UUID.randomUUID();
+        Date date = new Date(1350000000000L);
+        Object[] values = { "text", 42, 42L, 4.2d, true, uuid, date, new byte[] { 1, 2, 3 }, ByteBuffer.wrap(new byte[] { 4, 5 }) };
+        Type[] types = Type.values();
+        Assert.assertEquals(values.length, types.length);
+
+        for (int i = 0; i < types.length; i++) {
+            manager.update("row", types[i].name(), values[i], types[i]);
+        }
+        for (int i = 0; i < types.length; i++) {
+            Object value = manager.getColumnValue("row", types[i].name(), types[i]);
+            if (values[i] instanceof byte[]) {
+                Assert.assertTrue(Arrays.equals((byte[]) values[i], (byte[]) value));
+            } else {
+                Assert.assertEquals(values[i], value);
+            }
+        }
+        Assert.assertNull(manager.getColumnValue("row", "missing", Type.LONG));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void valueOfAnotherType() {
+        manager.updateColumn("row", "count", "42", Type.LONG);
+    }
+
+    /**
+     * creation is a LongType column, it used to be decoded as UTF-8
+     */
+    @Test
+    public void columnsDecodedByDeclaredType() {
+        Person person = new Person("joe92", "Joe", "joe", "secret", "joe@mail.com");
+        person.setCreationDate(new Date(1350000000000L));
+        EmployeeDAOImpl empDAO = new EmployeeDAOImpl(session);
+        empDAO.save(person);
+        empDAO.shutdown();
+
+        CassandraDAOImpl employees = new CassandraDAOImpl(session, "Employees");
+        Assert.assertEquals("1350000000000", employees.getColumns("joe92").get("creation"));
+        Assert.assertEquals("1350000000000", employees.getColumns("joe92", "creation").get("creation"));
+
+        Map<String, Object> columns = employees.getTypedColumns("joe92");
+        Assert.assertEquals(Long.valueOf(1350000000000L), columns.get("creation"));
+        Assert.assertEquals("Joe", columns.get("name"));
+        Assert.assertEquals(Long.valueOf(1350000000000L), employees.getTypedColumns("joe92", "creation", "email").get("creation"));
+        employees.shutdown();
+
+        // no declared type, bytes as before
+        manager.update("row", "text", "hello", Type.STRING);
+        Assert.assertEquals("hello", manager.getColumns("row").get("text"));
+        Assert.assertEquals(ByteBuffer.wrap("hello".getBytes()), manager.getTypedColumns("row").get("text"));
+    }
+
+    @Test
+    public void registry() {
+        Assert.assertSame(DateSerializer.get(), ColumnCodecs.forValue(new Timestamp(0)));
+        Assert.assertSame(ByteBufferSerializer.get(), ColumnCodecs.forValidationClass("CompositeType(UTF8Type)"));
+        Assert.assertSame(ByteBufferSerializer.get(), ColumnCodecs.forValidationClass(null));
+
+        ColumnCodecs.register(Float.class, FloatSerializer.get(), "FloatType");
+        Assert.assertSame(FloatSerializer.get(), ColumnCodecs.forClass(Float.class));
+        Assert.assertSame(FloatSerializer.get(), ColumnCodecs.forValidationClass("org.apache.cassandra.db.marshal.FloatType"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noCodec() {
+        ColumnCodecs.forValue(new Object());
+    }
+}
@@ -0,0 +1,135 @@
+package com.movile.tests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.factory.HFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.cassandra.BatchWriter;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.ColumnIterator;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.AppProperties;
+
+/**
+ * Paged walks over wide rows, against the in-memory cluster
+ */
+public class ColumnIteratorTest {
+
+    private static final int COLUMNS = 2500;
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+    private CassandraDAOImpl manager;
+
+    @Before
+    public void setUp() {
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+        manager = new CassandraDAOImpl(session, "MessageBoard");
+        BatchWriter writer = manager.createBatchWriter();
+        for (int i = 0; i < COLUMNS; i++) {
+            writer.addInsertion("wide", "MessageBoard", HFactory.createStringColumn(name(i), "value " + i));
+        }
+        writer.close();
+    }
+
+    @After
+    public void tearDown() {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().remove("cassandra.columns.pageSize");
+        manager.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void walksTheWholeRow() {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.columns.pageSize", "100");
+        List<String> names = names(manager.iterateColumns("wide"));
+        Assert.assertEquals(COLUMNS, names.size());
+        for (int i = 0; i < COLUMNS; i++) {
+            Assert.assertEquals(name(i), names.get(i));
+        }
+        Assert.assertTrue(names(manager.iterateColumns("nothing")).isEmpty());
+    }
+
+    @Test
+    public void exactPages() {
+        // the last page is full, the next (empty) one ends the walk
+        Assert.assertEquals(COLUMNS, names(manager.iterateColumns("wide", null, null, false, 500, false)).size());
+        Assert.assertEquals(COLUMNS, names(manager.iterateColumns("wide", null, null, false, 1, false)).size());
+    }
+
+    @Test
+    public void reversedRange() {
+        List<String> names = names(manager.iterateColumns("wide", name(1999), name(1000), true, 64, false));
+        Assert.assertEquals(1000, names.size());
+        Assert.assertEquals(name(1999), names.get(0));
+        Assert.assertEquals(name(1000), names.get(999));
+        for (int i = 1; i < names.size(); i++) {
+            Assert.assertTrue(names.get(i).compareTo(names.get(i - 1)) < 0);
+        }
+    }
+
+    @Test
+    public void prefetchReadsTheSameColumns() {
+        ColumnIterator<String, ByteBuffer> columns = manager.iterateColumns("wide", name(10), null, false, 100, true);
+        int i = 10;
+        while (columns.hasNext()) {
+            HColumn<String, ByteBuffer> column = columns.next();
+            Assert.assertEquals(name(i), column.getName());
+            Assert.assertEquals("value " + i, StringSerializer.get().fromByteBuffer(column.getValue()));
+            i++;
+        }
+        Assert.assertEquals(COLUMNS, i);
+    }
+
+    @Test
+    public void readsOnlyWhatIsConsumed() {
+        long before = cassandra.getBytesRead();
+        ColumnIterator<String, ByteBuffer> columns = manager.iterateColumns("wide", null, null, false, 100, false);
+        for (int i = 0; i < 150; i++) {
+            columns.next();
+        }
+        columns.close();
+        Assert.assertFalse(columns.hasNext());
+        // two pages of about 30 bytes per column
+        Assert.assertTrue(String.valueOf(cassandra.getBytesRead() - before), cassandra.getBytesRead() - before < 201 * 40);
+    }
+
+    @Test
+    public void firstPageReadByHasNext() {
+        long requests = cassandra.getRequestCount(0);
+        ColumnIterator<String, ByteBuffer> columns = manager.iterateColumns("wide", null, null, false, 100, false);
+        Assert.assertEquals(requests, cassandra.getRequestCount(0));
+        Assert.assertTrue(columns.hasNext());
+        Assert.assertEquals(requests + 1, cassandra.getRequestCount(0));
+
+        // an iteration closed before it starts reads nothing
+        columns = manager.iterateColumns("wide", null, null, false, 100, false);
+        columns.close();
+        Assert.assertFalse(columns.hasNext());
+        Assert.assertEquals(requests + 1, cassandra.getRequestCount(0));
+    }
+
+    private static List<String> names(ColumnIterator<String, ByteBuffer> columns) {
+        List<String> names = new ArrayList<String>();
+        while (columns.hasNext()) {
+            names.add(columns.next().getName());
+        }
+        return names;
+    }
+
+    private static String name(int i) {
+        return String.format("c%05d", i);
+    }
+}
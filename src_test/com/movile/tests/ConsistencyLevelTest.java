@@ -0,0 +1,148 @@
+package com.movile.tests;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import me.prettyprint.hector.api.HConsistencyLevel;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.CountersDAOImpl;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.MessageBoardDAO;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.AppProperties;
+
+/**
+ * Consistency levels by column family and operation type, and per call, as received by the in-memory nodes
+ */
+public class ConsistencyLevelTest {
+
+    private static final String[] PROPERTIES = { "cassandra.consistencyLevelPolicy", "cassandra.consistency.read",
+            "cassandra.consistency.write", "cassandra.consistency.Employees.write", "cassandra.consistency.Counters.read",
+            "cassandra.consistency.Counters.write" };
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+
+    @Before
+    public void setUp() {
+        Properties properties = AppProperties.getDefaultInstance().getUnderlyingProperties();
+        properties.setProperty("cassandra.consistency.Employees.write", "QUORUM");
+        properties.setProperty("cassandra.consistency.Counters.read", "quorum");
+
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+    }
+
+    @After
+    public void tearDown() {
+        session.release();
+        for (String property : PROPERTIES) {
+            AppProperties.getDefaultInstance().getUnderlyingProperties().remove(property);
+        }
+    }
+
+    @Test
+    public void levelsByColumnFamilyAndOperation() {
+        EmployeeDAOImpl employees = new EmployeeDAOImpl(session);
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters");
+        MessageBoardDAO board = new MessageBoardDAO(session, MessageBoardDAO.Bucket.HOUR);
+        try {
+            employees.save(new Person("cloe79", "Cloe Anderson", "cloe", "secret", "cloe@mail.com"));
+            Assert.assertEquals(ConsistencyLevel.QUORUM, cassandra.getLastConsistencyLevel());
+            employees.getPerson("cloe79");
+            Assert.assertEquals(ConsistencyLevel.ONE, cassandra.getLastConsistencyLevel());
+
+            counters.increment("row", "hits");
+            Assert.assertEquals(ConsistencyLevel.ONE, cassandra.getLastConsistencyLevel());
+            Assert.assertEquals(1L, counters.get("row", "hits"));
+            Assert.assertEquals(ConsistencyLevel.QUORUM, cassandra.getLastConsistencyLevel());
+
+            board.post("news", "hello");
+            Assert.assertEquals(ConsistencyLevel.ONE, cassandra.getLastConsistencyLevel());
+            board.getLatest("news", 10);
+            Assert.assertEquals(ConsistencyLevel.ONE, cassandra.getLastConsistencyLevel());
+        } finally {
+            employees.shutdown();
+            counters.shutdown();
+            board.shutdown();
+        }
+    }
+
+    @Test
+    public void defaultLevels() {
+        Properties properties = AppProperties.getDefaultInstance().getUnderlyingProperties();
+        properties.setProperty("cassandra.consistencyLevelPolicy", "TWO");
+        properties.setProperty("cassandra.consistency.write", "ALL");
+        properties.setProperty("cassandra.consistency.Counters.read", "FEW");
+        properties.setProperty("cassandra.consistency.Counters.write", "LOCAL_QUORUM");
+
+        CassandraDAOImpl messages = new CassandraDAOImpl(session, "MessageBoard");
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters");
+        try {
+            messages.update("cloe79", "text", "hi", CassandraDAOImpl.Type.STRING);
+            Assert.assertEquals(ConsistencyLevel.ALL, cassandra.getLastConsistencyLevel());
+            messages.getColumns("cloe79");
+            Assert.assertEquals(ConsistencyLevel.TWO, cassandra.getLastConsistencyLevel());
+
+            // the counters of any DAO are written at the level of the counters column family
+            messages.increment("cloe79", "posts");
+            Assert.assertEquals(ConsistencyLevel.LOCAL_QUORUM, cassandra.getLastConsistencyLevel());
+
+            // invalid level, the default is used
+            counters.get("row", "hits");
+            Assert.assertEquals(ConsistencyLevel.TWO, cassandra.getLastConsistencyLevel());
+        } finally {
+            messages.shutdown();
+            counters.shutdown();
+        }
+    }
+
+    @Test
+    public void perCallOverride() {
+        EmployeeDAOImpl employees = new EmployeeDAOImpl(session);
+        CassandraDAOImpl messages = new CassandraDAOImpl(session, "MessageBoard");
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters");
+        try {
+            Person person = new Person("cloe79", "Cloe Anderson", "cloe", "secret", "cloe@mail.com");
+            employees.save(person, HConsistencyLevel.ALL);
+            Assert.assertEquals(ConsistencyLevel.ALL, cassandra.getLastConsistencyLevel());
+            Assert.assertEquals("Cloe Anderson", employees.getPerson("cloe79", HConsistencyLevel.LOCAL_QUORUM).getName());
+            Assert.assertEquals(ConsistencyLevel.LOCAL_QUORUM, cassandra.getLastConsistencyLevel());
+
+            // back to the levels of the column family
+            employees.getPerson("cloe79");
+            Assert.assertEquals(ConsistencyLevel.ONE, cassandra.getLastConsistencyLevel());
+            employees.save(person, null);
+            Assert.assertEquals(ConsistencyLevel.QUORUM, cassandra.getLastConsistencyLevel());
+
+            messages.update("cloe79", "text", "hi", CassandraDAOImpl.Type.STRING, HConsistencyLevel.QUORUM);
+            Assert.assertEquals(ConsistencyLevel.QUORUM, cassandra.getLastConsistencyLevel());
+            Assert.assertEquals("hi", messages.getColumns("cloe79", HConsistencyLevel.ALL).get("text"));
+            Assert.assertEquals(ConsistencyLevel.ALL, cassandra.getLastConsistencyLevel());
+            messages.getColumns("cloe79");
+            Assert.assertEquals(ConsistencyLevel.ONE, cassandra.getLastConsistencyLevel());
+
+            // the counters read at QUORUM unless told otherwise
+            counters.get("row", HConsistencyLevel.ONE, "hits", "misses");
+            Assert.assertEquals(ConsistencyLevel.ONE, cassandra.getLastConsistencyLevel());
+            counters.multiGet(Arrays.asList("row", "other"), HConsistencyLevel.ALL, "hits");
+            Assert.assertEquals(ConsistencyLevel.ALL, cassandra.getLastConsistencyLevel());
+            counters.multiGet(Arrays.asList("row", "other"), "hits");
+            Assert.assertEquals(ConsistencyLevel.QUORUM, cassandra.getLastConsistencyLevel());
+        } finally {
+            employees.shutdown();
+            messages.shutdown();
+            counters.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.movile.tests;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.CountersDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.AppProperties;
+
+/**
+ * Batched counter reads, against the in-memory cluster
+ */
+public class CountersMultigetTest {
+
+    private CassandraSession session;
+    private CountersDAOImpl counters;
+
+    @Before
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        counters = new CountersDAOImpl(session, "Counters");
+        counters.add("jared86", "posts", 10);
+        counters.add("jared86", "likes", 3);
+        counters.add("mary", "posts", 7);
+    }
+
+    @After
+    public void tearDown() {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().remove("cassandra.multiget.chunkSize");
+        counters.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void missingCountersAreZero() {
+        Assert.assertEquals(0, counters.get("nobody", "posts"));
+        Assert.assertTrue(Arrays.equals(new long[] { 10, 0, 3 }, counters.get("jared86", "posts", "views", "likes")));
+        Assert.assertTrue(Arrays.equals(new long[] { 0, 0 }, counters.get("nobody", "posts", "likes")));
+    }
+
+    @Test
+    public void getAll() {
+        Map<String, Long> values = counters.getAll("jared86");
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals(Long.valueOf(3), values.get("likes"));
+        Assert.assertEquals(Long.valueOf(10), values.get("posts"));
+        Assert.assertTrue(counters.getAll("nobody").isEmpty());
+    }
+
+    @Test
+    public void getAllPagesThroughWideRows() {
+        for (int i = 0; i < 2500; i++) {
+            counters.increment("wide", String.format("c%05d", i));
+        }
+        Map<String, Long> values = counters.getAll("wide");
+        Assert.assertEquals(2500, values.size());
+        Assert.assertEquals(Long.valueOf(1), values.get("c02499"));
+    }
+
+    @Test
+    public void multiGetInKeyOrder() {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.multiget.chunkSize", "2");
+        Map<String, long[]> values = counters.multiGet(Arrays.asList("mary", "nobody", "jared86", "mary"), "posts", "likes");
+
+        Assert.assertEquals(Arrays.asList("mary", "nobody", "jared86"), Arrays.asList(values.keySet().toArray()));
+        Assert.assertTrue(Arrays.equals(new long[] { 7, 0 }, values.get("mary")));
+        Assert.assertTrue(Arrays.equals(new long[] { 0, 0 }, values.get("nobody")));
+        Assert.assertTrue(Arrays.equals(new long[] { 10, 3 }, values.get("jared86")));
+    }
+
+    @Test
+    public void pendingIncrementsAreIncluded() {
+        CountersDAOImpl writeBehind = new CountersDAOImpl(session, "Counters", 1, TimeUnit.HOURS, Integer.MAX_VALUE);
+        writeBehind.add("jared86", "posts", 5);
+        writeBehind.add("jared86", "views", 2);
+
+        Assert.assertTrue(Arrays.equals(new long[] { 15, 2 }, writeBehind.get("jared86", "posts", "views")));
+        Assert.assertTrue(Arrays.equals(new long[] { 15, 3 }, writeBehind.multiGet(Arrays.asList("jared86"), "posts", "likes").get("jared86")));
+        Map<String, Long> values = writeBehind.getAll("jared86");
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals(Long.valueOf(2), values.get("views"));
+        writeBehind.shutdown();
+    }
+}
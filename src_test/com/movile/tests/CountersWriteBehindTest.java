@@ -0,0 +1,163 @@
+package com.movile.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.CountersDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Write-behind counters, against the in-memory cluster
+ */
+public class CountersWriteBehindTest {
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+    private CountersDAOImpl stored;
+
+    @Before
+    public void setUp() {
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+        stored = new CountersDAOImpl(session, "Counters");
+    }
+
+    @After
+    public void tearDown() {
+        stored.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void incrementsAreSummedUntilTheFlush() {
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters", 1, TimeUnit.HOURS, Integer.MAX_VALUE);
+        Assert.assertTrue(counters.isWriteBehind());
+        for (int i = 0; i < 1000; i++) {
+            counters.increment("jared86", "posts");
+        }
+        counters.decrement("jared86", "posts");
+
+        Assert.assertEquals(0, stored.get("jared86", "posts"));
+        Assert.assertEquals(999, counters.get("jared86", "posts"));
+
+        counters.flush();
+        Assert.assertEquals(999, stored.get("jared86", "posts"));
+        Assert.assertEquals(999, counters.get("jared86", "posts"));
+        counters.shutdown();
+    }
+
+    @Test
+    public void thresholdTriggersAFlush() throws InterruptedException {
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters", 1, TimeUnit.HOURS, 10);
+        for (int i = 0; i < 10; i++) {
+            counters.increment("user" + i, "posts");
+        }
+        waitFor("user9", "posts", 1);
+        counters.shutdown();
+    }
+
+    @Test
+    public void intervalTriggersAFlush() throws InterruptedException {
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters", 20, TimeUnit.MILLISECONDS, Integer.MAX_VALUE);
+        counters.add("jared86", "posts", 5);
+        waitFor("jared86", "posts", 5);
+        counters.shutdown();
+    }
+
+    @Test
+    public void shutdownDrainsThePendingIncrements() {
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters", 1, TimeUnit.HOURS, Integer.MAX_VALUE);
+        counters.add("jared86", "posts", 7);
+        counters.shutdown();
+        Assert.assertEquals(7, stored.get("jared86", "posts"));
+    }
+
+    @Test
+    public void addsAfterShutdownAreRejected() {
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters", 1, TimeUnit.HOURS, 1);
+        counters.shutdown();
+        try {
+            counters.increment("jared86", "posts");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(0, stored.get("jared86", "posts"));
+    }
+
+    @Test
+    public void batchNotAppliedIsRetried() {
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters", 1, TimeUnit.HOURS, Integer.MAX_VALUE);
+        counters.add("jared86", "posts", 3);
+        cassandra.failWrites(1, new UnavailableException());
+        counters.flush();
+        Assert.assertEquals(0, stored.get("jared86", "posts"));
+        Assert.assertEquals(3, counters.get("jared86", "posts"));
+
+        counters.flush();
+        Assert.assertEquals(3, stored.get("jared86", "posts"));
+        counters.shutdown();
+    }
+
+    @Test
+    public void timedOutBatchIsDropped() {
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters", 1, TimeUnit.HOURS, Integer.MAX_VALUE);
+        counters.add("jared86", "posts", 3);
+        // hector tries again once on the single host
+        cassandra.failWrites(2, new TimedOutException());
+        counters.flush();
+        Assert.assertEquals(0, counters.get("jared86", "posts"));
+
+        counters.shutdown();
+        Assert.assertEquals(0, stored.get("jared86", "posts"));
+    }
+
+    /**
+     * Concurrent increments racing with frequent flushes are all counted once
+     */
+    @Test
+    public void noIncrementIsLost() throws InterruptedException {
+        final CountersDAOImpl counters = new CountersDAOImpl(session, "Counters", 1, TimeUnit.MILLISECONDS, 3);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        counters.increment("user" + (i % 5), "posts");
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        counters.shutdown();
+
+        long total = 0;
+        for (int i = 0; i < 5; i++) {
+            total += stored.get("user" + i, "posts");
+        }
+        Assert.assertEquals(80000, total);
+    }
+
+    private void waitFor(String key, String column, long value) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stored.get(key, column) != value && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(value, stored.get(key, column));
+    }
+}
@@ -0,0 +1,86 @@
+package com.movile.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.AppProperties;
+
+/**
+ * Multiget of employees, against the in-memory cluster
+ */
+public class EmployeeMultigetTest {
+
+    private CassandraSession session;
+    private EmployeeDAOImpl empDAO;
+
+    @Before
+    public void setUp() {
+        // small chunks, so that a few hundred keys are read by several concurrent queries
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.multiget.chunkSize", "7");
+
+        session = new InMemoryCassandra().createSession();
+        empDAO = new EmployeeDAOImpl(session);
+        for (int i = 0; i < 250; i++) {
+            empDAO.save(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().remove("cassandra.multiget.chunkSize");
+        empDAO.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void keepsTheOrderOfTheIds() {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 250; i++) {
+            ids.add("emp" + i);
+        }
+        Collections.shuffle(ids, new Random(42));
+
+        Map<String, Person> persons = empDAO.getPersons(ids);
+        Assert.assertEquals(ids, new ArrayList<String>(persons.keySet()));
+        for (Map.Entry<String, Person> entry : persons.entrySet()) {
+            Assert.assertEquals(entry.getKey(), entry.getValue().getId());
+            Assert.assertEquals("Employee " + entry.getKey().substring(3), entry.getValue().getName());
+            Assert.assertNotNull(entry.getValue().getCreationDate());
+        }
+    }
+
+    @Test
+    public void leavesOutMissingAndDuplicatedIds() {
+        Map<String, Person> persons = empDAO.getPersons(Arrays.asList("emp3", "nobody", "emp1", "emp3"));
+        Assert.assertEquals(Arrays.asList("emp3", "emp1"), new ArrayList<String>(persons.keySet()));
+
+        Assert.assertTrue(empDAO.getPersons(Collections.<String> emptyList()).isEmpty());
+    }
+
+    @Test
+    public void sameBeansAsTheSingleLookup() {
+        CassandraDAOImpl columns = new CassandraDAOImpl(session, "Employees");
+        columns.update("partial", "name", "Only a name", CassandraDAOImpl.Type.STRING);
+        columns.shutdown();
+
+        Person single = empDAO.getPerson("partial");
+        Assert.assertNull(single.getEmail());
+        Assert.assertEquals(single, empDAO.getPersons(Arrays.asList("partial")).get("partial"));
+        Assert.assertEquals(empDAO.getPerson("emp9"), empDAO.getPersons(Arrays.asList("emp9")).get("emp9"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.movile.tests;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Paged walk over the Employees column family, against the in-memory cluster
+ */
+public class EmployeeScanTest {
+
+    private CassandraSession session;
+    private EmployeeDAOImpl empDAO;
+
+    @Before
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        empDAO = new EmployeeDAOImpl(session);
+        for (int i = 0; i < 1000; i++) {
+            empDAO.save(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        empDAO.shutdown();
+        session.release();
+    }
+
+    /**
+     * Every row comes back exactly once, whatever the page size
+     */
+    @Test
+    public void scanVisitsEveryRowOnce() {
+        int[] pageSizes = { 1, 7, 100, 999, 1000, 5000 };
+        for (int pageSize : pageSizes) {
+            Set<String> ids = new HashSet<String>();
+            Iterator<Person> iterator = empDAO.scan(pageSize);
+            while (iterator.hasNext()) {
+                Person person = iterator.next();
+                Assert.assertTrue("duplicated " + person.getId(), ids.add(person.getId()));
+                Assert.assertEquals("Employee " + person.getId().substring(3), person.getName());
+            }
+            Assert.assertEquals(1000, ids.size());
+        }
+    }
+
+    @Test
+    public void getAllIsNotLimitedToTheFirstPage() {
+        Assert.assertEquals(1000, empDAO.getAll().size());
+    }
+
+    /**
+     * Deleted rows (range ghosts) are not returned as empty employees
+     */
+    @Test
+    public void scanSkipsDeletedRows() {
+        CassandraDAOImpl manager = new CassandraDAOImpl(session, "Employees");
+        for (int i = 0; i < 1000; i += 2) {
+            manager.delete("emp" + i);
+        }
+        manager.shutdown();
+
+        int count = 0;
+        Iterator<Person> iterator = empDAO.scan(10);
+        while (iterator.hasNext()) {
+            Assert.assertNotNull(iterator.next().getName());
+            count++;
+        }
+        Assert.assertEquals(500, count);
+    }
+}
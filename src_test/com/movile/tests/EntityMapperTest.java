@@ -0,0 +1,198 @@
+package com.movile.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import me.prettyprint.cassandra.serializers.AsciiSerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.mapping.Column;
+import com.movile.cassandra.mapping.ColumnFamily;
+import com.movile.cassandra.mapping.EntityDAO;
+import com.movile.cassandra.mapping.EntityMapper;
+import com.movile.cassandra.mapping.RowKey;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.AppProperties;
+
+/**
+ * Annotation mapped entities, against the in-memory cluster
+ */
+public class EntityMapperTest {
+
+    @ColumnFamily("MessageBoard")
+    static class Message {
+
+        @RowKey
+        String id;
+        @Column
+        String text;
+        @Column(serializer = AsciiSerializer.class)
+        String author;
+        @Column
+        int likes;
+        @Column
+        boolean pinned;
+        @Column
+        double score;
+        @Column(name = "thread")
+        UUID threadId;
+        String notMapped;
+    }
+
+    static class NotAnEntity {
+
+        @RowKey
+        String id;
+    }
+
+    private CassandraSession session;
+    private EntityDAO<Person> persons;
+
+    @Before
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        persons = new EntityDAO<Person>(session, Person.class);
+    }
+
+    @After
+    public void tearDown() {
+        persons.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void sameRowsAsTheHandWrittenDAO() {
+        EmployeeDAOImpl empDAO = new EmployeeDAOImpl(session);
+        Person joe = new Person("joe92", "Joe", "joe", "secret", "joe@mail.com");
+        empDAO.save(joe);
+        Assert.assertEquals(joe, persons.get("joe92"));
+
+        Person mary = new Person("mary", "Mary", "mary", "secret", "mary@mail.com");
+        persons.save(mary);
+        Assert.assertEquals(mary, empDAO.getPerson("mary"));
+        empDAO.shutdown();
+
+        Assert.assertNull(persons.get("nobody"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("name", "login", "passwd", "creation", "email")),
+                new HashSet<String>(persons.getMapper().getColumnNames()));
+    }
+
+    @Test
+    public void saveAllMultiGetAndScan() {
+        List<Person> all = new ArrayList<Person>();
+        for (int i = 0; i < 250; i++) {
+            all.add(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+        }
+        persons.saveAll(all);
+
+        Map<String, Person> found = persons.multiGet(Arrays.asList("emp7", "nobody", "emp200", "emp7"));
+        Assert.assertEquals(Arrays.asList("emp7", "emp200"), new ArrayList<String>(found.keySet()));
+        Assert.assertEquals(all.get(200), found.get("emp200"));
+
+        // three chunks, read concurrently
+        List<String> ids = new ArrayList<String>();
+        for (Person person : all) {
+            ids.add(person.getId());
+        }
+        Assert.assertEquals(all, new ArrayList<Person>(persons.multiGet(ids).values()));
+
+        // a row without mapped columns is not a bean, in a scan either
+        CassandraDAOImpl columns = new CassandraDAOImpl(session, "Employees");
+        columns.update("ann01", "nickname", "ann", CassandraDAOImpl.Type.STRING);
+        columns.shutdown();
+
+        int count = 0;
+        Iterator<Person> scan = persons.scan(100);
+        while (scan.hasNext()) {
+            Person person = scan.next();
+            Assert.assertEquals(all.get(Integer.parseInt(person.getId().substring(3))), person);
+            count++;
+        }
+        Assert.assertEquals(250, count);
+    }
+
+    @Test
+    public void primitivesAndCustomCodecs() {
+        EntityDAO<Message> messages = new EntityDAO<Message>(session, Message.class);
+        Message message = new Message();
+        message.id = "m1";
+        message.text = "hello";
+        message.author = "joe";
+        message.likes = 3;
+        message.pinned = true;
+        message.score = 0.5;
+        message.threadId = UUID.randomUUID();
+        message.notMapped = "lost";
+        messages.save(message);
+
+        Message read = messages.get("m1");
+        Assert.assertEquals("hello", read.text);
+        Assert.assertEquals("joe", read.author);
+        Assert.assertEquals(3, read.likes);
+        Assert.assertTrue(read.pinned);
+        Assert.assertEquals(0.5, read.score);
+        Assert.assertEquals(message.threadId, read.threadId);
+        Assert.assertNull(read.notMapped);
+        Assert.assertEquals(3, messages.multiGet(Arrays.asList("m1")).get("m1").likes);
+
+        // null fields are not written
+        message.id = "m2";
+        message.text = null;
+        messages.save(message);
+        Assert.assertNull(messages.get("m2").text);
+        messages.shutdown();
+    }
+
+    @Test
+    public void cachedRows() {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.cache.Employees.ttl", "60");
+        CassandraSession cached = new InMemoryCassandra().createSession();
+        try {
+            EntityDAO<Person> dao = new EntityDAO<Person>(cached, Person.class);
+            Person joe = new Person("joe92", "Joe", "joe", "secret", "joe@mail.com");
+            dao.save(joe);
+            Assert.assertEquals(joe, dao.get("joe92"));
+            Assert.assertEquals(joe, dao.get("joe92"));
+            Assert.assertEquals(1, cached.getRowCache("Employees").getHitCount());
+
+            joe.setEmail("joe@company.com");
+            dao.save(joe);
+            Assert.assertEquals("joe@company.com", dao.get("joe92").getEmail());
+
+            // the cache is shared with the DAOs reading whole rows
+            CassandraDAOImpl columns = new CassandraDAOImpl(cached, "Employees");
+            columns.update("joe92", "nickname", "jj", CassandraDAOImpl.Type.STRING);
+            Assert.assertEquals("joe@company.com", dao.get("joe92").getEmail());
+            Assert.assertEquals("jj", columns.getColumns("joe92").get("nickname"));
+
+            // a row without mapped columns is not a bean, cached or not
+            columns.update("ann01", "nickname", "ann", CassandraDAOImpl.Type.STRING);
+            Assert.assertNull(dao.get("ann01"));
+            Assert.assertNull(dao.get("ann01"));
+            columns.shutdown();
+            dao.shutdown();
+        } finally {
+            AppProperties.getDefaultInstance().getUnderlyingProperties().remove("cassandra.cache.Employees.ttl");
+            cached.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void classWithoutColumnFamily() {
+        EntityMapper.of(NotAnEntity.class);
+    }
+}
@@ -0,0 +1,161 @@
+package com.movile.tests;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import me.prettyprint.cassandra.service.CassandraHost;
+import me.prettyprint.cassandra.service.CassandraHostConfigurator;
+import me.prettyprint.hector.api.HConsistencyLevel;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.junit.After;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.LatencyAwareBalancingPolicy;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.AppProperties;
+
+/**
+ * Host selection by latency and speculative retry of the slow reads, against in-memory nodes with their own delays
+ */
+public class LatencyAwareReadTest {
+
+    private static final AtomicInteger clusters = new AtomicInteger();
+
+    private static final String[] PROPERTIES = { "cassandra.speculative.percentile", "cassandra.speculative.minDelay",
+            "cassandra.speculative.maxInFlight" };
+
+    private InMemoryCassandra cassandra;
+    private CassandraHostConfigurator hostConfigurator;
+    private CassandraSession session;
+    private EmployeeDAOImpl employees;
+
+    private void start(int nodes) {
+        cassandra = new InMemoryCassandra(nodes);
+        hostConfigurator = cassandra.createHostConfigurator();
+        session = CassandraSession.create("latency-" + clusters.incrementAndGet(), hostConfigurator);
+        employees = new EmployeeDAOImpl(session);
+        employees.save(new Person("cloe79", "Cloe Anderson", "cloe", "secret", "cloe@mail.com"));
+    }
+
+    @After
+    public void tearDown() {
+        employees.shutdown();
+        session.release();
+        for (String property : PROPERTIES) {
+            AppProperties.getDefaultInstance().getUnderlyingProperties().remove(property);
+        }
+    }
+
+    @Test
+    public void readsGoToTheFastestHost() {
+        start(3);
+        cassandra.setLatency(0, 20, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("Cloe Anderson", employees.getPerson("cloe79").getName());
+        }
+
+        // the slow node got the first requests and the probes only
+        Assert.assertTrue(String.valueOf(cassandra.getRequestCount(0)), cassandra.getRequestCount(0) < 10);
+        Assert.assertTrue(cassandra.getRequestCount(1) + cassandra.getRequestCount(2) > 90);
+
+        LatencyAwareBalancingPolicy policy = (LatencyAwareBalancingPolicy) hostConfigurator.getLoadBalancingPolicy();
+        Assert.assertTrue(policy.getLatencyMicros(new CassandraHost(cassandra.getHosts().get(0))) >= 15000);
+        Assert.assertTrue(policy.getLatencyMicros(new CassandraHost(cassandra.getHosts().get(1))) < 15000);
+    }
+
+    @Test
+    public void avoidedHostsAreSkipped() throws Exception {
+        start(2);
+        CassandraHost first = new CassandraHost(cassandra.getHosts().get(0));
+        CassandraHost second = new CassandraHost(cassandra.getHosts().get(1));
+
+        for (int i = 0; i < 10; i++) {
+            Collection<CassandraHost> used = new CopyOnWriteArraySet<CassandraHost>();
+            LatencyAwareBalancingPolicy.call(new Callable<Person>() {
+                @Override
+                public Person call() {
+                    return employees.getPerson("cloe79");
+                }
+            }, Collections.singleton(first), used);
+            Assert.assertEquals("[" + second + "]", used.toString());
+        }
+    }
+
+    @Test
+    public void slowReadsAreSentAgain() throws Exception {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.speculative.percentile", "90");
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.speculative.minDelay", "5");
+        start(2);
+
+        // the threshold, from the reads of the last second
+        for (int i = 0; i < 200; i++) {
+            employees.getPerson("cloe79");
+        }
+        Thread.sleep(1100);
+
+        // once the probe interval is gone, the slow node gets one of the next reads
+        cassandra.setLatency(0, 500, TimeUnit.MILLISECONDS);
+        long slowRequests = cassandra.getRequestCount(0);
+        long requests = slowRequests + cassandra.getRequestCount(1);
+        for (int i = 0; i < 4; i++) {
+            long start = System.nanoTime();
+            Person person = employees.getPerson("cloe79", HConsistencyLevel.QUORUM);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Assert.assertEquals("Cloe Anderson", person.getName());
+            Assert.assertTrue(elapsed + " ms", elapsed < 400);
+            Assert.assertEquals(ConsistencyLevel.QUORUM, cassandra.getLastConsistencyLevel());
+        }
+        // answered by the fast node, the duplicates made more requests than reads
+        Assert.assertTrue(cassandra.getRequestCount(0) > slowRequests);
+        Assert.assertTrue(cassandra.getRequestCount(0) + cassandra.getRequestCount(1) > requests + 4);
+    }
+
+    @Test
+    public void speculationKeepsOffTheAsyncSlots() throws Exception {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.speculative.percentile", "90");
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.speculative.maxInFlight", "1");
+        start(2);
+
+        for (int i = 0; i < 200; i++) {
+            employees.getPerson("cloe79");
+        }
+        Thread.sleep(1100);
+
+        // the slow attempts hold the speculative slot, the next reads run on the calling thread
+        cassandra.setLatency(0, 200, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals("Cloe Anderson", employees.getPerson("cloe79").getName());
+        }
+        Assert.assertEquals(1, session.getSpeculativeExecutor().getMaxInFlight());
+        Assert.assertEquals(0, session.getAsyncExecutor().getInFlight());
+    }
+
+    @Test
+    public void singleHostIsNotSentAgain() throws Exception {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.speculative.percentile", "90");
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.speculative.minDelay", "1");
+        start(1);
+
+        for (int i = 0; i < 200; i++) {
+            employees.getPerson("cloe79");
+        }
+        Thread.sleep(1100);
+
+        cassandra.setLatency(0, 50, TimeUnit.MILLISECONDS);
+        long requests = cassandra.getRequestCount(0);
+        Assert.assertEquals("Cloe Anderson", employees.getPerson("cloe79").getName());
+        Assert.assertEquals(requests + 1, cassandra.getRequestCount(0));
+    }
+}
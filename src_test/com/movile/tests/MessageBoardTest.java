@@ -0,0 +1,135 @@
+package com.movile.tests;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Message;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.MessageBoardDAO;
+import com.movile.cassandra.MessageBoardDAO.Bucket;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Time bucketed message boards, against the in-memory cluster
+ */
+public class MessageBoardTest {
+
+    private static final long T0 = 1350475200000L; // an hour start
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+    private MessageBoardDAO board;
+
+    @Before
+    public void setUp() {
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+        board = new MessageBoardDAO(session, Bucket.HOUR);
+    }
+
+    @After
+    public void tearDown() {
+        board.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void postsOfTheSameMillisecondAreKept() {
+        for (int i = 0; i < 5; i++) {
+            board.post("Today", T0 + 1000, "post " + i);
+        }
+        board.post("Today", T0 + 500, "older");
+        board.post("Today", T0 + 2000, "newer");
+
+        List<Message> posts = board.getLatest("Today", 10);
+        Assert.assertEquals(7, posts.size());
+        Assert.assertEquals("newer", posts.get(0).getText());
+        Assert.assertEquals("older", posts.get(6).getText());
+        Assert.assertEquals(T0 + 1000, posts.get(1).getTime());
+    }
+
+    @Test
+    public void numericOrderAcrossBuckets() {
+        // 9999 sorts after 10000 as a string
+        board.post("Today", T0 + 9999, "first");
+        board.post("Today", T0 + 10000, "second");
+        board.post("Today", T0 + TimeUnit.HOURS.toMillis(5), "third");
+        board.post("Today", T0 - TimeUnit.DAYS.toMillis(3), "oldest");
+
+        List<String> texts = new ArrayList<String>();
+        for (Message post : board.getLatest("Today", 10)) {
+            texts.add(post.getText());
+        }
+        Assert.assertEquals("[third, second, first, oldest]", texts.toString());
+    }
+
+    @Test
+    public void pagesWithCursor() {
+        // 40 buckets, more than a page of the bucket list, with empty hours in between
+        for (int i = 0; i < 200; i++) {
+            board.post("Today", T0 + i * TimeUnit.MINUTES.toMillis(25), "post " + i);
+        }
+
+        Set<UUID> seen = new HashSet<UUID>();
+        long previous = Long.MAX_VALUE;
+        List<Message> page = board.getLatest("Today", 7);
+        Assert.assertEquals("post 199", page.get(0).getText());
+        while (!page.isEmpty()) {
+            Assert.assertTrue(page.size() <= 7);
+            for (Message post : page) {
+                Assert.assertTrue(post.getTime() < previous);
+                Assert.assertTrue(seen.add(post.getId()));
+                previous = post.getTime();
+            }
+            page = board.getBefore("Today", page.get(page.size() - 1).getId(), 7);
+        }
+        Assert.assertEquals(200, seen.size());
+        Assert.assertTrue(board.getLatest("Other", 10).isEmpty());
+    }
+
+    @Test
+    public void latestDoesNotReadTheWholeRow() {
+        for (int i = 0; i < 1000; i++) {
+            board.post("Today", T0 + i, "a message of some fifty bytes, posted to the board");
+        }
+        long before = cassandra.getBytesRead();
+        Assert.assertEquals(10, board.getLatest("Today", 10).size());
+        Assert.assertTrue(cassandra.getBytesRead() - before < 2000);
+    }
+
+    @Test
+    public void delete() {
+        board.post("Today", T0, "one");
+        board.post("Today", T0 + TimeUnit.DAYS.toMillis(1), "two");
+        board.post("Other", T0, "three");
+        board.delete("Today");
+        Assert.assertTrue(board.getLatest("Today", 10).isEmpty());
+        Assert.assertEquals(1, board.getLatest("Other", 10).size());
+
+        board.post("Today", T0, "again");
+        Assert.assertEquals(1, board.getLatest("Today", 10).size());
+    }
+
+    @Test
+    public void postsAfterADeleteByAnotherDAO() {
+        MessageBoardDAO other = new MessageBoardDAO(session, Bucket.HOUR);
+        try {
+            board.post("Today", T0, "one");
+            other.delete("Today");
+            board.post("Today", T0 + 1000, "two");
+            Assert.assertEquals("two", other.getLatest("Today", 10).get(0).getText());
+        } finally {
+            other.shutdown();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.movile.tests;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.metrics.LatencyHistogram;
+import com.movile.cassandra.metrics.OperationStats;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Latency histograms and per-operation statistics of the DAOs, against the in-memory cluster
+ */
+public class MetricsTest {
+
+    private CassandraSession session;
+    private EmployeeDAOImpl employees;
+
+    @Before
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        employees = new EmployeeDAOImpl(session);
+    }
+
+    @After
+    public void tearDown() {
+        employees.shutdown();
+        if (session.getReferences() > 0) {
+            session.release();
+        }
+    }
+
+    @Test
+    public void percentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(100000, snapshot.getCount());
+        Assert.assertEquals(100000000L, snapshot.getMax());
+        assertNear(50000000L, snapshot.getValueAt(0.5));
+        assertNear(99000000L, snapshot.getValueAt(0.99));
+        assertNear(99900000L, snapshot.getValueAt(0.999));
+        assertNear(50000500L, snapshot.getMean());
+
+        histogram.record(-5);
+        histogram.record(42);
+        Assert.assertEquals(0, histogram.snapshot().getValueAt(0));
+    }
+
+    @Test
+    public void intervalAndSum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(1000000);
+        }
+        LatencyHistogram.Snapshot before = histogram.snapshot();
+        for (int i = 0; i < 10; i++) {
+            histogram.record(20);
+        }
+        LatencyHistogram.Snapshot interval = histogram.snapshot().minus(before);
+        Assert.assertEquals(10, interval.getCount());
+        Assert.assertEquals(20, interval.getValueAt(0.99));
+        Assert.assertEquals(20, interval.getMax());
+        Assert.assertEquals(20, interval.getMean());
+
+        LatencyHistogram.Snapshot total = before.plus(interval);
+        Assert.assertEquals(110, total.getCount());
+        assertNear(1000000, total.getValueAt(0.95));
+    }
+
+    @Test
+    public void daoCallsAreTimed() {
+        employees.save(new Person("jared86", "Jared", "jared", "secret", "jared@movile.com"));
+        employees.getPerson("jared86");
+        employees.getPerson("nobody");
+
+        OperationStats stats = session.getMetrics().getOperations().get("Employees.getPerson");
+        Assert.assertEquals(2, stats.getCount());
+        Assert.assertEquals(0, stats.getErrors());
+        Assert.assertEquals(1, session.getMetrics().getOperations().get("Employees.save").getCount());
+
+        String information = employees.getClusterInformation();
+        Assert.assertTrue(information.contains("Operation Stats:"));
+        Assert.assertTrue(information.contains("Employees.getPerson [count=2, errors=0"));
+        Assert.assertTrue(information.contains("Employees.* [count=3"));
+    }
+
+    @Test
+    public void failedCallsAreErrors() {
+        try {
+            employees.save(null);
+            Assert.fail("null person saved");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        OperationStats stats = session.getMetrics().getOperations().get("Employees.save");
+        Assert.assertEquals(1, stats.getCount());
+        Assert.assertEquals(1, stats.getErrors());
+    }
+
+    @Test
+    public void statsAreMBeans() throws Exception {
+        employees.getPerson("jared86");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.movile.cassandra:type=DAOMetrics,session=" + ObjectName.quote(session.getCluster().getName())
+                + ",columnFamily=\"Employees\",operation=\"getPerson\"");
+        Assert.assertEquals(Long.valueOf(1), server.getAttribute(name, "Count"));
+
+        employees.shutdown();
+        session.release();
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
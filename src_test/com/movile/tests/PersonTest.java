@@ -0,0 +1,65 @@
+package com.movile.tests;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.mapping.EntityMapper;
+
+/**
+ * Field based equals, hashCode and toString of the beans
+ */
+public class PersonTest {
+
+    @Test
+    public void equalsAndHashCode() {
+        Date creation = new Date(1350000000000L);
+        Person joe = person(creation);
+        Person same = person(creation);
+        Assert.assertEquals(joe, same);
+        Assert.assertEquals(joe.hashCode(), same.hashCode());
+
+        same.setPasswd("other");
+        Assert.assertFalse(joe.equals(same));
+        same.setPasswd("secret");
+        same.setCreationDate(null);
+        Assert.assertFalse(joe.equals(same));
+        Assert.assertFalse(same.equals(joe));
+        Assert.assertFalse(joe.equals(null));
+        Assert.assertEquals(new Person(), new Person());
+
+        Set<Person> set = new HashSet<Person>();
+        set.add(joe);
+        Assert.assertTrue(set.contains(person(creation)));
+    }
+
+    @Test
+    public void toStringWithoutPassword() {
+        Person joe = person(new Date(1350000000000L));
+        Assert.assertTrue(joe.toString(), joe.toString().startsWith("Person [id=joe92, name=Joe, login=joe, creationDate="));
+        Assert.assertFalse(joe.toString().contains("secret"));
+    }
+
+    @Test
+    public void mapperObjectMethods() {
+        EntityMapper<Person> mapper = EntityMapper.of(Person.class);
+        Date creation = new Date(1350000000000L);
+        Person joe = person(creation);
+        Assert.assertTrue(mapper.equals(joe, person(creation)));
+        Assert.assertEquals(mapper.hashCode(joe), mapper.hashCode(person(creation)));
+        Assert.assertFalse(mapper.equals(joe, new Person()));
+        Assert.assertFalse(mapper.toString(joe).contains("secret"));
+        Assert.assertTrue(mapper.toString(joe), mapper.toString(joe).contains("email=joe@mail.com"));
+    }
+
+    private static Person person(Date creation) {
+        Person person = new Person("joe92", "Joe", "joe", "secret", "joe@mail.com");
+        person.setCreationDate(creation);
+        return person;
+    }
+}
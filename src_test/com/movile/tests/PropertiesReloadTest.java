@@ -0,0 +1,241 @@
+package com.movile.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import me.prettyprint.cassandra.connection.HClientPool;
+import me.prettyprint.cassandra.connection.HConnectionManager;
+import me.prettyprint.cassandra.service.CassandraHost;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.PropertiesDiff;
+import com.movile.utils.PropertiesWatcher;
+import com.movile.utils.SmartProperties;
+
+/**
+ * Reload of a property file and live reconfiguration of the connection pools, against the in-memory cluster
+ */
+public class PropertiesReloadTest {
+
+    private File file;
+    private SmartProperties properties;
+    private PropertiesWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("const", ".properties");
+        write("cassandra.maxActive=20\ncassandra.maxIdle=5\ncassandra.columns.pageSize=1000\n");
+        properties = new SmartProperties(new Properties(), Logger.getLogger("test.reload"));
+        properties.loadProperties(file.getPath());
+        watcher = new PropertiesWatcher(properties, file.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        watcher.stop();
+        file.delete();
+    }
+
+    @Test
+    public void reloadAppliesTheChangedProperties() throws IOException {
+        properties.getUnderlyingProperties().setProperty("set.elsewhere", "1");
+        Assert.assertTrue(watcher.reload().isEmpty());
+
+        write("cassandra.maxActive=40\ncassandra.columns.pageSize=1000\ncassandra.scan.pageSize=200\n");
+        PropertiesDiff diff = watcher.reload();
+
+        Assert.assertEquals("[cassandra.maxActive, cassandra.maxIdle, cassandra.scan.pageSize]", diff.getNames().toString());
+        Assert.assertEquals("20", diff.getOldValue("cassandra.maxActive"));
+        Assert.assertEquals("40", diff.getNewValue("cassandra.maxActive"));
+        Assert.assertNull(diff.getNewValue("cassandra.maxIdle"));
+        Assert.assertNull(diff.getOldValue("cassandra.scan.pageSize"));
+        Assert.assertTrue(diff.contains("cassandra.ips", "cassandra.maxIdle"));
+        Assert.assertFalse(diff.contains("cassandra.columns.pageSize"));
+
+        Assert.assertEquals(Integer.valueOf(40), properties.getInt("cassandra.maxActive", 50));
+        Assert.assertEquals(Integer.valueOf(5), properties.getInt("cassandra.maxIdle", 5));
+        Assert.assertEquals(Integer.valueOf(200), properties.getInt("cassandra.scan.pageSize", 500));
+        Assert.assertEquals("1", properties.getString("set.elsewhere", null));
+    }
+
+    @Test
+    public void fileChangesAreWatched() throws Exception {
+        final List<PropertiesDiff> diffs = new ArrayList<PropertiesDiff>();
+        final CountDownLatch changed = new CountDownLatch(1);
+        watcher.addListener(new PropertiesWatcher.Listener() {
+            @Override
+            public void propertiesChanged(PropertiesDiff diff) {
+                diffs.add(diff);
+                changed.countDown();
+            }
+        });
+        watcher.start();
+
+        write("cassandra.maxActive=30\ncassandra.maxIdle=5\ncassandra.columns.pageSize=1000\n");
+        Assert.assertTrue(changed.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals("cassandra.maxActive: 20 -> 30", diffs.get(0).toString());
+        Assert.assertEquals(Integer.valueOf(30), properties.getInt("cassandra.maxActive", 50));
+    }
+
+    @Test
+    public void hostsAddedAndRemoved() {
+        InMemoryCassandra cassandra = new InMemoryCassandra(2);
+        CassandraSession session = cassandra.createSession();
+        EmployeeDAOImpl employees = new EmployeeDAOImpl(session);
+        HConnectionManager manager = session.getCluster().getConnectionManager();
+        try {
+            setPool("127.0.0.2:9160,127.0.0.3:9160", 50, 5, 30);
+            List<String> changes = session.reconfigure(properties);
+
+            Assert.assertTrue(changes.toString(), changes.contains("host added: 127.0.0.3:9160"));
+            Assert.assertTrue(changes.toString(), changes.contains("host removed: 127.0.0.1:9160"));
+            Assert.assertEquals(2, manager.getHosts().size());
+            Assert.assertFalse(manager.getHosts().contains(new CassandraHost("127.0.0.1:9160")));
+            waitForDrains(manager);
+
+            employees.save(new Person("cloe79", "Cloe Anderson", "cloe", "secret", "cloe@mail.com"));
+            Assert.assertEquals("Cloe Anderson", employees.getPerson("cloe79").getName());
+
+            // the last live host is not removed
+            setPool("127.0.0.9:9160", 50, 5, 30);
+            session.reconfigure(properties);
+            Assert.assertTrue(manager.getHosts().size() >= 1);
+            Assert.assertTrue(session.reconfigure(properties).isEmpty());
+        } finally {
+            employees.shutdown();
+            session.release();
+        }
+    }
+
+    @Test
+    public void drainsDoNotBlockTheReconfiguration() throws InterruptedException {
+        InMemoryCassandra cassandra = new InMemoryCassandra(3);
+        CassandraSession session = cassandra.createSession();
+        final EmployeeDAOImpl employees = new EmployeeDAOImpl(session);
+        HConnectionManager manager = session.getCluster().getConnectionManager();
+        try {
+            employees.save(new Person("cloe79", "Cloe Anderson", "cloe", "secret", "cloe@mail.com"));
+            cassandra.setLatency(500, TimeUnit.MILLISECONDS);
+            List<Thread> readers = new ArrayList<Thread>();
+            for (int i = 0; i < 6; i++) {
+                Thread reader = new Thread() {
+                    @Override
+                    public void run() {
+                        employees.getPerson("cloe79");
+                    }
+                };
+                readers.add(reader);
+                reader.start();
+            }
+            Thread.sleep(100);
+
+            // two hosts with reads in flight, neither drain is waited for
+            setPool("127.0.0.3:9160", 50, 5, 30);
+            long start = System.nanoTime();
+            List<String> changes = session.reconfigure(properties);
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 300);
+            Assert.assertTrue(changes.toString(), changes.contains("host removed: 127.0.0.1:9160"));
+            Assert.assertTrue(changes.toString(), changes.contains("host removed: 127.0.0.2:9160"));
+            Assert.assertEquals("[127.0.0.3(127.0.0.3):9160]", manager.getHosts().toString());
+
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            waitForDrains(manager);
+        } finally {
+            employees.shutdown();
+            session.release();
+        }
+    }
+
+    @Test
+    public void poolLimitsUpdated() throws InterruptedException {
+        InMemoryCassandra cassandra = new InMemoryCassandra(2);
+        CassandraSession session = cassandra.createSession();
+        HConnectionManager manager = session.getCluster().getConnectionManager();
+        String hosts = "127.0.0.1:9160,127.0.0.2:9160";
+        try {
+            setPool(hosts, 50, 5, 30);
+            session.reconfigure(properties);
+
+            // a lower limit is applied in place
+            setPool(hosts, 20, 2, 30);
+            List<String> changes = session.reconfigure(properties);
+            Assert.assertEquals("[maxActive: 50 -> 20, maxIdle: 5 -> 2]", changes.toString());
+            for (CassandraHost host : manager.getHosts()) {
+                Assert.assertEquals(20, host.getMaxActive());
+                Assert.assertEquals(2, host.getMaxIdle());
+            }
+
+            // a higher limit and the wait recreate the pools in background, one host at a time
+            List<HClientPool> pools = new ArrayList<HClientPool>(manager.getActivePools());
+            setPool(hosts, 40, 2, 10);
+            changes = session.reconfigure(properties);
+            Assert.assertEquals(changes.toString(), 4, changes.size());
+            Assert.assertEquals("maxActive: 20 -> 40", changes.get(0));
+            Assert.assertEquals("maxWaitTime: 30000 -> 10000 ms", changes.get(1));
+            Assert.assertTrue(changes.contains("pool of 127.0.0.1:9160 recreated in background"));
+            Assert.assertTrue(changes.contains("pool of 127.0.0.2:9160 recreated in background"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!Collections.disjoint(pools, manager.getActivePools()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(Collections.disjoint(pools, manager.getActivePools()));
+            Assert.assertTrue(manager.getSuspendedCassandraHosts().isEmpty());
+            Assert.assertEquals(2, manager.getHosts().size());
+            for (CassandraHost host : manager.getHosts()) {
+                Assert.assertEquals(40, host.getMaxActive());
+                Assert.assertEquals(10000, host.getCassandraThriftSocketTimeout());
+            }
+        } finally {
+            session.release();
+        }
+    }
+
+    private void waitForDrains(HConnectionManager manager) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!manager.getSuspendedCassandraHosts().isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Assert.assertTrue(manager.getSuspendedCassandraHosts().isEmpty());
+    }
+
+    private void setPool(String hosts, int maxActive, int maxIdle, int maxWaitTime) {
+        Properties pool = properties.getUnderlyingProperties();
+        pool.setProperty("cassandra.ips", hosts);
+        pool.setProperty("cassandra.maxActive", String.valueOf(maxActive));
+        pool.setProperty("cassandra.maxIdle", String.valueOf(maxIdle));
+        pool.setProperty("cassandra.maxWaitTime", String.valueOf(maxWaitTime));
+    }
+
+    private void write(String content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            os.close();
+        }
+    }
+}
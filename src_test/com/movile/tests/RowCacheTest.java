@@ -0,0 +1,141 @@
+package com.movile.tests;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.RowCache;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.AppProperties;
+
+/**
+ * Read-through row cache, alone and in front of the DAOs
+ */
+public class RowCacheTest {
+
+    private InMemoryCassandra cassandra;
+    private CassandraSession session;
+    private EmployeeDAOImpl empDAO;
+    private CassandraDAOImpl manager;
+
+    @Before
+    public void setUp() {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().setProperty("cassandra.cache.Employees.ttl", "60");
+
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession();
+        empDAO = new EmployeeDAOImpl(session);
+        manager = new CassandraDAOImpl(session, "Employees");
+        empDAO.save(new Person("joe92", "Joe Robhert", "joe", "123", "joe@mail.com"));
+    }
+
+    @After
+    public void tearDown() {
+        AppProperties.getDefaultInstance().getUnderlyingProperties().remove("cassandra.cache.Employees.ttl");
+        empDAO.shutdown();
+        manager.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void secondReadIsAnsweredByTheCache() {
+        RowCache cache = session.getRowCache("Employees");
+        Assert.assertEquals("Joe Robhert", empDAO.getPerson("joe92").getName());
+        long bytesRead = cassandra.getBytesRead();
+
+        Assert.assertEquals("Joe Robhert", empDAO.getPerson("joe92").getName());
+        Assert.assertEquals("joe@mail.com", manager.getColumns("joe92").get("email"));
+        Assert.assertEquals(bytesRead, cassandra.getBytesRead());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(2, cache.getHitCount());
+
+        Assert.assertNull(empDAO.getPerson("nobody"));
+        Assert.assertTrue(manager.getColumns("nobody").isEmpty());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void writesInvalidateTheCachedRow() {
+        empDAO.getPerson("joe92");
+
+        manager.update("joe92", "email", "joe@company.com", CassandraDAOImpl.Type.STRING);
+        Assert.assertEquals("joe@company.com", empDAO.getPerson("joe92").getEmail());
+
+        manager.updateColumn("joe92", "name", "Joe", CassandraDAOImpl.Type.STRING);
+        Assert.assertEquals("Joe", empDAO.getPerson("joe92").getName());
+
+        empDAO.save(new Person("joe92", "Joe R.", "joe", "123", "joe@mail.com"));
+        Assert.assertEquals("Joe R.", manager.getColumns("joe92").get("name"));
+
+        manager.deleteColumn("joe92", "email");
+        Assert.assertNull(empDAO.getPerson("joe92").getEmail());
+
+        manager.delete("joe92");
+        Assert.assertNull(empDAO.getPerson("joe92"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedRows() {
+        RowCache cache = new RowCache(160, Long.MAX_VALUE, 60, TimeUnit.SECONDS);
+        for (int i = 0; i < 1000; i++) {
+            cache.get("key" + i, new FixedLoader("value"));
+        }
+        Assert.assertTrue(cache.size() <= 160);
+        Assert.assertEquals(1000 - cache.size(), cache.getEvictionCount());
+
+        RowCache small = new RowCache(Integer.MAX_VALUE, 16 * 1000, 60, TimeUnit.SECONDS);
+        for (int i = 0; i < 1000; i++) {
+            small.get("key" + i, new FixedLoader("value"));
+        }
+        Assert.assertTrue(small.getWeight() <= 16 * 1000);
+        Assert.assertTrue(small.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void rowsExpire() throws InterruptedException {
+        RowCache cache = new RowCache(100, Long.MAX_VALUE, 1, TimeUnit.MILLISECONDS);
+        cache.get("key", new FixedLoader("value"));
+        Thread.sleep(5);
+        cache.get("key", new FixedLoader("value"));
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void rowInvalidatedWhileLoadingIsNotCached() {
+        final RowCache cache = new RowCache(100, Long.MAX_VALUE, 60, TimeUnit.SECONDS);
+        cache.get("key", new RowCache.Loader() {
+            @Override
+            public Map<String, byte[]> load(String key) {
+                // a write lands while the old row is on its way
+                cache.invalidate(key);
+                return Collections.singletonMap("column", "old".getBytes());
+            }
+        });
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private static class FixedLoader implements RowCache.Loader {
+
+        private final String value;
+
+        FixedLoader(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public Map<String, byte[]> load(String key) {
+            return Collections.singletonMap("column", value.getBytes());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.movile.tests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.ColumnIterator;
+import com.movile.cassandra.CountersDAOImpl;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.MessageBoardDAO;
+import com.movile.tests.memory.InMemoryCassandra;
+import com.movile.utils.SmartProperties;
+
+/**
+ * DAO settings read from the properties of their session, not from the application properties
+ */
+public class SessionPropertiesTest {
+
+    private InMemoryCassandra cassandra;
+    private SmartProperties properties;
+    private CassandraSession session;
+
+    @Before
+    public void setUp() {
+        properties = new SmartProperties(new Properties(), Logger.getLogger("test.session"));
+        properties.getUnderlyingProperties().setProperty("cassandra.multiget.chunkSize", "2");
+        properties.getUnderlyingProperties().setProperty("cassandra.columns.pageSize", "2");
+        properties.getUnderlyingProperties().setProperty("cassandra.counters.flushInterval", "3600000");
+        properties.getUnderlyingProperties().setProperty("cassandra.batch.maxMutations", "2");
+
+        cassandra = new InMemoryCassandra();
+        session = cassandra.createSession(properties);
+    }
+
+    @After
+    public void tearDown() {
+        session.release();
+    }
+
+    @Test
+    public void daoSettingsComeFromTheSession() {
+        EmployeeDAOImpl employees = new EmployeeDAOImpl(session);
+        CassandraDAOImpl messages = new CassandraDAOImpl(session, "MessageBoard");
+        try {
+            List<String> ids = new ArrayList<String>();
+            for (int i = 0; i < 5; i++) {
+                employees.save(new Person("emp" + i, "Employee " + i, "emp" + i, "secret", "emp" + i + "@mail.com"));
+                messages.update("board", "m" + i, "post " + i, CassandraDAOImpl.Type.STRING);
+                ids.add("emp" + i);
+            }
+
+            // chunks of 2 keys
+            long requests = cassandra.getRequestCount(0);
+            Assert.assertEquals(5, employees.getPersons(ids).size());
+            Assert.assertEquals(requests + 3, cassandra.getRequestCount(0));
+
+            // pages of 2 columns, the last page is empty
+            requests = cassandra.getRequestCount(0);
+            ColumnIterator<String, ByteBuffer> columns = messages.iterateColumns("board");
+            int count = 0;
+            while (columns.hasNext()) {
+                columns.next();
+                count++;
+            }
+            Assert.assertEquals(5, count);
+            Assert.assertTrue(String.valueOf(cassandra.getRequestCount(0) - requests), cassandra.getRequestCount(0) - requests >= 3);
+        } finally {
+            employees.shutdown();
+            messages.shutdown();
+        }
+    }
+
+    @Test
+    public void writeBehindSettingsComeFromTheSession() {
+        CountersDAOImpl counters = new CountersDAOImpl(session, "Counters");
+        try {
+            Assert.assertTrue(counters.isWriteBehind());
+            for (int i = 0; i < 5; i++) {
+                counters.increment("user" + i, "posts");
+            }
+            Assert.assertEquals(0, cassandra.getRowCount("Counters"));
+
+            // batches of 2 counters
+            long requests = cassandra.getRequestCount(0);
+            counters.flush();
+            Assert.assertEquals(requests + 3, cassandra.getRequestCount(0));
+            Assert.assertEquals(5, cassandra.getRowCount("Counters"));
+
+            // chunks of 2 keys
+            requests = cassandra.getRequestCount(0);
+            Assert.assertEquals(5, counters.multiGet(Arrays.asList("user0", "user1", "user2", "user3", "user4"), "posts").size());
+            Assert.assertEquals(requests + 3, cassandra.getRequestCount(0));
+        } finally {
+            counters.shutdown();
+        }
+    }
+
+    @Test
+    public void messageBucketFallsBackToHour() {
+        properties.getUnderlyingProperties().setProperty("cassandra.messages.bucket", "day");
+        MessageBoardDAO days = new MessageBoardDAO(session);
+        properties.getUnderlyingProperties().setProperty("cassandra.messages.bucket", "DAYS");
+        MessageBoardDAO unknown = new MessageBoardDAO(session);
+        try {
+            Assert.assertEquals(MessageBoardDAO.Bucket.DAY, days.getBucket());
+            Assert.assertEquals(MessageBoardDAO.Bucket.HOUR, unknown.getBucket());
+        } finally {
+            days.shutdown();
+            unknown.shutdown();
+        }
+    }
+}
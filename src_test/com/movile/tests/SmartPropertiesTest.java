@@ -0,0 +1,111 @@
+package com.movile.tests;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.utils.SmartProperties;
+
+/**
+ * Parsed snapshot of the properties: typed reads, changes through the underlying properties, logs once per property
+ */
+public class SmartPropertiesTest {
+
+    private final List<String> logged = new ArrayList<String>();
+    private SmartProperties properties;
+
+    @Before
+    public void setUp() {
+        Logger logger = Logger.getLogger("test.smartProperties");
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.INFO);
+        logger.addAppender(new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                logged.add(event.getRenderedMessage());
+            }
+
+            @Override
+            public boolean requiresLayout() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        Properties initial = new Properties();
+        initial.setProperty("pageSize", "500");
+        initial.setProperty("ttl", "86400000");
+        initial.setProperty("ratio", "0.75");
+        initial.setProperty("enabled", "true");
+        initial.setProperty("name", "sbs01_cluster");
+        initial.setProperty("broken", "12x");
+        properties = new SmartProperties(initial, logger);
+    }
+
+    @Test
+    public void typedValues() {
+        Assert.assertEquals(Integer.valueOf(500), properties.getInt("pageSize", 1));
+        Assert.assertEquals(500, properties.getInt("pageSize", 1, 1, 1000));
+        Assert.assertEquals(Long.valueOf(86400000L), properties.getLong("ttl", 0L));
+        Assert.assertEquals(86400000L, properties.getLong("ttl", 0L, 0L, Long.MAX_VALUE));
+        Assert.assertEquals(Double.valueOf(0.75), properties.getDouble("ratio", 1.0));
+        Assert.assertEquals(Boolean.TRUE, properties.getBoolean("enabled", false));
+        Assert.assertEquals("sbs01_cluster", properties.getString("name", "x"));
+        Assert.assertEquals("500", properties.getString("pageSize", "x"));
+    }
+
+    @Test
+    public void defaultsAndInvalidValuesLoggedOnce() {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(Integer.valueOf(7), properties.getInt("missing", 7));
+            Assert.assertEquals(Integer.valueOf(1), properties.getInt("broken", 1));
+            Assert.assertEquals(100, properties.getInt("pageSize", 100, 1, 200));
+        }
+        Assert.assertEquals(3, logged.size());
+        Assert.assertTrue(logged.get(0).contains("missing not set"));
+        Assert.assertTrue(logged.get(1).contains("invalid value (12x)"));
+        Assert.assertTrue(logged.get(2).contains("out of range"));
+    }
+
+    @Test
+    public void changesAreSeenByTheNextRead() throws Exception {
+        Assert.assertEquals(Integer.valueOf(500), properties.getInt("pageSize", 1));
+
+        properties.getUnderlyingProperties().setProperty("pageSize", "250");
+        Assert.assertEquals(Integer.valueOf(250), properties.getInt("pageSize", 1));
+
+        properties.getUnderlyingProperties().remove("pageSize");
+        Assert.assertEquals(Integer.valueOf(1), properties.getInt("pageSize", 1));
+
+        Properties more = new Properties();
+        more.setProperty("pageSize", "42");
+        properties.loadProperties(more);
+        Assert.assertEquals(Integer.valueOf(42), properties.getInt("pageSize", 1));
+
+        properties.loadProperties(new ByteArrayInputStream("other=1\n".getBytes("ISO-8859-1")));
+        Assert.assertEquals("default", properties.getString("name", "default"));
+        Assert.assertEquals(Integer.valueOf(1), properties.getInt("other", 0));
+    }
+
+    @Test
+    public void defaultLoggedAgainAfterAChange() {
+        properties.getInt("missing", 7);
+        properties.getUnderlyingProperties().setProperty("unrelated", "1");
+        properties.getInt("missing", 7);
+        Assert.assertEquals(2, logged.size());
+    }
+}
@@ -0,0 +1,130 @@
+package com.movile.tests;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import me.prettyprint.cassandra.serializers.ByteBufferSerializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.hector.api.beans.Row;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.bean.Person;
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.EmployeeDAOImpl;
+import com.movile.cassandra.RowCallback;
+import com.movile.cassandra.TokenRangeScanner;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Parallel token range scans, against a three node in-memory ring
+ */
+public class TokenRangeScanTest {
+
+    private CassandraSession session;
+    private EmployeeDAOImpl empDAO;
+
+    @Before
+    public void setUp() {
+        session = new InMemoryCassandra(3).createSession();
+        empDAO = new EmployeeDAOImpl(session);
+        for (int i = 0; i < 1000; i++) {
+            empDAO.save(new Person("emp" + i, "Employee " + i, "login" + i, "passwd" + i, "emp" + i + "@mail.com"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        empDAO.shutdown();
+        session.release();
+    }
+
+    /**
+     * Every row comes back exactly once, whatever the split of the ring and the page size
+     */
+    @Test
+    public void scanVisitsEveryRowOnce() {
+        int[] parallelisms = { 1, 3, 8 };
+        int[] pageSizes = { 1, 7, 1000 };
+        for (int parallelism : parallelisms) {
+            for (int pageSize : pageSizes) {
+                TokenRangeScanner<String, ByteBuffer> scanner = new TokenRangeScanner<String, ByteBuffer>(session.getCluster(),
+                        session.getKeyspace(), "Employees", StringSerializer.get(), ByteBufferSerializer.get(), parallelism, pageSize, 10);
+
+                final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                long rows = scanner.scan(new RowCallback<Row<String, String, ByteBuffer>>() {
+                    @Override
+                    public void onRow(Row<String, String, ByteBuffer> row) {
+                        Assert.assertTrue("duplicated " + row.getKey(), ids.add(row.getKey()));
+                        Assert.assertEquals(5, row.getColumnSlice().getColumns().size());
+                    }
+                });
+                Assert.assertEquals(1000, rows);
+                Assert.assertEquals(1000, ids.size());
+            }
+        }
+    }
+
+    @Test
+    public void scanParallelMapsEmployees() {
+        final AtomicInteger count = new AtomicInteger();
+        long rows = empDAO.scanParallel(new RowCallback<Person>() {
+            @Override
+            public void onRow(Person person) {
+                Assert.assertEquals("Employee " + person.getId().substring(3), person.getName());
+                count.incrementAndGet();
+            }
+        });
+        Assert.assertEquals(1000, rows);
+        Assert.assertEquals(1000, count.get());
+    }
+
+    /**
+     * Deleted rows (range ghosts) are not passed to the callback
+     */
+    @Test
+    public void scanSkipsDeletedRows() {
+        CassandraDAOImpl manager = new CassandraDAOImpl(session, "Employees");
+        for (int i = 0; i < 1000; i += 2) {
+            manager.delete("emp" + i);
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        long rows = manager.scanParallel(new RowCallback<Row<String, String, ByteBuffer>>() {
+            @Override
+            public void onRow(Row<String, String, ByteBuffer> row) {
+                count.incrementAndGet();
+            }
+        });
+        manager.shutdown();
+
+        Assert.assertEquals(500, rows);
+        Assert.assertEquals(500, count.get());
+    }
+
+    /**
+     * A failing callback aborts the scan and its exception reaches the caller
+     */
+    @Test
+    public void callbackFailureAbortsTheScan() {
+        try {
+            empDAO.scanParallel(new RowCallback<Person>() {
+                @Override
+                public void onRow(Person person) {
+                    throw new IllegalStateException("export failed");
+                }
+            });
+            Assert.fail("the callback failure was swallowed");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("export failed", e.getMessage());
+        }
+    }
+}
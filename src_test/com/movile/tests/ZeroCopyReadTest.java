@@ -0,0 +1,89 @@
+package com.movile.tests;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.movile.cassandra.CassandraDAOImpl;
+import com.movile.cassandra.CassandraDAOImpl.Type;
+import com.movile.cassandra.CassandraSession;
+import com.movile.cassandra.ColumnVisitor;
+import com.movile.tests.memory.InMemoryCassandra;
+
+/**
+ * Reads through ByteBuffer views, against the in-memory cluster
+ */
+public class ZeroCopyReadTest {
+
+    private CassandraSession session;
+    private CassandraDAOImpl manager;
+
+    @Before
+    public void setUp() {
+        session = new InMemoryCassandra().createSession();
+        manager = new CassandraDAOImpl(session, "MessageBoard");
+        manager.update("blobs", "b", new byte[] { 1, 2, 3 }, Type.BYTE_ARRAY);
+        manager.update("blobs", "a", "first", Type.STRING);
+        manager.update("blobs", "c", 3L, Type.LONG);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+        session.release();
+    }
+
+    @Test
+    public void visitWholeRow() {
+        final List<String> names = new ArrayList<String>();
+        final List<ByteBuffer> values = new ArrayList<ByteBuffer>();
+        int count = manager.visitColumns("blobs", new ColumnVisitor() {
+            @Override
+            public void visit(ByteBuffer name, ByteBuffer value, long clock) {
+                Assert.assertTrue(name.isReadOnly());
+                Assert.assertTrue(value.isReadOnly());
+                Assert.assertTrue(clock > 0);
+                names.add(StringSerializer.get().fromByteBuffer(name));
+                values.add(value);
+            }
+        });
+
+        Assert.assertEquals(3, count);
+        Assert.assertEquals("[a, b, c]", names.toString());
+        Assert.assertEquals("first", StringSerializer.get().fromByteBuffer(values.get(0)));
+        Assert.assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), values.get(1));
+        Assert.assertEquals(3L, values.get(2).getLong());
+    }
+
+    @Test
+    public void visitNamedColumns() {
+        final List<String> names = new ArrayList<String>();
+        int count = manager.visitColumns("blobs", new ColumnVisitor() {
+            @Override
+            public void visit(ByteBuffer name, ByteBuffer value, long clock) {
+                names.add(StringSerializer.get().fromByteBuffer(name));
+            }
+        }, "c", "missing", "a");
+
+        Assert.assertEquals(2, count);
+        Assert.assertEquals("[a, c]", names.toString());
+        Assert.assertEquals(0, manager.visitColumns("nobody", null));
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void buffersAreReadOnly() {
+        ByteBuffer value = manager.getColumnBuffer("blobs", "b");
+        Assert.assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), value);
+        Assert.assertNull(manager.getColumnBuffer("blobs", "missing"));
+        value.put(0, (byte) 9);
+    }
+}
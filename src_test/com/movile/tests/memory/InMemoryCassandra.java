@@ -0,0 +1,519 @@
+package com.movile.tests.memory;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import me.prettyprint.cassandra.connection.HClientPool;
+import me.prettyprint.cassandra.connection.InMemoryClientPool;
+import me.prettyprint.cassandra.connection.RoundRobinBalancingPolicy;
+import me.prettyprint.cassandra.service.CassandraHost;
+import me.prettyprint.cassandra.service.CassandraHostConfigurator;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnDef;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+
+import com.movile.cassandra.CassandraSession;
+import com.movile.utils.SmartProperties;
+
+/**
+ * In-process stand-in for a Cassandra cluster, used by the benchmarks and by the tests that can not rely on a live ring.
+ *
+ * Every node shares the same data (as if the replication factor was the number of nodes), rows are kept in
+ * RandomPartitioner token order and columns in the order of their comparator (byte order, LongType or TimeUUIDType),
+ * so paging and slicing behave like the real thing.
+ * The hector stack above the thrift client (templates, queries, mutators, pools and failover) is the real one.
+ */
+public class InMemoryCassandra {
+
+    private static final AtomicInteger sessions = new AtomicInteger();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Unsigned byte order, the order of BytesType, AsciiType and UTF8Type comparators
+     */
+    public static final Comparator<ByteBuffer> BYTES_COMPARATOR = new Comparator<ByteBuffer>() {
+        @Override
+        public int compare(ByteBuffer o1, ByteBuffer o2) {
+            int p1 = o1.position();
+            int p2 = o2.position();
+            int length = Math.min(o1.remaining(), o2.remaining());
+            for (int i = 0; i < length; i++) {
+                int b1 = o1.get(p1 + i) & 0xFF;
+                int b2 = o2.get(p2 + i) & 0xFF;
+                if (b1 != b2) {
+                    return b1 - b2;
+                }
+            }
+            return o1.remaining() - o2.remaining();
+        }
+    };
+
+    /**
+     * Signed order of 8 byte longs, the order of the LongType comparator
+     */
+    public static final Comparator<ByteBuffer> LONG_COMPARATOR = new Comparator<ByteBuffer>() {
+        @Override
+        public int compare(ByteBuffer o1, ByteBuffer o2) {
+            if (o1.remaining() == 0 || o2.remaining() == 0) {
+                return o1.remaining() - o2.remaining();
+            }
+            long l1 = o1.getLong(o1.position());
+            long l2 = o2.getLong(o2.position());
+            return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+        }
+    };
+
+    /**
+     * Order of the TimeUUIDType comparator: by the time of the (version 1) uuids, then by byte order
+     */
+    public static final Comparator<ByteBuffer> TIME_UUID_COMPARATOR = new Comparator<ByteBuffer>() {
+        @Override
+        public int compare(ByteBuffer o1, ByteBuffer o2) {
+            if (o1.remaining() == 0 || o2.remaining() == 0) {
+                return o1.remaining() - o2.remaining();
+            }
+            long t1 = timestamp(o1);
+            long t2 = timestamp(o2);
+            if (t1 != t2) {
+                return t1 < t2 ? -1 : 1;
+            }
+            return BYTES_COMPARATOR.compare(o1, o2);
+        }
+
+        private long timestamp(ByteBuffer uuid) {
+            long high = uuid.getLong(uuid.position());
+            return (high & 0x0FFFL) << 48 | (high >>> 16 & 0xFFFFL) << 32 | high >>> 32;
+        }
+    };
+
+    static final BigInteger MAXIMUM_TOKEN = BigInteger.valueOf(2).pow(127);
+
+    private final ConcurrentMap<String, ColumnFamily> columnFamilies = new ConcurrentHashMap<String, ColumnFamily>();
+    private final ConcurrentMap<String, CfDef> schema = new ConcurrentHashMap<String, CfDef>();
+    private final List<String> hosts = new ArrayList<String>();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private volatile long latencyNanos;
+    private final ConcurrentMap<String, Long> nodeLatencyNanos = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, AtomicLong> nodeRequests = new ConcurrentHashMap<String, AtomicLong>();
+    private volatile ConsistencyLevel lastConsistencyLevel;
+    private final Queue<Exception> writeFailures = new ConcurrentLinkedQueue<Exception>();
+
+    /**
+     * Single node cluster
+     */
+    public InMemoryCassandra() {
+        this(1);
+    }
+
+    /**
+     * @param nodes number of nodes, bound to 127.0.0.1:9160, 127.0.0.2:9160 ...
+     */
+    public InMemoryCassandra(int nodes) {
+        for (int i = 1; i <= nodes; i++) {
+            hosts.add("127.0.0." + i + ":9160");
+        }
+
+        // the column families of conf/cassandra-cli-commands.txt
+        CfDef employees = new CfDef(CassandraSession.KEYSPACE, "Employees").setComparator_type("UTF8Type");
+        for (String column : new String[] { "name", "email", "login", "passwd" }) {
+            employees.addToColumn_metadata(new ColumnDef(ByteBuffer.wrap(column.getBytes(UTF_8)), "UTF8Type"));
+        }
+        employees.addToColumn_metadata(new ColumnDef(ByteBuffer.wrap("creation".getBytes(UTF_8)), "LongType"));
+        define(employees);
+        define(new CfDef(CassandraSession.KEYSPACE, "MessageBoard").setComparator_type("UTF8Type"));
+        define(new CfDef(CassandraSession.KEYSPACE, "Counters").setComparator_type("UTF8Type")
+                .setDefault_validation_class("CounterColumnType").setKey_validation_class("UTF8Type"));
+        define(new CfDef(CassandraSession.KEYSPACE, "Messages").setComparator_type("TimeUUIDType")
+                .setDefault_validation_class("UTF8Type").setKey_validation_class("UTF8Type"));
+        define(new CfDef(CassandraSession.KEYSPACE, "MessageBuckets").setComparator_type("LongType")
+                .setKey_validation_class("UTF8Type"));
+    }
+
+    /**
+     * Declares a column family (or replaces its definition), as returned by describe_keyspace. Rows can be written
+     * to undeclared column families too, their columns are kept in byte order. The comparator of a column family
+     * already written to is not changed.
+     * @param definition column family definition
+     */
+    public void define(CfDef definition) {
+        schema.put(definition.getName(), definition);
+    }
+
+    KsDef describeKeyspace(String keyspace) {
+        return new KsDef(keyspace, "org.apache.cassandra.locator.SimpleStrategy", new ArrayList<CfDef>(schema.values()));
+    }
+
+    /**
+     * @return a host configuration whose pools talk to this in-memory cluster
+     */
+    public CassandraHostConfigurator createHostConfigurator() {
+        StringBuilder sb = new StringBuilder();
+        for (String host : hosts) {
+            sb.append(sb.length() > 0 ? "," : "").append(host);
+        }
+        CassandraHostConfigurator hostConfigurator = new CassandraHostConfigurator(sb.toString());
+        hostConfigurator.setLoadBalancingPolicy(new InMemoryBalancingPolicy());
+        hostConfigurator.setAutoDiscoverHosts(false);
+        return hostConfigurator;
+    }
+
+    /**
+     * Creates a new session (with its own hector cluster) over this in-memory cluster
+     * @return a session retained once
+     */
+    public CassandraSession createSession() {
+        return CassandraSession.create("in-memory-" + sessions.incrementAndGet(), createHostConfigurator());
+    }
+
+    /**
+     * Creates a new session over this in-memory cluster with its own settings
+     * @param properties configuration source of the session and of its DAOs
+     * @return a session retained once
+     */
+    public CassandraSession createSession(SmartProperties properties) {
+        return CassandraSession.create("in-memory-" + sessions.incrementAndGet(), createHostConfigurator(), properties);
+    }
+
+    /**
+     * @return the host urls of the nodes
+     */
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Tokens are evenly spread over the ring, the first node owns the range wrapping around zero
+     * @param node index of the node in {@link #getHosts()}
+     * @return the RandomPartitioner token of the node
+     */
+    public BigInteger getToken(int node) {
+        return MAXIMUM_TOKEN.multiply(BigInteger.valueOf(node)).divide(BigInteger.valueOf(hosts.size()));
+    }
+
+    /**
+     * Number of live (non empty) rows of a column family
+     * @param columnFamily column family name
+     * @return the row count
+     */
+    public int getRowCount(String columnFamily) {
+        ColumnFamily cf = columnFamilies.get(columnFamily);
+        if (cf == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Map<ByteBuffer, Column> row : cf.rows.values()) {
+            if (!row.isEmpty()) {
+                count++;
+            }
+        }
+        for (Map<ByteBuffer, Long> row : cf.counters.values()) {
+            if (!row.isEmpty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Bytes of column names, values and timestamps returned by the read calls so far,
+     * roughly what a real node would put on the wire
+     * @return the transferred bytes
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    /**
+     * Simulated network round trip, every read and write call of the nodes waits it before answering
+     * @param latency round trip time, 0 to answer at once
+     * @param unit unit of the latency
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Simulated round trip of one node (a slow or overloaded host), replaces the latency of the whole cluster for it
+     * @param node index of the node in {@link #getHosts()}
+     * @param latency round trip time, 0 to answer at once
+     * @param unit unit of the latency
+     */
+    public void setLatency(int node, long latency, TimeUnit unit) {
+        nodeLatencyNanos.put(hosts.get(node), unit.toNanos(latency));
+    }
+
+    /**
+     * @param node index of the node in {@link #getHosts()}
+     * @return the read and write calls answered by the node so far
+     */
+    public long getRequestCount(int node) {
+        AtomicLong requests = nodeRequests.get(hosts.get(node));
+        return requests != null ? requests.get() : 0;
+    }
+
+    /**
+     * @return the consistency level of the last read or write call
+     */
+    public ConsistencyLevel getLastConsistencyLevel() {
+        return lastConsistencyLevel;
+    }
+
+    /**
+     * Fails the next write calls before they are applied
+     * @param count number of write calls to fail
+     * @param failure an UnavailableException or a TimedOutException
+     */
+    public void failWrites(int count, Exception failure) {
+        for (int i = 0; i < count; i++) {
+            writeFailures.add(failure);
+        }
+    }
+
+    void checkWrite() throws UnavailableException, TimedOutException {
+        Exception failure = writeFailures.poll();
+        if (failure instanceof UnavailableException) {
+            throw (UnavailableException) failure;
+        }
+        if (failure instanceof TimedOutException) {
+            throw (TimedOutException) failure;
+        }
+    }
+
+    void roundTrip(CassandraHost host, ConsistencyLevel consistencyLevel) {
+        lastConsistencyLevel = consistencyLevel;
+        AtomicLong requests = nodeRequests.get(host.getUrl());
+        if (requests == null) {
+            requests = new AtomicLong();
+            AtomicLong previous = nodeRequests.putIfAbsent(host.getUrl(), requests);
+            if (previous != null) {
+                requests = previous;
+            }
+        }
+        requests.incrementAndGet();
+        Long nodeLatency = nodeLatencyNanos.isEmpty() ? null : nodeLatencyNanos.get(host.getUrl());
+        long latency = nodeLatency != null ? nodeLatency : latencyNanos;
+        if (latency > 0) {
+            long deadline = System.nanoTime() + latency;
+            for (long left = latency; left > 0; left = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(left);
+            }
+        }
+    }
+
+    /**
+     * Removes every row of every column family
+     */
+    public void clear() {
+        columnFamilies.clear();
+    }
+
+    ColumnFamily getColumnFamily(String name) {
+        ColumnFamily cf = columnFamilies.get(name);
+        if (cf == null) {
+            cf = new ColumnFamily(comparator(schema.get(name)));
+            ColumnFamily previous = columnFamilies.putIfAbsent(name, cf);
+            if (previous != null) {
+                cf = previous;
+            }
+        }
+        return cf;
+    }
+
+    private static Comparator<ByteBuffer> comparator(CfDef definition) {
+        String type = definition != null && definition.getComparator_type() != null ? definition.getComparator_type() : "";
+        if (type.endsWith("LongType")) {
+            return LONG_COMPARATOR;
+        }
+        if (type.endsWith("TimeUUIDType")) {
+            return TIME_UUID_COMPARATOR;
+        }
+        return BYTES_COMPARATOR;
+    }
+
+    /**
+     * RandomPartitioner token of a key
+     * @param key row key
+     * @return the md5 based token
+     */
+    public static BigInteger token(ByteBuffer key) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update(key.duplicate());
+            return new BigInteger(md5.digest()).abs();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Row key decorated with its token, rows are sorted by token then by key
+     */
+    static final class RowKey implements Comparable<RowKey> {
+
+        final BigInteger token;
+        final ByteBuffer key;
+
+        RowKey(ByteBuffer key) {
+            this(token(key), key);
+        }
+
+        RowKey(BigInteger token, ByteBuffer key) {
+            this.token = token;
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(RowKey o) {
+            int cmp = token.compareTo(o.token);
+            return cmp != 0 ? cmp : BYTES_COMPARATOR.compare(key, o.key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof RowKey && compareTo((RowKey) obj) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+
+    /**
+     * Data of a column family: regular and counter rows, their columns sorted by the comparator of the column family
+     */
+    static final class ColumnFamily {
+
+        final Comparator<ByteBuffer> comparator;
+
+        final ConcurrentSkipListMap<RowKey, ConcurrentSkipListMap<ByteBuffer, Column>> rows =
+                new ConcurrentSkipListMap<RowKey, ConcurrentSkipListMap<ByteBuffer, Column>>();
+
+        final ConcurrentSkipListMap<RowKey, ConcurrentSkipListMap<ByteBuffer, Long>> counters =
+                new ConcurrentSkipListMap<RowKey, ConcurrentSkipListMap<ByteBuffer, Long>>();
+
+        ColumnFamily(Comparator<ByteBuffer> comparator) {
+            this.comparator = comparator;
+        }
+
+        ConcurrentSkipListMap<ByteBuffer, Column> row(RowKey key) {
+            ConcurrentSkipListMap<ByteBuffer, Column> row = rows.get(key);
+            if (row == null) {
+                row = new ConcurrentSkipListMap<ByteBuffer, Column>(comparator);
+                ConcurrentSkipListMap<ByteBuffer, Column> previous = rows.putIfAbsent(key, row);
+                if (previous != null) {
+                    row = previous;
+                }
+            }
+            return row;
+        }
+
+        ConcurrentSkipListMap<ByteBuffer, Long> counterRow(RowKey key) {
+            ConcurrentSkipListMap<ByteBuffer, Long> row = counters.get(key);
+            if (row == null) {
+                row = new ConcurrentSkipListMap<ByteBuffer, Long>(comparator);
+                ConcurrentSkipListMap<ByteBuffer, Long> previous = counters.putIfAbsent(key, row);
+                if (previous != null) {
+                    row = previous;
+                }
+            }
+            return row;
+        }
+
+        boolean isCounter() {
+            return !counters.isEmpty();
+        }
+
+        /**
+         * Last write wins insertion
+         */
+        void insert(RowKey key, Column column) {
+            ConcurrentSkipListMap<ByteBuffer, Column> row = row(key);
+            ByteBuffer name = column.bufferForName();
+            while (true) {
+                Column previous = row.putIfAbsent(name, column);
+                if (previous == null || previous.getTimestamp() > column.getTimestamp() || row.replace(name, previous, column)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Removes the columns older than the deletion timestamp, the whole row when name is null
+         */
+        void remove(RowKey key, ByteBuffer name, long timestamp) {
+            ConcurrentSkipListMap<ByteBuffer, Column> row = rows.get(key);
+            if (row != null) {
+                if (name == null) {
+                    for (Column column : row.values()) {
+                        if (column.getTimestamp() <= timestamp) {
+                            row.remove(column.bufferForName(), column);
+                        }
+                    }
+                } else {
+                    Column column = row.get(name);
+                    if (column != null && column.getTimestamp() <= timestamp) {
+                        row.remove(name, column);
+                    }
+                }
+            }
+            ConcurrentSkipListMap<ByteBuffer, Long> counterRow = counters.get(key);
+            if (counterRow != null) {
+                if (name == null) {
+                    counterRow.clear();
+                } else {
+                    counterRow.remove(name);
+                }
+            }
+        }
+
+        void add(RowKey key, ByteBuffer name, long delta) {
+            ConcurrentSkipListMap<ByteBuffer, Long> row = counterRow(key);
+            while (true) {
+                Long previous = row.putIfAbsent(name, delta);
+                if (previous == null || row.replace(name, previous, previous + delta)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Round robin over in-memory pools, one per node
+     */
+    private class InMemoryBalancingPolicy extends RoundRobinBalancingPolicy {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public HClientPool createConnection(CassandraHost host) {
+            return new InMemoryClientPool(host, new InMemoryCassandraClient(InMemoryCassandra.this, host));
+        }
+    }
+}
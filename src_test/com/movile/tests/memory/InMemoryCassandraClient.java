@@ -0,0 +1,390 @@
+package com.movile.tests.memory;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import me.prettyprint.cassandra.service.CassandraHost;
+
+import org.apache.cassandra.thrift.AuthenticationRequest;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ColumnPath;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CounterColumn;
+import org.apache.cassandra.thrift.Deletion;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.KeyRange;
+import org.apache.cassandra.thrift.KeySlice;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.NotFoundException;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.thrift.TException;
+
+import com.movile.tests.memory.InMemoryCassandra.ColumnFamily;
+import com.movile.tests.memory.InMemoryCassandra.RowKey;
+
+/**
+ * Thrift client of one in-memory node, answering the calls hector makes from the shared {@link InMemoryCassandra} data
+ */
+public class InMemoryCassandraClient extends Cassandra.Client {
+
+    private final InMemoryCassandra cassandra;
+    private final CassandraHost host;
+
+    public InMemoryCassandraClient(InMemoryCassandra cassandra, CassandraHost host) {
+        super(null);
+        this.cassandra = cassandra;
+        this.host = host;
+    }
+
+    /**
+     * @return the node this client talks to
+     */
+    public CassandraHost getHost() {
+        return host;
+    }
+
+    @Override
+    public void login(AuthenticationRequest authRequest) {
+    }
+
+    @Override
+    public void set_keyspace(String keyspace) {
+    }
+
+    @Override
+    public ColumnOrSuperColumn get(ByteBuffer key, ColumnPath columnPath, ConsistencyLevel consistencyLevel) throws NotFoundException {
+        cassandra.roundTrip(host, consistencyLevel);
+        ColumnFamily cf = cassandra.getColumnFamily(columnPath.getColumn_family());
+        RowKey rowKey = new RowKey(key);
+        ByteBuffer name = columnPath.bufferForColumn();
+
+        ColumnOrSuperColumn result = null;
+        if (cf.isCounter()) {
+            Map<ByteBuffer, Long> row = cf.counters.get(rowKey);
+            Long value = row != null ? row.get(name) : null;
+            if (value != null) {
+                result = new ColumnOrSuperColumn().setCounter_column(new CounterColumn(name.duplicate(), value));
+            }
+        } else {
+            Map<ByteBuffer, Column> row = cf.rows.get(rowKey);
+            Column column = row != null ? row.get(name) : null;
+            if (column != null) {
+                result = new ColumnOrSuperColumn().setColumn(view(column));
+            }
+        }
+        if (result == null) {
+            throw new NotFoundException();
+        }
+        track(result);
+        return result;
+    }
+
+    @Override
+    public List<ColumnOrSuperColumn> get_slice(ByteBuffer key, ColumnParent columnParent, SlicePredicate predicate,
+            ConsistencyLevel consistencyLevel) {
+        cassandra.roundTrip(host, consistencyLevel);
+        List<ColumnOrSuperColumn> result = slice(cassandra.getColumnFamily(columnParent.getColumn_family()), new RowKey(key), predicate);
+        track(result);
+        return result;
+    }
+
+    @Override
+    public int get_count(ByteBuffer key, ColumnParent columnParent, SlicePredicate predicate, ConsistencyLevel consistencyLevel) {
+        cassandra.roundTrip(host, consistencyLevel);
+        return slice(cassandra.getColumnFamily(columnParent.getColumn_family()), new RowKey(key), predicate).size();
+    }
+
+    @Override
+    public Map<ByteBuffer, List<ColumnOrSuperColumn>> multiget_slice(List<ByteBuffer> keys, ColumnParent columnParent,
+            SlicePredicate predicate, ConsistencyLevel consistencyLevel) {
+        cassandra.roundTrip(host, consistencyLevel);
+        ColumnFamily cf = cassandra.getColumnFamily(columnParent.getColumn_family());
+        Map<ByteBuffer, List<ColumnOrSuperColumn>> result = new LinkedHashMap<ByteBuffer, List<ColumnOrSuperColumn>>();
+        for (ByteBuffer key : keys) {
+            List<ColumnOrSuperColumn> columns = slice(cf, new RowKey(key), predicate);
+            track(columns);
+            result.put(key, columns);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<ByteBuffer, Integer> multiget_count(List<ByteBuffer> keys, ColumnParent columnParent, SlicePredicate predicate,
+            ConsistencyLevel consistencyLevel) {
+        cassandra.roundTrip(host, consistencyLevel);
+        ColumnFamily cf = cassandra.getColumnFamily(columnParent.getColumn_family());
+        Map<ByteBuffer, Integer> result = new LinkedHashMap<ByteBuffer, Integer>();
+        for (ByteBuffer key : keys) {
+            result.put(key, slice(cf, new RowKey(key), predicate).size());
+        }
+        return result;
+    }
+
+    @Override
+    public List<KeySlice> get_range_slices(ColumnParent columnParent, SlicePredicate predicate, KeyRange range,
+            ConsistencyLevel consistencyLevel) throws InvalidRequestException {
+        cassandra.roundTrip(host, consistencyLevel);
+        ColumnFamily cf = cassandra.getColumnFamily(columnParent.getColumn_family());
+
+        NavigableMap<RowKey, ?> rows = cf.isCounter() ? cf.counters : cf.rows;
+        List<Set<RowKey>> parts = new ArrayList<Set<RowKey>>();
+        if (range.isSetStart_token()) {
+            // (start, end] in token order, wrapping around the ring when start is not before end
+            BigInteger start = new BigInteger(range.getStart_token());
+            BigInteger end = new BigInteger(range.getEnd_token());
+            if (start.compareTo(end) < 0) {
+                parts.add(rows.subMap(firstAfter(start), true, firstAfter(end), false).keySet());
+            } else {
+                parts.add(rows.tailMap(firstAfter(start), true).keySet());
+                parts.add(rows.headMap(firstAfter(end), false).keySet());
+            }
+        } else {
+            if (range.isSetStart_key() && range.getStart_key().length > 0) {
+                rows = rows.tailMap(new RowKey(range.bufferForStart_key()), true);
+            }
+            if (range.isSetEnd_key() && range.getEnd_key().length > 0) {
+                rows = rows.headMap(new RowKey(range.bufferForEnd_key()), true);
+            }
+            parts.add(rows.keySet());
+        }
+
+        List<KeySlice> result = new ArrayList<KeySlice>();
+        for (Set<RowKey> part : parts) {
+            for (RowKey rowKey : part) {
+                if (result.size() >= range.getCount()) {
+                    return result;
+                }
+                // deleted rows are still returned without columns, like the range ghosts of a real node
+                List<ColumnOrSuperColumn> columns = slice(cf, rowKey, predicate);
+                track(columns);
+                result.add(new KeySlice(rowKey.key.duplicate(), columns));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a key sorted before every row of the token following the given one
+     */
+    private static RowKey firstAfter(BigInteger token) {
+        return new RowKey(token.add(BigInteger.ONE), ByteBuffer.allocate(0));
+    }
+
+    @Override
+    public void insert(ByteBuffer key, ColumnParent columnParent, Column column, ConsistencyLevel consistencyLevel) {
+        cassandra.roundTrip(host, consistencyLevel);
+        cassandra.getColumnFamily(columnParent.getColumn_family()).insert(new RowKey(copy(key)), column.deepCopy());
+    }
+
+    @Override
+    public void add(ByteBuffer key, ColumnParent columnParent, CounterColumn column, ConsistencyLevel consistencyLevel) {
+        cassandra.roundTrip(host, consistencyLevel);
+        cassandra.getColumnFamily(columnParent.getColumn_family()).add(new RowKey(copy(key)), copy(column.bufferForName()), column.getValue());
+    }
+
+    @Override
+    public void remove(ByteBuffer key, ColumnPath columnPath, long timestamp, ConsistencyLevel consistencyLevel) {
+        cassandra.roundTrip(host, consistencyLevel);
+        cassandra.getColumnFamily(columnPath.getColumn_family()).remove(new RowKey(key), columnPath.bufferForColumn(), timestamp);
+    }
+
+    @Override
+    public void remove_counter(ByteBuffer key, ColumnPath path, ConsistencyLevel consistencyLevel) {
+        cassandra.roundTrip(host, consistencyLevel);
+        cassandra.getColumnFamily(path.getColumn_family()).remove(new RowKey(key), path.bufferForColumn(), Long.MAX_VALUE);
+    }
+
+    @Override
+    public void batch_mutate(Map<ByteBuffer, Map<String, List<Mutation>>> mutationMap, ConsistencyLevel consistencyLevel)
+            throws InvalidRequestException, UnavailableException, TimedOutException {
+        cassandra.roundTrip(host, consistencyLevel);
+        cassandra.checkWrite();
+        for (Entry<ByteBuffer, Map<String, List<Mutation>>> rowMutations : mutationMap.entrySet()) {
+            RowKey rowKey = new RowKey(copy(rowMutations.getKey()));
+            for (Entry<String, List<Mutation>> cfMutations : rowMutations.getValue().entrySet()) {
+                ColumnFamily cf = cassandra.getColumnFamily(cfMutations.getKey());
+                for (Mutation mutation : cfMutations.getValue()) {
+                    apply(cf, rowKey, mutation);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void truncate(String columnFamily) {
+        ColumnFamily cf = cassandra.getColumnFamily(columnFamily);
+        cf.rows.clear();
+        cf.counters.clear();
+    }
+
+    @Override
+    public String describe_cluster_name() throws TException {
+        return "in-memory";
+    }
+
+    @Override
+    public List<TokenRange> describe_ring(String keyspace) {
+        List<String> hosts = cassandra.getHosts();
+        List<TokenRange> ring = new ArrayList<TokenRange>();
+        for (int i = 0; i < hosts.size(); i++) {
+            String start = cassandra.getToken((i + hosts.size() - 1) % hosts.size()).toString();
+            String end = cassandra.getToken(i).toString();
+            String address = hosts.get(i).substring(0, hosts.get(i).indexOf(':'));
+            ring.add(new TokenRange(start, end, Collections.singletonList(address)));
+        }
+        return ring;
+    }
+
+    @Override
+    public KsDef describe_keyspace(String keyspace) {
+        return cassandra.describeKeyspace(keyspace);
+    }
+
+    @Override
+    public String describe_partitioner() throws TException {
+        return "org.apache.cassandra.dht.RandomPartitioner";
+    }
+
+    private void apply(ColumnFamily cf, RowKey rowKey, Mutation mutation) throws InvalidRequestException {
+        if (mutation.isSetColumn_or_supercolumn()) {
+            ColumnOrSuperColumn cosc = mutation.getColumn_or_supercolumn();
+            if (cosc.isSetColumn()) {
+                cf.insert(rowKey, cosc.getColumn().deepCopy());
+            } else if (cosc.isSetCounter_column()) {
+                cf.add(rowKey, copy(cosc.getCounter_column().bufferForName()), cosc.getCounter_column().getValue());
+            } else {
+                throw new InvalidRequestException("super columns are not supported in memory");
+            }
+        } else if (mutation.isSetDeletion()) {
+            Deletion deletion = mutation.getDeletion();
+            long timestamp = deletion.isSetTimestamp() ? deletion.getTimestamp() : Long.MAX_VALUE;
+            if (deletion.isSetPredicate() && deletion.getPredicate().isSetColumn_names()) {
+                for (ByteBuffer name : deletion.getPredicate().getColumn_names()) {
+                    cf.remove(rowKey, name, timestamp);
+                }
+            } else {
+                cf.remove(rowKey, null, timestamp);
+            }
+        }
+    }
+
+    /**
+     * The named columns in comparator order, without duplicates, as a node returns them
+     */
+    private static Set<ByteBuffer> names(ColumnFamily cf, SlicePredicate predicate) {
+        Set<ByteBuffer> names = new TreeSet<ByteBuffer>(cf.comparator);
+        names.addAll(predicate.getColumn_names());
+        return names;
+    }
+
+    private List<ColumnOrSuperColumn> slice(ColumnFamily cf, RowKey rowKey, SlicePredicate predicate) {
+        List<ColumnOrSuperColumn> result = new ArrayList<ColumnOrSuperColumn>();
+
+        if (cf.isCounter()) {
+            ConcurrentSkipListMap<ByteBuffer, Long> row = cf.counters.get(rowKey);
+            if (row != null) {
+                if (predicate.isSetColumn_names()) {
+                    for (ByteBuffer name : names(cf, predicate)) {
+                        Long value = row.get(name);
+                        if (value != null) {
+                            result.add(new ColumnOrSuperColumn().setCounter_column(new CounterColumn(name.duplicate(), value)));
+                        }
+                    }
+                } else {
+                    SliceRange range = predicate.getSlice_range();
+                    for (Entry<ByteBuffer, Long> entry : range(row, range).entrySet()) {
+                        if (result.size() >= range.getCount()) {
+                            break;
+                        }
+                        result.add(new ColumnOrSuperColumn().setCounter_column(new CounterColumn(entry.getKey().duplicate(), entry.getValue())));
+                    }
+                }
+            }
+            return result;
+        }
+
+        ConcurrentSkipListMap<ByteBuffer, Column> row = cf.rows.get(rowKey);
+        if (row != null) {
+            if (predicate.isSetColumn_names()) {
+                for (ByteBuffer name : names(cf, predicate)) {
+                    Column column = row.get(name);
+                    if (column != null) {
+                        result.add(new ColumnOrSuperColumn().setColumn(view(column)));
+                    }
+                }
+            } else {
+                SliceRange range = predicate.getSlice_range();
+                for (Column column : range(row, range).values()) {
+                    if (result.size() >= range.getCount()) {
+                        break;
+                    }
+                    result.add(new ColumnOrSuperColumn().setColumn(view(column)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static <V> NavigableMap<ByteBuffer, V> range(ConcurrentSkipListMap<ByteBuffer, V> row, SliceRange range) {
+        NavigableMap<ByteBuffer, V> view = range.isReversed() ? row.descendingMap() : row;
+        if (range.isSetStart() && range.bufferForStart().remaining() > 0) {
+            view = view.tailMap(range.bufferForStart(), true);
+        }
+        if (range.isSetFinish() && range.bufferForFinish().remaining() > 0) {
+            view = view.headMap(range.bufferForFinish(), true);
+        }
+        return view;
+    }
+
+    private void track(List<ColumnOrSuperColumn> columns) {
+        for (ColumnOrSuperColumn cosc : columns) {
+            track(cosc);
+        }
+    }
+
+    private void track(ColumnOrSuperColumn cosc) {
+        if (cosc.isSetColumn()) {
+            cassandra.addBytesRead(cosc.getColumn().bufferForName().remaining() + cosc.getColumn().bufferForValue().remaining() + 8);
+        } else if (cosc.isSetCounter_column()) {
+            cassandra.addBytesRead(cosc.getCounter_column().bufferForName().remaining() + 8);
+        }
+    }
+
+    /**
+     * A fresh column sharing the stored buffers, as a thrift read would hand a new object to the caller
+     */
+    private static Column view(Column column) {
+        Column copy = new Column(column.bufferForName().duplicate());
+        copy.setValue(column.bufferForValue().duplicate());
+        copy.setTimestamp(column.getTimestamp());
+        if (column.isSetTtl()) {
+            copy.setTtl(column.getTtl());
+        }
+        return copy;
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+}
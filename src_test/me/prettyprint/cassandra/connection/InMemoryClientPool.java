@@ -0,0 +1,130 @@
+package me.prettyprint.cassandra.connection;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.prettyprint.cassandra.service.CassandraHost;
+import me.prettyprint.hector.api.exceptions.HectorException;
+
+import org.apache.cassandra.thrift.Cassandra;
+
+/**
+ * Connection pool handing out clients bound to an in-process Cassandra.Client instead of a thrift socket.
+ * It lives in the hector package because {@link HThriftClient} can only be extended from here.
+ */
+public class InMemoryClientPool implements HClientPool {
+
+    private final CassandraHost cassandraHost;
+    private final InMemoryThriftClient client;
+    private final AtomicInteger numActive = new AtomicInteger();
+    private final AtomicBoolean active = new AtomicBoolean(true);
+
+    public InMemoryClientPool(CassandraHost cassandraHost, Cassandra.Client cassandra) {
+        this.cassandraHost = cassandraHost;
+        this.client = new InMemoryThriftClient(cassandraHost, cassandra);
+    }
+
+    @Override
+    public HThriftClient borrowClient() throws HectorException {
+        numActive.incrementAndGet();
+        return client;
+    }
+
+    @Override
+    public void releaseClient(HThriftClient client) throws HectorException {
+        numActive.decrementAndGet();
+    }
+
+    @Override
+    public CassandraHost getCassandraHost() {
+        return cassandraHost;
+    }
+
+    @Override
+    public int getNumBeforeExhausted() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isExhausted() {
+        return false;
+    }
+
+    @Override
+    public int getMaxActive() {
+        return cassandraHost.getMaxActive();
+    }
+
+    @Override
+    public String getStatusAsString() {
+        return String.format("%s; InMemory; Active: %d", getName(), getNumActive());
+    }
+
+    @Override
+    public void shutdown() {
+        active.set(false);
+    }
+
+    @Override
+    public int getNumActive() {
+        return numActive.get();
+    }
+
+    @Override
+    public int getNumIdle() {
+        return 0;
+    }
+
+    @Override
+    public int getNumBlockedThreads() {
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return cassandraHost.getName();
+    }
+
+    @Override
+    public boolean getIsActive() {
+        return active.get();
+    }
+
+    /**
+     * Always open client, shared by every borrower of the pool (the in-process client is thread safe)
+     */
+    static class InMemoryThriftClient extends HThriftClient {
+
+        private final Cassandra.Client cassandra;
+
+        InMemoryThriftClient(CassandraHost cassandraHost, Cassandra.Client cassandra) {
+            super(cassandraHost);
+            this.cassandra = cassandra;
+        }
+
+        @Override
+        public Cassandra.Client getCassandra() {
+            return cassandra;
+        }
+
+        @Override
+        public Cassandra.Client getCassandra(String keyspaceName) {
+            return cassandra;
+        }
+
+        @Override
+        HThriftClient open() {
+            return this;
+        }
+
+        @Override
+        HThriftClient close() {
+            return this;
+        }
+
+        @Override
+        boolean isOpen() {
+            return true;
+        }
+    }
+}